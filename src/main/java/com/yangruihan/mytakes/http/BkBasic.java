@@ -1,7 +1,7 @@
 package com.yangruihan.mytakes.http;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -9,17 +9,28 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.HttpURLConnection;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import com.yangruihan.mytakes.HttpException;
 import com.yangruihan.mytakes.Request;
 import com.yangruihan.mytakes.Response;
 import com.yangruihan.mytakes.Take;
+import com.yangruihan.mytakes.misc.ChannelOutput;
 import com.yangruihan.mytakes.misc.Utf8PrintStream;
+import com.yangruihan.mytakes.rq.HeadView;
+import com.yangruihan.mytakes.rq.RqChunked;
+import com.yangruihan.mytakes.rq.RqLengthAware;
 import com.yangruihan.mytakes.rq.RqLive;
-import com.yangruihan.mytakes.rq.RqWithHeaders;
+import com.yangruihan.mytakes.rq.RqSocket;
+import com.yangruihan.mytakes.rs.Head;
 import com.yangruihan.mytakes.rs.RsPrint;
 import com.yangruihan.mytakes.rs.RsText;
+import com.yangruihan.mytakes.rs.RsWithHeader;
 import com.yangruihan.mytakes.rs.RsWithStatus;
+import com.yangruihan.mytakes.rs.RsWithoutHeader;
 
 import lombok.EqualsAndHashCode;
 
@@ -28,6 +39,20 @@ import lombok.EqualsAndHashCode;
  * 
  * 基础后端
  * 
+ * <p>Connections are persistent, as HTTP/1.1 requires: after a response
+ * the socket stays open for the next request, until the client sends
+ * {@code Connection: close} or speaks HTTP/1.0, the connection stays idle
+ * longer than the configured timeout, or the maximum number of requests
+ * per connection is reached. The same timeout applies to every read of a
+ * request, its head and its body, once it has started. Exactly {@code Content-Length} bytes of every
+ * request body are consumed, whatever the take has read, unless the
+ * connection is closed after the response anyway.
+ * 
+ * <p>连接是持久的，正如 HTTP/1.1 要求的那样：在响应之后 Socket 保持打开以等待下一个请求，
+ * 直到客户端发送{@code Connection: close}或使用 HTTP/1.0、连接空闲超过配置的超时时间，
+ * 或者达到每个连接的最大请求数。请求开始之后，同样的超时时间适用于请求的每次读取，包括它的头部和身体。每个请求的身体都会被精确地消费{@code Content-Length}个字节，
+ * 无论 Take 读取了多少，除非连接在响应之后无论如何都会被关闭
+ * 
  * <p>
  * The class is immutable and thread-safe.
  * 
@@ -40,18 +65,60 @@ import lombok.EqualsAndHashCode;
 @EqualsAndHashCode(of = "take")
 public final class BkBasic implements Back {
 
+	/**
+	 * Connection header.
+	 * 
+	 * 连接头
+	 */
+	private static final String CONNECTION = "Connection";
+
 	/**
 	 * Take.
 	 */
 	private final transient Take take;
 
+	/**
+	 * How long an idle connection is kept open, in milliseconds.
+	 * 
+	 * 空闲连接保持打开的时间，以毫秒计
+	 */
+	private final transient int idle;
+
+	/**
+	 * Maximum number of requests per connection.
+	 * 
+	 * 每个连接的最大请求数
+	 */
+	private final transient int max;
+
 	/**
 	 * Ctor.
 	 * 
+	 * <p>Idle connections are closed after one second, since with
+	 * {@link FtBasic} alone an idle connection holds the only accepting
+	 * thread. Use a longer timeout together with {@link BkParallel} or
+	 * {@link BkVirtual}.
+	 * 
+	 * <p>空闲连接在一秒后关闭，因为单独使用{@link FtBasic}时，一个空闲连接会占用唯一的接收线程。
+	 * 和{@link BkParallel}或{@link BkVirtual}一起使用时可以设置更长的超时时间
+	 * 
 	 * @param tks
 	 */
 	public BkBasic(final Take tks) {
+		this(tks, (int) TimeUnit.SECONDS.toMillis(1L), 100);
+	}
+
+	/**
+	 * Ctor.
+	 * 
+	 * @param tks Take 实例
+	 * @param timeout 空闲超时时间，以毫秒计
+	 * @param requests 每个连接的最大请求数
+	 */
+	public BkBasic(final Take tks, final int timeout, final int requests) {
 		this.take = tks;
+		this.idle = timeout;
+		this.max = requests;
 	}
 
 	/**
@@ -63,23 +130,35 @@ public final class BkBasic implements Back {
 	 * @throws IOException
 	 */
 	@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-	public void accept(Socket socket) throws IOException {
+	public void accept(final Socket socket) throws IOException {
 		try (
-				final InputStream input = socket.getInputStream();
-				final BufferedOutputStream output = new BufferedOutputStream(socket.getOutputStream());
+				final InputStream input = new BufferedInputStream(socket.getInputStream());
+				final OutputStream output = BkBasic.output(socket);
 			) {
-			while (true) {
-				this.print(
-					BkBasic.addSocketHeaders(
-						new RqLive(input), 
-						socket
-					),
-					output
-				);
-				
-				if (input.available() <= 0) {
+			final RqSocket.Connection conn = new RqSocket.Connection(socket);
+			int count = 0;
+			boolean alive = true;
+			while (alive && BkBasic.waiting(socket, input, this.idle)) {
+				++count;
+				final long start = System.nanoTime();
+				final Request req;
+				final InputStream body;
+				try {
+					req = BkBasic.request(input, new RqLive(input).head());
+					body = req.body();
+				} catch (final HttpException ex) {
+					BkBasic.print(BkBasic.failure(ex, ex.code()), output, false);
 					break;
 				}
+				alive = BkBasic.print(
+					this.take,
+					new RqSocket(req, conn, start),
+					output,
+					count < this.max && BkBasic.persistent(req.head())
+				);
+				if (alive) {
+					BkBasic.drain(body);
+				}
 			}
 		}
 	}
@@ -89,25 +168,256 @@ public final class BkBasic implements Back {
 	 * 
 	 * 安全地打印响应（response）到输出流中
 	 * 
+	 * @param take Take 实例
 	 * @param req
 	 * @param output
+	 * @param keep 连接是否可以保持
+	 * @return TRUE if the connection stays open
 	 */
 	@SuppressWarnings("PMD.AvoidCatchingThrowable")
-	private void print(final Request req, final OutputStream output) throws IOException {
+	static boolean print(final Take take, final Request req,
+			final OutputStream output, final boolean keep) throws IOException {
+		boolean alive;
 		try {
-			new RsPrint(this.take.act(req)).print(output);
+			alive = BkBasic.print(BkBasic.readable(req.head(), take.act(req)), output, keep);
 		} catch (final HttpException ex) {
-			new RsPrint(BkBasic.failure(ex, ex.code())).print(output);
+			alive = BkBasic.print(BkBasic.failure(ex, ex.code()), output, false);
 		} catch (final Throwable ex) {
-			new RsPrint(
+			alive = BkBasic.print(
 					BkBasic.failure(
 						ex,
 						HttpURLConnection.HTTP_INTERNAL_ERROR
+					),
+					output,
+					false
+				);
+		}
+		return alive;
+	}
+
+	/**
+	 * Print response, asking the client to close the connection if it
+	 * can't be kept.
+	 * 
+	 * 打印响应，如果连接不能保持则要求客户端关闭连接
+	 * 
+	 * @param res 响应
+	 * @param output 输出流
+	 * @param keep 连接是否可以保持
+	 * @return TRUE if the connection stays open
+	 * @throws IOException
+	 */
+	static boolean print(final Response res, final OutputStream output,
+			final boolean keep) throws IOException {
+		final boolean alive = keep && BkBasic.framed(res.head());
+		if (alive) {
+			new RsPrint(res).print(output);
+		} else {
+			new RsPrint(
+					new RsWithHeader(
+						new RsWithoutHeader(res, BkBasic.CONNECTION),
+						BkBasic.CONNECTION,
+						"close"
 					)
 				).print(output);
 		}
+		return alive;
 	}
-	
+
+	/**
+	 * Response the client can read: HTTP/1.0 clients don't know chunked
+	 * transfer coding, so they get the body as it is, ended by closing the
+	 * connection.
+	 * 
+	 * 客户端能读懂的响应：HTTP/1.0 客户端不认识分块传输编码，所以它们得到原样的身体，
+	 * 以关闭连接作为结束
+	 * 
+	 * @param head 请求头部
+	 * @param res 响应
+	 * @return response 响应
+	 * @throws IOException
+	 */
+	static Response readable(final Iterable<String> head, final Response res)
+			throws IOException {
+		Response readable = res;
+		if (head.iterator().next().toLowerCase(Locale.ENGLISH).endsWith("http/1.0")
+				&& RqChunked.chunked(HeadView.lookup(res.head(), "Transfer-Encoding"))) {
+			readable = new RsWithoutHeader(res, "Transfer-Encoding");
+		}
+		return readable;
+	}
+
+	/**
+	 * Buffered output of the socket, which sends file bodies without
+	 * copying them when the socket has a channel.
+	 * 
+	 * 带缓冲的 Socket 输出，如果 Socket 有通道，则发送文件身体时不复制它们
+	 * 
+	 * @param socket Socket
+	 * @return output 输出流
+	 * @throws IOException
+	 */
+	static OutputStream output(final Socket socket) throws IOException {
+		final OutputStream output;
+		if (socket.getChannel() == null) {
+			output = new BufferedOutputStream(socket.getOutputStream());
+		} else {
+			output = new ChannelOutput.Blocking(socket.getChannel());
+		}
+		return output;
+	}
+
+	/**
+	 * Wait for the next request, at most for the idle timeout.
+	 * 
+	 * 等待下一个请求，最多等待空闲超时时间
+	 * 
+	 * <p>The timeout stays in force while the request is read, so a
+	 * client that stops sending in the middle of it fails the read,
+	 * instead of holding the thread forever.
+	 * 
+	 * <p>读取请求期间超时仍然有效，所以在请求中途停止发送的客户端会使读取失败，而不是永远占用线程
+	 * 
+	 * @param socket Socket
+	 * @param input 支持标记的输入流
+	 * @param timeout 空闲超时时间，以毫秒计
+	 * @return TRUE if the next request has arrived
+	 * @throws IOException
+	 */
+	static boolean waiting(final Socket socket, final InputStream input,
+			final int timeout) throws IOException {
+		boolean ready;
+		socket.setSoTimeout(timeout);
+		try {
+			input.mark(1);
+			ready = input.read() >= 0;
+			input.reset();
+		} catch (final SocketTimeoutException ex) {
+			ready = false;
+		}
+		return ready;
+	}
+
+	/**
+	 * Request read from the connection, whose body ends where the
+	 * request ends.
+	 * 
+	 * 从连接中读取的请求，它的身体在请求结束的位置结束
+	 * 
+	 * @param input 连接的输入流
+	 * @param head 请求头部
+	 * @return request 请求
+	 * @throws HttpException
+	 */
+	static Request request(final InputStream input,
+			final Iterable<String> head) throws HttpException {
+		final List<String> codings = HeadView.lookup(head, "Transfer-Encoding");
+		if (!codings.isEmpty() && !RqChunked.chunked(codings)) {
+			throw new HttpException(
+					HttpURLConnection.HTTP_NOT_IMPLEMENTED,
+					String.format(
+						"transfer coding \"%s\" is not supported",
+						String.join(", ", codings)
+					)
+				);
+		}
+		return new RqLengthAware(
+				new RqChunked(
+					new Request() {
+
+						@Override
+						public Iterable<String> head() {
+							return head;
+						}
+
+						@Override
+						public InputStream body() {
+							return input;
+						}
+					}
+				)
+			);
+	}
+
+	/**
+	 * Skip what is left of the body, so the next request can be read.
+	 * 
+	 * 跳过身体剩余的部分，以便能读取下一个请求
+	 * 
+	 * @param body 身体
+	 * @throws IOException
+	 */
+	static void drain(final InputStream body) throws IOException {
+		while (body.skip(Long.MAX_VALUE) > 0L || body.read() >= 0) {
+			continue;
+		}
+	}
+
+	/**
+	 * Length of the body, declared in request head.
+	 * 
+	 * 请求头部声明的身体长度
+	 * 
+	 * <p>A request without {@code Content-Length} and
+	 * {@code Transfer-Encoding} headers has no body, according to RFC 7230.
+	 * 
+	 * <p>根据 RFC 7230，没有{@code Content-Length}和{@code Transfer-Encoding}头的请求没有身体
+	 * 
+	 * @param head 请求头部
+	 * @return length 长度，使用传输编码时为 -1
+	 * @throws HttpException
+	 */
+	static long length(final Iterable<String> head) throws HttpException {
+		final long length;
+		if (HeadView.lookup(head, "Transfer-Encoding").isEmpty()) {
+			length = RqLengthAware.length(HeadView.lookup(head, "Content-Length"));
+		} else {
+			length = -1L;
+		}
+		return length;
+	}
+
+	/**
+	 * Does the client want to keep the connection?
+	 * 
+	 * 客户端是否希望保持连接
+	 * 
+	 * @param head 请求头部
+	 * @return TRUE if the connection may be kept
+	 */
+	static boolean persistent(final Iterable<String> head) {
+		boolean keep = !head.iterator().next().toLowerCase(Locale.ENGLISH).endsWith("http/1.0");
+		for (final String value : HeadView.lookup(head, BkBasic.CONNECTION)) {
+			if (value.toLowerCase(Locale.ENGLISH).contains("close")) {
+				keep = false;
+			}
+		}
+		return keep;
+	}
+
+	/**
+	 * Can the client find where the response body ends, without waiting
+	 * for the connection to close?
+	 * 
+	 * 客户端能否不等待连接关闭就找到响应身体的结束位置
+	 * 
+	 * <p>{@code 1xx}, {@code 204} and {@code 304} responses never have a
+	 * body, according to RFC 7230.
+	 * 
+	 * <p>根据 RFC 7230，{@code 1xx}、{@code 204}和{@code 304}响应从不带有身体
+	 * 
+	 * @param head 响应头部
+	 * @return TRUE if the response declares its length or has no body
+	 */
+	private static boolean framed(final Iterable<String> head) {
+		final Head flat = Head.of(head);
+		final String status = flat.status();
+		return flat.has("Content-Length") || flat.has("Transfer-Encoding")
+				|| status.length() >= 12
+				&& (status.charAt(9) == '1' || status.startsWith("204", 9)
+					|| status.startsWith("304", 9));
+	}
+
 	/**
 	 * Make a failure response.
 	 *
@@ -118,7 +428,7 @@ public final class BkBasic implements Back {
 	 * @return response 响应
 	 * @throws IOException
 	 */
-	private static Response failure(final Throwable err, final int code) throws IOException {
+	static Response failure(final Throwable err, final int code) throws IOException {
 		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		final PrintStream stream = new Utf8PrintStream(baos, false);
 		
@@ -128,28 +438,8 @@ public final class BkBasic implements Back {
 			stream.close();
 		}
 		return new RsWithStatus(
-					new RsText(new ByteArrayInputStream(baos.toByteArray())),
+					new RsText(baos.toByteArray()),
 					code
 				);
 	}
-	
-	/**
-	 * Adds custom headers with information about socket.
-	 * @param req 请求
-	 * @param socket Socket
-	 * @return request 带有自定义头的请求
-	 */
-	private static Request addSocketHeaders(final Request req, final Socket socket) {
-		return new RqWithHeaders(
-					req,
-					String.format("X-Takes-LocalAddress: %s",
-								socket.getLocalAddress().getHostAddress()),
-					String.format("X-Takes-LocalPort: %d",
-								socket.getLocalPort()),
-					String.format("X-Takes-RemoteAddress: %s",
-								socket.getInetAddress().getHostAddress()),
-					String.format("X-Takes-RemotePort: %d",
-								socket.getPort())
-				);
-	}
 }
@@ -0,0 +1,320 @@
+package com.yangruihan.mytakes.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.yangruihan.mytakes.misc.Daemons;
+import com.yangruihan.mytakes.rs.RsPrint;
+import com.yangruihan.mytakes.rs.RsText;
+import com.yangruihan.mytakes.rs.RsWithStatus;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Back decorator, dispatching sockets to a bounded pool of threads.
+ *
+ * 后端装饰器，把 Socket 分发到一个有界的线程池中
+ *
+ * <p>Sockets are handed to a fixed number of worker threads through a
+ * queue of limited capacity, so the front may accept the next socket
+ * while the previous one is still being served. When the queue is full,
+ * the socket is given to a {@link BkParallel.Rejection} policy, for
+ * example:
+ *
+ * <pre> new FtBasic(
+ * 	new BkParallel(
+ * 		new BkBasic(take), 16, 256,
+ * 		new BkParallel.Unavailable()
+ * 	),
+ * 	8080
+ * ).start(Exit.NEVER);</pre>
+ *
+ * <p>Socket 通过一个有限容量的队列交给固定数量的工作线程，所以前端可以在前一个
+ * Socket 仍在服务时接收下一个。当队列满时，Socket 会交给一个{@link BkParallel.Rejection}策略处理
+ *
+ * <p>After {@link #close()} the workers end once the sockets queued are
+ * served, and new sockets go to the policy.
+ *
+ * <p>在{@link #close()}之后，工作线程在已排队的 Socket 服务完后结束，新的 Socket 交给策略处理
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(of = "origin")
+public final class BkParallel implements Back, Closeable {
+
+	/**
+	 * Original back.
+	 *
+	 * 原始后端
+	 */
+	private final transient Back origin;
+
+	/**
+	 * Executor service.
+	 *
+	 * 执行服务
+	 */
+	private final transient ThreadPoolExecutor service;
+
+	/**
+	 * What to do with sockets that can't be queued.
+	 *
+	 * 如何处理无法排队的 Socket
+	 */
+	private final transient BkParallel.Rejection rejection;
+
+	/**
+	 * Ctor.
+	 * @param back 原始后端
+	 */
+	public BkParallel(final Back back) {
+		this(back, Runtime.getRuntime().availableProcessors() * 4, 1024);
+	}
+
+	/**
+	 * Ctor.
+	 * @param back 原始后端
+	 * @param threads 工作线程数量
+	 * @param queue 队列容量
+	 */
+	public BkParallel(final Back back, final int threads, final int queue) {
+		this(back, threads, queue, new BkParallel.Unavailable());
+	}
+
+	/**
+	 * Ctor.
+	 * @param back 原始后端
+	 * @param threads 工作线程数量
+	 * @param queue 队列容量
+	 * @param rej 拒绝策略
+	 */
+	public BkParallel(final Back back, final int threads, final int queue,
+			final BkParallel.Rejection rej) {
+		this.origin = back;
+		this.rejection = rej;
+		this.service = new ThreadPoolExecutor(
+					threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queue),
+					new Daemons(BkParallel.class)
+				);
+	}
+
+	@Override
+	public void accept(final Socket socket) throws IOException {
+		try {
+			this.service.execute(
+				new Runnable() {
+
+					@Override
+					public void run() {
+						BkParallel.serve(BkParallel.this.origin, socket);
+					}
+				}
+			);
+		} catch (final RejectedExecutionException ex) {
+			this.rejection.reject(socket, this.origin);
+		}
+	}
+
+	/**
+	 * How many sockets are waiting in the queue now.
+	 *
+	 * 当前在队列中等待的 Socket 数量
+	 *
+	 * @return depth 队列深度
+	 */
+	public int queued() {
+		return this.service.getQueue().size();
+	}
+
+	/**
+	 * How many sockets are being served now.
+	 *
+	 * 当前正在被服务的 Socket 数量
+	 *
+	 * @return count 数量
+	 */
+	public int active() {
+		return this.service.getActiveCount();
+	}
+
+	/**
+	 * Stop the workers once the sockets queued are served.
+	 *
+	 * 在已排队的 Socket 服务完后停止工作线程
+	 */
+	@Override
+	public void close() {
+		this.service.shutdown();
+	}
+
+	/**
+	 * Serve the socket and close it afterwards, quietly.
+	 *
+	 * 服务 Socket 并在之后安静地关闭它
+	 *
+	 * @param back 后端
+	 * @param socket Socket
+	 */
+	static void serve(final Back back, final Socket socket) {
+		try {
+			back.accept(socket);
+		} catch (final IOException ex) {
+			assert ex != null;
+		} finally {
+			try {
+				socket.close();
+			} catch (final IOException ex) {
+				assert ex != null;
+			}
+		}
+	}
+
+	/**
+	 * Policy for sockets that can't be queued.
+	 *
+	 * 无法排队的 Socket 的处理策略
+	 *
+	 * <p>All implementations of this interface must be immutable and thread-safe.
+	 *
+	 * <p>这个接口的所有实现必须是不变且线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	public interface Rejection {
+
+		/**
+		 * Deal with the socket.
+		 *
+		 * 处理这个 Socket
+		 *
+		 * @param socket Socket
+		 * @param back 原始后端
+		 * @throws IOException
+		 */
+		void reject(Socket socket, Back back) throws IOException;
+	}
+
+	/**
+	 * Close the socket without answering.
+	 *
+	 * 不作应答直接关闭 Socket
+	 *
+	 * @author Yrh
+	 *
+	 */
+	public static final class Close implements BkParallel.Rejection {
+
+		@Override
+		public void reject(final Socket socket, final Back back) throws IOException {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Answer with "503 Service Unavailable" and close the socket.
+	 *
+	 * 应答 "503 Service Unavailable" 并关闭 Socket
+	 *
+	 * <p>The request is not read, so before the socket is closed its output
+	 * is shut down and what the client sent is read and thrown away, for a
+	 * second or 64 KB at most; closing a socket with unread bytes resets
+	 * the connection, and the client may never see the answer.
+	 *
+	 * <p>请求没有被读取，所以在关闭 Socket 之前先关闭它的输出，并读取丢弃客户端发送的内容，
+	 * 最多一秒或 64 KB；关闭还有未读字节的 Socket 会重置连接，客户端可能永远看不到应答
+	 *
+	 * @author Yrh
+	 *
+	 */
+	public static final class Unavailable implements BkParallel.Rejection {
+
+		/**
+		 * How long to wait for the client to stop sending, in milliseconds.
+		 *
+		 * 等待客户端停止发送的时间，以毫秒计
+		 */
+		private static final int LINGER = 1000;
+
+		/**
+		 * Most bytes read and thrown away.
+		 *
+		 * 读取丢弃的最大字节数
+		 */
+		private static final int LIMIT = 64 << 10;
+
+		@Override
+		public void reject(final Socket socket, final Back back) throws IOException {
+			try {
+				final OutputStream output = socket.getOutputStream();
+				new RsPrint(
+						new RsWithStatus(
+							new RsText("server is too busy, try again later"),
+							HttpURLConnection.HTTP_UNAVAILABLE
+						)
+					).print(output);
+				socket.shutdownOutput();
+				BkParallel.Unavailable.drain(socket);
+			} finally {
+				socket.close();
+			}
+		}
+
+		/**
+		 * Read and throw away what the client sends, until it stops.
+		 *
+		 * 读取并丢弃客户端发送的内容，直到它停止
+		 *
+		 * @param socket Socket
+		 * @throws IOException
+		 */
+		private static void drain(final Socket socket) throws IOException {
+			socket.setSoTimeout(BkParallel.Unavailable.LINGER);
+			final InputStream input = socket.getInputStream();
+			final byte[] buf = new byte[4096];
+			int total = 0;
+			try {
+				while (total < BkParallel.Unavailable.LIMIT) {
+					final int bytes = input.read(buf);
+					if (bytes < 0) {
+						break;
+					}
+					total += bytes;
+				}
+			} catch (final SocketTimeoutException ex) {
+				assert ex != null;
+			}
+		}
+	}
+
+	/**
+	 * Serve the socket in the accepting thread.
+	 *
+	 * 在接收线程中服务这个 Socket
+	 *
+	 * @author Yrh
+	 *
+	 */
+	public static final class CallerRuns implements BkParallel.Rejection {
+
+		@Override
+		public void reject(final Socket socket, final Back back) {
+			BkParallel.serve(back, socket);
+		}
+	}
+}
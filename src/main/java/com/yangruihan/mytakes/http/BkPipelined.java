@@ -0,0 +1,456 @@
+package com.yangruihan.mytakes.http;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.yangruihan.mytakes.HttpException;
+import com.yangruihan.mytakes.Request;
+import com.yangruihan.mytakes.Response;
+import com.yangruihan.mytakes.Take;
+import com.yangruihan.mytakes.misc.ChannelOutput;
+import com.yangruihan.mytakes.misc.Daemons;
+import com.yangruihan.mytakes.rq.RqLive;
+import com.yangruihan.mytakes.rq.RqSocket;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Back-end serving pipelined requests of a connection in parallel.
+ *
+ * 并行服务一个连接上的流水线请求的后端
+ *
+ * <p>While earlier responses are not written yet, requests the client
+ * has already sent are read ahead. {@code GET} and {@code HEAD} requests
+ * without a body are given to a pool of threads as soon as they are
+ * read; any other request waits until all responses before it are
+ * written, and runs alone. Responses are written strictly in the order
+ * of their requests, and flushed together once no more of them are
+ * ready:
+ *
+ * <pre> new FtBasic(
+ * 	new BkParallel(new BkPipelined(take)), 8080
+ * ).start(Exit.NEVER);</pre>
+ *
+ * <p>在之前的响应还没有写出时，客户端已经发送的请求会被提前读取。没有身体的{@code GET}和{@code HEAD}
+ * 请求一经读取就交给一个线程池；其他请求要等它之前的所有响应写出之后单独运行。
+ * 响应严格按照请求的顺序写出，并在没有更多响应就绪时一起刷新
+ *
+ * <p>Otherwise connections are handled as by {@link BkBasic}: they are
+ * persistent, closed when idle longer than the timeout, and serve at
+ * most the given number of requests.
+ *
+ * <p>其他方面连接的处理与{@link BkBasic}相同：它们是持久的，空闲超过超时时间时关闭，
+ * 并且最多服务给定数量的请求
+ *
+ * <p>The pool queues at most as many requests as its threads can read
+ * ahead together; beyond that, and after {@link #close()}, a request
+ * runs in the thread of its connection, so the pool never grows without
+ * bound and no request is lost.
+ *
+ * <p>线程池最多排队它的线程一共可以提前读取的请求数；超过这个数量以及在{@link #close()}之后，
+ * 请求在它的连接的线程中运行，所以线程池从不无限增长，也不会丢失请求
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(of = "take")
+public final class BkPipelined implements Back, Closeable {
+
+	/**
+	 * Take.
+	 */
+	private final transient Take take;
+
+	/**
+	 * How long an idle connection is kept open, in milliseconds.
+	 *
+	 * 空闲连接保持打开的时间，以毫秒计
+	 */
+	private final transient int idle;
+
+	/**
+	 * Maximum number of requests per connection.
+	 *
+	 * 每个连接的最大请求数
+	 */
+	private final transient int max;
+
+	/**
+	 * Maximum number of requests read ahead per connection.
+	 *
+	 * 每个连接提前读取的最大请求数
+	 */
+	private final transient int depth;
+
+	/**
+	 * Executor service running takes.
+	 *
+	 * 运行 Take 的执行服务
+	 */
+	private final transient ExecutorService service;
+
+	/**
+	 * Ctor.
+	 * @param tks Take 实例
+	 */
+	public BkPipelined(final Take tks) {
+		this(
+			tks, (int) TimeUnit.SECONDS.toMillis(1L), 100, 16,
+			Runtime.getRuntime().availableProcessors() * 4
+		);
+	}
+
+	/**
+	 * Ctor.
+	 * @param tks Take 实例
+	 * @param timeout 空闲超时时间，以毫秒计
+	 * @param requests 每个连接的最大请求数
+	 * @param ahead 每个连接提前读取的最大请求数
+	 * @param threads 运行 Take 的线程数量，线程池队列的容量是它与{@code ahead}的乘积
+	 */
+	public BkPipelined(final Take tks, final int timeout, final int requests,
+			final int ahead, final int threads) {
+		this.take = tks;
+		this.idle = timeout;
+		this.max = requests;
+		this.depth = ahead;
+		this.service = new ThreadPoolExecutor(
+					threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(threads * ahead),
+					new Daemons(BkPipelined.class),
+					new RejectedExecutionHandler() {
+
+						@Override
+						public void rejectedExecution(final Runnable task,
+								final ThreadPoolExecutor executor) {
+							task.run();
+						}
+					}
+				);
+	}
+
+	@Override
+	@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+	public void accept(final Socket socket) throws IOException {
+		final Queue<BkPipelined.Reply> replies = new ArrayDeque<>(this.depth);
+		try (
+				final InputStream input = new BufferedInputStream(socket.getInputStream());
+				final BkPipelined.Batch output = new BkPipelined.Batch(socket);
+			) {
+			final RqSocket.Connection conn = new RqSocket.Connection(socket);
+			int count = 0;
+			boolean reading = true;
+			boolean alive = true;
+			while (alive) {
+				if (!replies.isEmpty()
+						&& (!reading || replies.size() >= this.depth || input.available() == 0)) {
+					alive = replies.poll().print(output);
+					if (replies.isEmpty() || !replies.peek().ready()) {
+						output.push();
+					}
+					continue;
+				}
+				if (replies.isEmpty() && !(reading && BkBasic.waiting(socket, input, this.idle))) {
+					break;
+				}
+				++count;
+				final long start = System.nanoTime();
+				final Request req;
+				final InputStream body;
+				final boolean safe;
+				try {
+					req = BkBasic.request(input, new RqLive(input).head());
+					body = req.body();
+					safe = BkPipelined.safe(req.head());
+				} catch (final HttpException ex) {
+					if (BkPipelined.print(replies, output)) {
+						BkBasic.print(BkBasic.failure(ex, ex.code()), output, false);
+					}
+					output.push();
+					break;
+				}
+				final boolean keep = count < this.max && BkBasic.persistent(req.head());
+				reading = keep;
+				final Request sock = new RqSocket(req, conn, start);
+				if (safe) {
+					replies.add(
+						new BkPipelined.Reply(
+							this.service.submit(
+								new Callable<Response>() {
+
+									@Override
+									public Response call() throws IOException {
+										return BkBasic.readable(
+											sock.head(), BkPipelined.this.take.act(sock)
+										);
+									}
+								}
+							),
+							keep
+						)
+					);
+				} else {
+					alive = BkPipelined.print(replies, output)
+							&& BkBasic.print(this.take, sock, output, keep);
+					output.push();
+					if (alive) {
+						BkBasic.drain(body);
+					}
+				}
+			}
+		} finally {
+			for (final BkPipelined.Reply reply : replies) {
+				reply.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Stop the threads of the pool once the requests queued are answered;
+	 * later requests run in the threads of their connections.
+	 *
+	 * 在已排队的请求应答之后停止线程池的线程；之后的请求在它们的连接的线程中运行
+	 */
+	@Override
+	public void close() {
+		this.service.shutdown();
+	}
+
+	/**
+	 * Write all replies, in order, as long as the connection stays open.
+	 *
+	 * 按顺序写出所有应答，只要连接保持打开
+	 *
+	 * @param replies 应答
+	 * @param output 输出流
+	 * @return TRUE if the connection stays open
+	 * @throws IOException
+	 */
+	private static boolean print(final Queue<BkPipelined.Reply> replies,
+			final OutputStream output) throws IOException {
+		boolean alive = true;
+		while (alive && !replies.isEmpty()) {
+			alive = replies.poll().print(output);
+		}
+		return alive;
+	}
+
+	/**
+	 * Can the request run while others are running, and can the next
+	 * request be read before it runs? That is, is it a {@code GET} or a
+	 * {@code HEAD} without a body?
+	 *
+	 * 这个请求能否在其他请求运行时运行，能否在它运行之前读取下一个请求？
+	 * 即它是否是一个没有身体的{@code GET}或{@code HEAD}
+	 *
+	 * @param head 请求头部
+	 * @return TRUE if it is
+	 * @throws HttpException
+	 */
+	private static boolean safe(final Iterable<String> head) throws HttpException {
+		final String line = head.iterator().next();
+		return (line.startsWith("GET ") || line.startsWith("HEAD "))
+				&& BkBasic.length(head) == 0L;
+	}
+
+	/**
+	 * Response being made by the pool.
+	 *
+	 * 正在由线程池生成的响应
+	 *
+	 * <p>This class is NOT thread-safe.
+	 *
+	 * <p>这个类不是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Reply {
+
+		/**
+		 * Response.
+		 *
+		 * 响应
+		 */
+		private final transient Future<Response> response;
+
+		/**
+		 * Can the connection be kept after it?
+		 *
+		 * 在它之后连接是否可以保持
+		 */
+		private final transient boolean keep;
+
+		/**
+		 * Ctor.
+		 * @param res 响应
+		 * @param alive 在它之后连接是否可以保持
+		 */
+		Reply(final Future<Response> res, final boolean alive) {
+			this.response = res;
+			this.keep = alive;
+		}
+
+		/**
+		 * Is the response made?
+		 *
+		 * 响应是否已经生成
+		 *
+		 * @return TRUE if it is
+		 */
+		boolean ready() {
+			return this.response.isDone();
+		}
+
+		/**
+		 * Wait for the response and print it.
+		 *
+		 * 等待响应并打印它
+		 *
+		 * @param output 输出流
+		 * @return TRUE if the connection stays open
+		 * @throws IOException
+		 */
+		boolean print(final OutputStream output) throws IOException {
+			boolean alive;
+			try {
+				alive = BkBasic.print(this.response.get(), output, this.keep);
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(ex.getMessage());
+			} catch (final ExecutionException ex) {
+				final int code;
+				if (ex.getCause() instanceof HttpException) {
+					code = ((HttpException) ex.getCause()).code();
+				} else {
+					code = HttpURLConnection.HTTP_INTERNAL_ERROR;
+				}
+				alive = BkBasic.print(BkBasic.failure(ex.getCause(), code), output, false);
+			}
+			return alive;
+		}
+
+		/**
+		 * Give up the response.
+		 *
+		 * 放弃这个响应
+		 */
+		void cancel() {
+			this.response.cancel(true);
+		}
+	}
+
+	/**
+	 * Output of a socket, flushed only when asked to.
+	 *
+	 * Socket 的输出，只在被要求时刷新
+	 *
+	 * <p>Responses flush their output when they are printed; here those
+	 * flushes are ignored, so several responses can go out in one write.
+	 *
+	 * <p>响应在打印时会刷新它们的输出；这里忽略这些刷新，所以多个响应可以在一次写入中发出
+	 *
+	 * <p>This class is NOT thread-safe.
+	 *
+	 * <p>这个类不是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Batch extends OutputStream implements ChannelOutput {
+
+		/**
+		 * Original output.
+		 *
+		 * 原始输出
+		 */
+		private final transient ChannelOutput.Blocking origin;
+
+		/**
+		 * Ctor.
+		 * @param socket Socket
+		 * @throws IOException
+		 */
+		Batch(final Socket socket) throws IOException {
+			super();
+			final WritableByteChannel channel;
+			if (socket.getChannel() == null) {
+				channel = Channels.newChannel(socket.getOutputStream());
+			} else {
+				channel = socket.getChannel();
+			}
+			this.origin = new ChannelOutput.Blocking(channel);
+		}
+
+		@Override
+		public void write(final int data) throws IOException {
+			this.origin.write(data);
+		}
+
+		@Override
+		public void write(final byte[] buf, final int off, final int len) throws IOException {
+			this.origin.write(buf, off, len);
+		}
+
+		@Override
+		public void flush() {
+			// see push()
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.origin.close();
+		}
+
+		@Override
+		public void transfer(final FileChannel file, final long position,
+				final long count) throws IOException {
+			this.origin.transfer(file, position, count);
+		}
+
+		@Override
+		public void send(final ByteBuffer[] data, final Closeable owner) throws IOException {
+			this.origin.send(data, owner);
+		}
+
+		@Override
+		public void stream(final InputStream body) throws IOException {
+			this.origin.stream(body);
+		}
+
+		/**
+		 * Send everything written so far.
+		 *
+		 * 发送目前为止写入的所有内容
+		 *
+		 * @throws IOException
+		 */
+		void push() throws IOException {
+			this.origin.flush();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.yangruihan.mytakes.http;
+
+import java.lang.reflect.InvocationTargetException;
+import java.net.Socket;
+import java.util.concurrent.ThreadFactory;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Back decorator, serving every socket in its own virtual thread.
+ *
+ * 后端装饰器，在每个 Socket 自己的虚拟线程中服务它
+ *
+ * <p>Virtual threads are cheap enough to have one per connection, even
+ * when takes block on JDBC or file I/O, so the blocking
+ * {@link java.io.InputStream}/{@link java.io.OutputStream} model of
+ * {@link BkBasic} can hold tens of thousands of connections:
+ *
+ * <pre> new FtBasic(
+ * 	new BkVirtual(new BkBasic(take)), 8080
+ * ).start(Exit.NEVER);</pre>
+ *
+ * <p>虚拟线程足够廉价，可以每个连接一个，即便 Take 阻塞在 JDBC 或文件读写上，
+ * 所以{@link BkBasic}阻塞的输入输出流模型也能保持数万个连接
+ *
+ * <p>Virtual threads are looked up reflectively, since they are only
+ * available in Java 21 and later. On older runtimes the constructor
+ * fails, rather than giving every socket a platform thread; check
+ * {@link #supported()} and use {@link BkParallel}, which has a bounded
+ * pool, there instead.
+ *
+ * <p>虚拟线程是通过反射获取的，因为它们只在 Java 21 及之后的版本可用。
+ * 在旧的运行时上构造函数会失败，而不是给每个 Socket 一个平台线程；
+ * 这时检查{@link #supported()}并改用带有有界线程池的{@link BkParallel}
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(of = "origin")
+public final class BkVirtual implements Back {
+
+	/**
+	 * Original back.
+	 *
+	 * 原始后端
+	 */
+	private final transient Back origin;
+
+	/**
+	 * Factory of threads.
+	 *
+	 * 线程工厂
+	 */
+	private final transient ThreadFactory factory;
+
+	/**
+	 * Ctor.
+	 * @param back 原始后端
+	 * @throws IllegalStateException 如果运行时不支持虚拟线程
+	 */
+	public BkVirtual(final Back back) {
+		this(back, BkVirtual.threads());
+	}
+
+	/**
+	 * Ctor.
+	 * @param back 原始后端
+	 * @param threads 线程工厂
+	 */
+	public BkVirtual(final Back back, final ThreadFactory threads) {
+		this.origin = back;
+		this.factory = threads;
+	}
+
+	@Override
+	public void accept(final Socket socket) {
+		this.factory.newThread(
+			new Runnable() {
+
+				@Override
+				public void run() {
+					BkParallel.serve(BkVirtual.this.origin, socket);
+				}
+			}
+		).start();
+	}
+
+	/**
+	 * Are virtual threads available in this runtime?
+	 *
+	 * 当前运行时是否支持虚拟线程
+	 *
+	 * @return TRUE if they are
+	 */
+	public static boolean supported() {
+		return BkVirtual.virtual() != null;
+	}
+
+	/**
+	 * Virtual thread factory, which must be supported.
+	 *
+	 * 虚拟线程工厂，必须被支持
+	 *
+	 * @return factory 线程工厂
+	 */
+	private static ThreadFactory threads() {
+		final ThreadFactory threads = BkVirtual.virtual();
+		if (threads == null) {
+			throw new IllegalStateException(
+					String.format(
+						"virtual threads are not available in Java %s, use BkParallel instead",
+						System.getProperty("java.version")
+					)
+				);
+		}
+		return threads;
+	}
+
+	/**
+	 * Virtual thread factory, via {@code Thread.ofVirtual().factory()}.
+	 *
+	 * 通过{@code Thread.ofVirtual().factory()}得到的虚拟线程工厂
+	 *
+	 * @return factory 线程工厂，如果不支持则为 NULL
+	 */
+	private static ThreadFactory virtual() {
+		ThreadFactory threads;
+		try {
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			threads = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+					.getMethod("factory")
+					.invoke(builder);
+		} catch (final NoSuchMethodException | ClassNotFoundException
+				| IllegalAccessException | InvocationTargetException ex) {
+			threads = null;
+		}
+		return threads;
+	}
+}
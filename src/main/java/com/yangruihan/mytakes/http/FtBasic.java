@@ -1,8 +1,11 @@
 package com.yangruihan.mytakes.http;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
 import java.util.concurrent.TimeUnit;
 
 import com.yangruihan.mytakes.Take;
@@ -58,6 +61,27 @@ public final class FtBasic implements Front {
 		this(new BkBasic(tks), prt);
 	}
 
+	/**
+	 * Ctor.
+	 * 
+	 * <p>With {@code vrt} set, every socket is served in its own virtual
+	 * thread, see {@link BkVirtual}; before Java 21 that fails.
+	 * 
+	 * <p>如果设置了{@code vrt}，每个 Socket 都在它自己的虚拟线程中服务，见{@link BkVirtual}；
+	 * 在 Java 21 之前这会失败
+	 * 
+	 * @param tks
+	 *            Take 实例
+	 * @param prt
+	 *            端口号
+	 * @param vrt
+	 *            是否使用虚拟线程
+	 * @throws IOException
+	 */
+	public FtBasic(final Take tks, final int prt, final boolean vrt) throws IOException {
+		this(FtBasic.back(tks, vrt), prt);
+	}
+
 	/**
 	 * Ctor.
 	 * 
@@ -69,9 +93,9 @@ public final class FtBasic implements Front {
 	 */
 	public FtBasic(final Back bck, final int port) throws IOException {
 		/**
-		 * 将端口号封装成一个 ServerSocket
+		 * 将端口号封装成一个带有通道的 ServerSocket，以便 BkBasic 不经复制地发送文件
 		 */
-		this(bck, new ServerSocket(port));
+		this(bck, FtBasic.server(port));
 	}
 
 	/**
@@ -87,6 +111,45 @@ public final class FtBasic implements Front {
 		this.socket = skt;
 	}
 
+	/**
+	 * Open a server socket with a channel, so that accepted sockets have
+	 * channels too and {@link BkBasic} can send files without copying.
+	 * 
+	 * 打开一个带有通道的 ServerSocket，这样接收的 Socket 也带有通道，{@link BkBasic}可以不经复制地发送文件
+	 * 
+	 * @param port
+	 *            端口号
+	 * @return socket 服务器 Socket
+	 * @throws IOException
+	 */
+	private static ServerSocket server(final int port) throws IOException {
+		final ServerSocketChannel channel = ServerSocketChannel.open();
+		channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		channel.bind(new InetSocketAddress(port));
+		return channel.socket();
+	}
+
+	/**
+	 * Make a back for the take.
+	 * 
+	 * 为 Take 生成一个后端
+	 * 
+	 * @param tks
+	 *            Take 实例
+	 * @param vrt
+	 *            是否使用虚拟线程
+	 * @return back 后端
+	 */
+	private static Back back(final Take tks, final boolean vrt) {
+		final Back back;
+		if (vrt) {
+			back = new BkVirtual(new BkBasic(tks));
+		} else {
+			back = new BkBasic(tks);
+		}
+		return back;
+	}
+
 	/**
 	 * Start and dispatch all incoming sockets. 开始并且分发接收到的 Sockets
 	 * 
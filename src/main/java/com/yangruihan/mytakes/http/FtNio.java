@@ -0,0 +1,1292 @@
+package com.yangruihan.mytakes.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.yangruihan.mytakes.HttpException;
+import com.yangruihan.mytakes.Request;
+import com.yangruihan.mytakes.Take;
+import com.yangruihan.mytakes.misc.ChannelOutput;
+import com.yangruihan.mytakes.rq.RqLive;
+import com.yangruihan.mytakes.rq.RqSocket;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Non-blocking front, based on NIO selectors.
+ *
+ * 基于 NIO 选择器的非阻塞前端
+ *
+ * <p>One acceptor (the thread calling {@link #start(Exit)}) registers
+ * incoming connections with a fixed number of reactor threads, each of
+ * them owning its own {@link Selector}. A reactor reads bytes from its
+ * channels, and as soon as a complete request (head and
+ * {@code Content-Length} bytes of body) is buffered, dispatches it to the
+ * {@link Take} and queues the printed response for writing.
+ *
+ * <p>一个接收者（调用{@link #start(Exit)}的线程）把新的连接注册到固定数量的反应器线程上，
+ * 每个反应器拥有自己的{@link Selector}。反应器从通道中读取字节，一旦缓冲了一个完整的请求
+ * （头部以及{@code Content-Length}字节的身体），就把它分发给{@link Take}，
+ * 并把打印好的响应排队等待写出
+ *
+ * <p>Bodies longer than the limit, 16 MB by default, are answered with
+ * {@code 413} before they are read, and the buffer of a connection grows
+ * only as bytes of the body arrive, never to the length the client
+ * declares in advance.
+ *
+ * <p>超过上限（默认为 16 MB）的身体在读取之前就以{@code 413}应答，连接的缓冲区只随身体字节的到达而增长，
+ * 从不预先增长到客户端声明的长度
+ *
+ * <p>A client must send each whole request within the idle timeout, 30
+ * seconds by default, counted from the previous request, and must keep
+ * taking the bytes of a response; otherwise the connection is closed.
+ * Reactors check the deadlines of their connections about once a second.
+ *
+ * <p>客户端必须在空闲超时时间（默认为 30 秒，从上一个请求开始计算）之内发送完每一个完整的请求，
+ * 并且必须持续接收响应的字节；否则连接被关闭。反应器大约每秒检查一次它们的连接的期限
+ *
+ * <p>A reactor that fails is replaced by a new one, and only its own
+ * connections are lost.
+ *
+ * <p>失败的反应器被一个新的反应器替换，只有它自己的连接会丢失
+ *
+ * <p>A response body is read only as fast as the client takes it: a
+ * reactor reads up to 8 KB of it each time the channel can accept more,
+ * so a long or chunked body is never held in memory whole.
+ *
+ * <p>只按客户端接收的速度读取响应的身体：每当通道可以接受更多数据时，反应器读取其中最多 8 KB，
+ * 所以长的或分块的身体从不被整个保存在内存中
+ *
+ * <p>The take is executed on the reactor thread, so takes that block
+ * for a long time will delay other connections of the same reactor.
+ *
+ * <p>Take 在反应器线程上执行，所以长时间阻塞的 Take 会延迟同一反应器上的其他连接
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(of = { "take", "address", "threads", "limit", "idle" })
+public final class FtNio implements Front {
+
+	/**
+	 * Maximum size of request head, in bytes.
+	 *
+	 * 请求头部的最大字节数
+	 */
+	private static final int LIMIT = 65536;
+
+	/**
+	 * Take.
+	 */
+	private final transient Take take;
+
+	/**
+	 * Address to listen on.
+	 *
+	 * 监听的地址
+	 */
+	private final transient InetSocketAddress address;
+
+	/**
+	 * Number of reactor threads.
+	 *
+	 * 反应器线程的数量
+	 */
+	private final transient int threads;
+
+	/**
+	 * Maximum size of request body, in bytes.
+	 *
+	 * 请求身体的最大字节数
+	 */
+	private final transient int limit;
+
+	/**
+	 * How long a connection may wait for a request, in milliseconds.
+	 *
+	 * 连接等待一个请求的最长时间，以毫秒计
+	 */
+	private final transient int idle;
+
+	/**
+	 * Ctor.
+	 * @param tks Take 实例
+	 * @param port 端口号
+	 */
+	public FtNio(final Take tks, final int port) {
+		this(tks, port, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Ctor.
+	 * @param tks Take 实例
+	 * @param port 端口号
+	 * @param thr 反应器线程数量
+	 */
+	public FtNio(final Take tks, final int port, final int thr) {
+		this(tks, new InetSocketAddress(port), thr);
+	}
+
+	/**
+	 * Ctor.
+	 * @param tks Take 实例
+	 * @param addr 监听地址
+	 * @param thr 反应器线程数量
+	 */
+	public FtNio(final Take tks, final InetSocketAddress addr, final int thr) {
+		this(tks, addr, thr, 16 << 20);
+	}
+
+	/**
+	 * Ctor.
+	 * @param tks Take 实例
+	 * @param addr 监听地址
+	 * @param thr 反应器线程数量
+	 * @param bytes 请求身体的最大字节数
+	 */
+	public FtNio(final Take tks, final InetSocketAddress addr, final int thr,
+			final int bytes) {
+		this(tks, addr, thr, bytes, (int) TimeUnit.SECONDS.toMillis(30L));
+	}
+
+	/**
+	 * Ctor.
+	 * @param tks Take 实例
+	 * @param addr 监听地址
+	 * @param thr 反应器线程数量
+	 * @param bytes 请求身体的最大字节数
+	 * @param timeout 空闲超时时间，以毫秒计
+	 */
+	public FtNio(final Take tks, final InetSocketAddress addr, final int thr,
+			final int bytes, final int timeout) {
+		if (thr < 1) {
+			throw new IllegalArgumentException(
+						String.format("at least one reactor thread is required: %d", thr)
+					);
+		}
+		this.take = tks;
+		this.address = addr;
+		this.threads = thr;
+		this.limit = Math.min(bytes, Integer.MAX_VALUE - FtNio.LIMIT - 8);
+		this.idle = timeout;
+	}
+
+	/**
+	 * Start and dispatch all incoming connections.
+	 *
+	 * 开始并且分发接收到的连接
+	 *
+	 * @param exit
+	 * @throws IOException
+	 */
+	@Override
+	public void start(final Exit exit) throws IOException {
+		final FtNio.Reactor[] reactors = new FtNio.Reactor[this.threads];
+		final Thread[] workers = new Thread[this.threads];
+		try (
+				final ServerSocketChannel server = ServerSocketChannel.open();
+				final Selector selector = Selector.open();
+			) {
+			server.configureBlocking(false);
+			server.socket().setReuseAddress(true);
+			server.bind(this.address);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+			for (int idx = 0; idx < reactors.length; ++idx) {
+				this.spawn(reactors, workers, idx);
+			}
+			int next = 0;
+			do {
+				if (selector.select(TimeUnit.SECONDS.toMillis(1L)) > 0) {
+					selector.selectedKeys().clear();
+					next = this.accept(server, reactors, workers, next);
+				}
+			} while (!exit.ready());
+		} finally {
+			FtNio.stop(reactors, workers);
+		}
+	}
+
+	/**
+	 * Start a reactor in its own thread.
+	 *
+	 * 在自己的线程中启动一个反应器
+	 *
+	 * @param reactors 反应器
+	 * @param workers 反应器线程
+	 * @param idx 反应器下标
+	 * @throws IOException
+	 */
+	private void spawn(final FtNio.Reactor[] reactors, final Thread[] workers,
+			final int idx) throws IOException {
+		reactors[idx] = new FtNio.Reactor(this.take, this.limit, this.idle);
+		workers[idx] = new Thread(
+					reactors[idx],
+					String.format("%s-%d", FtNio.class.getSimpleName(), idx)
+				);
+		workers[idx].setDaemon(true);
+		workers[idx].start();
+	}
+
+	/**
+	 * Accept all pending connections, spreading them over reactors and
+	 * replacing the reactors that have failed.
+	 *
+	 * 接收所有等待中的连接，把它们轮流分配给反应器，并替换已经失败的反应器
+	 *
+	 * @param server 服务器通道
+	 * @param reactors 反应器
+	 * @param workers 反应器线程
+	 * @param first 第一个使用的反应器下标
+	 * @return index 下一个使用的反应器下标
+	 * @throws IOException
+	 */
+	private int accept(final ServerSocketChannel server, final FtNio.Reactor[] reactors,
+			final Thread[] workers, final int first) throws IOException {
+		int next = first;
+		while (true) {
+			final SocketChannel channel = server.accept();
+			if (channel == null) {
+				break;
+			}
+			if (!reactors[next].alive()) {
+				this.spawn(reactors, workers, next);
+			}
+			reactors[next].register(channel);
+			next = (next + 1) % reactors.length;
+		}
+		return next;
+	}
+
+	/**
+	 * Stop all reactors and wait for them to finish.
+	 *
+	 * 停止所有反应器并等待它们结束
+	 *
+	 * @param reactors 反应器
+	 * @param workers 反应器线程
+	 */
+	private static void stop(final FtNio.Reactor[] reactors, final Thread[] workers) {
+		for (final FtNio.Reactor reactor : reactors) {
+			if (reactor != null) {
+				reactor.close();
+			}
+		}
+		for (final Thread worker : workers) {
+			if (worker != null) {
+				try {
+					worker.join(TimeUnit.SECONDS.toMillis(1L));
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reactor, serving the channels registered with its selector.
+	 *
+	 * 反应器，服务注册在它的选择器上的通道
+	 *
+	 * <p>A failure of one channel closes only that channel; if the
+	 * selector fails, the reactor closes all its channels and stops, and
+	 * the channels handed over to it later are closed too.
+	 *
+	 * <p>一个通道的失败只关闭这个通道；如果选择器失败，反应器关闭它所有的通道并停止，
+	 * 之后交给它的通道也被关闭
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Reactor implements Runnable {
+
+		/**
+		 * How often deadlines are checked, in milliseconds.
+		 *
+		 * 检查期限的频率，以毫秒计
+		 */
+		private static final long TICK = TimeUnit.SECONDS.toMillis(1L);
+
+		/**
+		 * Take.
+		 */
+		private final transient Take take;
+
+		/**
+		 * Maximum size of request body, in bytes.
+		 *
+		 * 请求身体的最大字节数
+		 */
+		private final transient int limit;
+
+		/**
+		 * How long a connection may wait for a request, in milliseconds.
+		 *
+		 * 连接等待一个请求的最长时间，以毫秒计
+		 */
+		private final transient int idle;
+
+		/**
+		 * Selector.
+		 *
+		 * 选择器
+		 */
+		private final transient Selector selector;
+
+		/**
+		 * Channels waiting for registration.
+		 *
+		 * 等待注册的通道
+		 */
+		private final transient Queue<SocketChannel> incoming;
+
+		/**
+		 * Is it closed?
+		 *
+		 * 是否已关闭
+		 */
+		private final transient AtomicBoolean closed;
+
+		/**
+		 * When deadlines were checked last, in nanoseconds.
+		 *
+		 * 上一次检查期限的时间，以纳秒计
+		 */
+		private transient long checked;
+
+		/**
+		 * Ctor.
+		 * @param tks Take 实例
+		 * @param bytes 请求身体的最大字节数
+		 * @param timeout 空闲超时时间，以毫秒计
+		 * @throws IOException
+		 */
+		Reactor(final Take tks, final int bytes, final int timeout) throws IOException {
+			this.take = tks;
+			this.limit = bytes;
+			this.idle = timeout;
+			this.selector = Selector.open();
+			this.incoming = new ConcurrentLinkedQueue<>();
+			this.closed = new AtomicBoolean(false);
+		}
+
+		/**
+		 * Hand a new channel over to this reactor.
+		 *
+		 * 把一个新通道交给这个反应器
+		 *
+		 * @param channel 通道
+		 */
+		void register(final SocketChannel channel) {
+			this.incoming.add(channel);
+			if (this.closed.get()) {
+				this.drop();
+			} else {
+				this.selector.wakeup();
+			}
+		}
+
+		/**
+		 * Is it still serving its channels?
+		 *
+		 * 它是否仍在服务它的通道
+		 *
+		 * @return TRUE if it is
+		 */
+		boolean alive() {
+			return !this.closed.get();
+		}
+
+		/**
+		 * Ask the reactor to stop.
+		 *
+		 * 请求反应器停止
+		 */
+		void close() {
+			this.closed.set(true);
+			this.selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.checked = System.nanoTime();
+				while (!this.closed.get()) {
+					this.selector.select(FtNio.Reactor.TICK);
+					this.attach();
+					for (final SelectionKey key : this.selector.selectedKeys()) {
+						FtNio.Reactor.serve(key);
+					}
+					this.selector.selectedKeys().clear();
+					this.expire();
+				}
+			} catch (final IOException ex) {
+				throw new IllegalStateException(ex);
+			} finally {
+				this.shutdown();
+			}
+		}
+
+		/**
+		 * Register all waiting channels with the selector.
+		 *
+		 * 把所有等待中的通道注册到选择器上
+		 *
+		 * @throws IOException
+		 */
+		private void attach() {
+			while (true) {
+				final SocketChannel channel = this.incoming.poll();
+				if (channel == null) {
+					break;
+				}
+				try {
+					channel.configureBlocking(false);
+					channel.register(
+							this.selector,
+							SelectionKey.OP_READ,
+							new FtNio.Connection(channel, this.take, this.limit, this.idle)
+						);
+				} catch (final IOException ex) {
+					FtNio.Reactor.close(channel);
+				}
+			}
+		}
+
+		/**
+		 * Close the connections whose deadlines have passed, about once
+		 * a second.
+		 *
+		 * 关闭期限已过的连接，大约每秒一次
+		 */
+		private void expire() {
+			final long now = System.nanoTime();
+			if (now - this.checked >= TimeUnit.MILLISECONDS.toNanos(FtNio.Reactor.TICK)) {
+				this.checked = now;
+				for (final SelectionKey key : this.selector.keys()) {
+					final FtNio.Connection conn = (FtNio.Connection) key.attachment();
+					if (key.isValid() && conn.expired(now)) {
+						conn.close(key);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Serve one ready key.
+		 *
+		 * 服务一个就绪的键
+		 *
+		 * @param key 选择键
+		 */
+		private static void serve(final SelectionKey key) {
+			final FtNio.Connection conn = (FtNio.Connection) key.attachment();
+			try {
+				if (key.isValid() && key.isReadable()) {
+					conn.read(key);
+				}
+				if (key.isValid() && key.isWritable()) {
+					conn.write(key);
+				}
+			} catch (final IOException | RuntimeException ex) {
+				conn.close(key);
+			}
+		}
+
+		/**
+		 * Close all channels and the selector.
+		 *
+		 * 关闭所有通道以及选择器
+		 */
+		private void shutdown() {
+			this.closed.set(true);
+			for (final SelectionKey key : this.selector.keys()) {
+				((FtNio.Connection) key.attachment()).close(key);
+			}
+			this.drop();
+			try {
+				this.selector.close();
+			} catch (final IOException ex) {
+				assert ex != null;
+			}
+		}
+
+		/**
+		 * Close all channels waiting for registration.
+		 *
+		 * 关闭所有等待注册的通道
+		 */
+		private void drop() {
+			while (true) {
+				final SocketChannel channel = this.incoming.poll();
+				if (channel == null) {
+					break;
+				}
+				FtNio.Reactor.close(channel);
+			}
+		}
+
+		/**
+		 * Close the channel, quietly.
+		 *
+		 * 安静地关闭通道
+		 *
+		 * @param channel 通道
+		 */
+		private static void close(final SocketChannel channel) {
+			try {
+				channel.close();
+			} catch (final IOException ex) {
+				assert ex != null;
+			}
+		}
+	}
+
+	/**
+	 * One client connection, with its input and output buffers.
+	 *
+	 * 一个客户端连接，以及它的输入和输出缓冲
+	 *
+	 * <p>This class is NOT thread-safe, it is used only by its reactor.
+	 *
+	 * <p>这个类不是线程安全的，它只被所属的反应器使用
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Connection {
+
+		/**
+		 * Channel.
+		 *
+		 * 通道
+		 */
+		private final transient SocketChannel channel;
+
+		/**
+		 * Connection, as requests see it.
+		 *
+		 * 请求所看到的连接
+		 */
+		private final transient RqSocket.Connection peer;
+
+		/**
+		 * Take.
+		 */
+		private final transient Take take;
+
+		/**
+		 * Maximum size of request body, in bytes.
+		 *
+		 * 请求身体的最大字节数
+		 */
+		private final transient int limit;
+
+		/**
+		 * Responses waiting to be written.
+		 *
+		 * 等待写出的响应
+		 */
+		private final transient Queue<FtNio.Chunk> output;
+
+		/**
+		 * How long the connection may wait for a request, in nanoseconds.
+		 *
+		 * 连接等待一个请求的最长时间，以纳秒计
+		 */
+		private final transient long timeout;
+
+		/**
+		 * When the connection expires, in nanoseconds.
+		 *
+		 * 连接过期的时间，以纳秒计
+		 */
+		private transient long deadline;
+
+		/**
+		 * Bytes read but not consumed yet (in write mode).
+		 *
+		 * 已读取但未消费的字节（写模式）
+		 */
+		private transient ByteBuffer input;
+
+		/**
+		 * Should the connection be closed once output is written?
+		 *
+		 * 输出写完之后是否关闭连接
+		 */
+		private transient boolean closing;
+
+		/**
+		 * Ctor.
+		 * @param chnl 通道
+		 * @param tks Take 实例
+		 * @param bytes 请求身体的最大字节数
+		 * @param idle 空闲超时时间，以毫秒计
+		 */
+		Connection(final SocketChannel chnl, final Take tks, final int bytes,
+				final int idle) {
+			this.channel = chnl;
+			this.peer = new RqSocket.Connection(chnl.socket());
+			this.take = tks;
+			this.limit = bytes;
+			this.output = new ArrayDeque<>();
+			this.timeout = TimeUnit.MILLISECONDS.toNanos(idle);
+			this.deadline = System.nanoTime() + this.timeout;
+			this.input = ByteBuffer.allocate(8192);
+		}
+
+		/**
+		 * Read what is available and process complete requests.
+		 *
+		 * 读取可用的数据并处理完整的请求
+		 *
+		 * @param key 选择键
+		 * @throws IOException
+		 */
+		void read(final SelectionKey key) throws IOException {
+			if (!this.input.hasRemaining()) {
+				this.grow(this.input.capacity() * 2);
+			}
+			final int read = this.channel.read(this.input);
+			boolean more = true;
+			while (more && !this.closing) {
+				more = this.next();
+			}
+			if (read < 0) {
+				this.closing = true;
+			}
+			this.interest(key);
+		}
+
+		/**
+		 * Write as much of the pending output as the channel accepts.
+		 *
+		 * 尽可能多地写出等待中的输出
+		 *
+		 * @param key 选择键
+		 * @throws IOException
+		 */
+		void write(final SelectionKey key) throws IOException {
+			this.deadline = System.nanoTime() + this.timeout;
+			while (!this.output.isEmpty()) {
+				if (!this.output.peek().send(this.channel)) {
+					break;
+				}
+				this.output.poll();
+			}
+			this.interest(key);
+		}
+
+		/**
+		 * Has the deadline passed? It moves on when a whole request is
+		 * read and when the channel accepts more of the output, but not
+		 * with parts of a request.
+		 *
+		 * 期限是否已过？它在读完一个完整的请求时以及通道接受更多输出时后移，但不随请求的部分后移
+		 *
+		 * @param now 当前时间，以纳秒计
+		 * @return TRUE if it has
+		 */
+		boolean expired(final long now) {
+			return now - this.deadline > 0L;
+		}
+
+		/**
+		 * Close the channel, quietly.
+		 *
+		 * 安静地关闭通道
+		 *
+		 * @param key 选择键
+		 */
+		void close(final SelectionKey key) {
+			key.cancel();
+			try {
+				this.channel.close();
+			} catch (final IOException ex) {
+				assert ex != null;
+			}
+			for (final FtNio.Chunk chunk : this.output) {
+				chunk.close();
+			}
+			this.output.clear();
+		}
+
+		/**
+		 * Update interest set of the key, closing if everything is done.
+		 *
+		 * 更新选择键关注的事件，如果所有事情已完成则关闭
+		 *
+		 * @param key 选择键
+		 */
+		private void interest(final SelectionKey key) {
+			if (this.output.isEmpty() && this.closing) {
+				this.close(key);
+			} else if (this.output.isEmpty()) {
+				key.interestOps(SelectionKey.OP_READ);
+			} else if (this.closing) {
+				key.interestOps(SelectionKey.OP_WRITE);
+			} else {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+
+		/**
+		 * Process the next request, if it is completely buffered.
+		 *
+		 * 如果下一个请求已被完整缓冲则处理它
+		 *
+		 * @return TRUE if a request was processed
+		 * @throws IOException
+		 */
+		private boolean next() throws IOException {
+			final byte[] bytes = this.input.array();
+			final int size = this.input.position();
+			final int head = FtNio.Connection.end(bytes, size);
+			boolean done = false;
+			if (head < 0 && size >= FtNio.LIMIT) {
+				this.fail(
+					new HttpException(
+						HttpURLConnection.HTTP_BAD_REQUEST,
+						String.format("request head is longer than %d bytes", FtNio.LIMIT)
+					)
+				);
+			} else if (head > 0) {
+				done = this.dispatch(bytes, head, size);
+			}
+			return done;
+		}
+
+		/**
+		 * Parse the buffered head and dispatch the request once its body
+		 * is buffered too.
+		 *
+		 * 解析缓冲的头部，并在身体也缓冲完毕后分发请求
+		 *
+		 * @param bytes 缓冲字节
+		 * @param head 头部结束位置
+		 * @param size 缓冲的字节数
+		 * @return TRUE if a request was processed
+		 * @throws IOException
+		 */
+		private boolean dispatch(final byte[] bytes, final int head,
+				final int size) throws IOException {
+			final Iterable<String> lines;
+			final long length;
+			try {
+				lines = new RqLive(new ByteArrayInputStream(bytes, 0, head)).head();
+				length = BkBasic.length(lines);
+			} catch (final HttpException ex) {
+				this.fail(ex);
+				return false;
+			}
+			boolean done = false;
+			if (length < 0L) {
+				this.fail(
+					new HttpException(
+						HttpURLConnection.HTTP_LENGTH_REQUIRED,
+						"only requests with Content-Length body are supported"
+					)
+				);
+			} else if (length > this.limit) {
+				this.fail(
+					new HttpException(
+						HttpURLConnection.HTTP_ENTITY_TOO_LARGE,
+						String.format("request body is longer than %d bytes: %d", this.limit, length)
+					)
+				);
+			} else if (size >= head + length) {
+				final byte[] body = new byte[(int) length];
+				System.arraycopy(bytes, head, body, 0, body.length);
+				this.input.flip();
+				this.input.position(head + body.length);
+				this.input.compact();
+				this.deadline = System.nanoTime() + this.timeout;
+				this.respond(lines, body, BkBasic.persistent(lines));
+				done = true;
+			}
+			return done;
+		}
+
+		/**
+		 * Run the take and queue its response.
+		 *
+		 * 运行 Take 并把它的响应排入队列
+		 *
+		 * @param lines 请求头部
+		 * @param body 请求身体
+		 * @param keep 连接是否可以保持
+		 * @throws IOException
+		 */
+		private void respond(final Iterable<String> lines, final byte[] body,
+				final boolean keep) throws IOException {
+			final Request req = new RqSocket(
+						new Request() {
+
+							@Override
+							public Iterable<String> head() {
+								return lines;
+							}
+
+							@Override
+							public InputStream body() {
+								return new ByteArrayInputStream(body);
+							}
+						},
+						this.peer
+					);
+			final FtNio.Sink sink = new FtNio.Sink();
+			this.closing = !BkBasic.print(this.take, req, sink, keep);
+			this.output.addAll(sink.chunks());
+		}
+
+		/**
+		 * Queue a failure response and close the connection after it.
+		 *
+		 * 把错误响应排入队列，并在之后关闭连接
+		 *
+		 * @param err 错误
+		 * @throws IOException
+		 */
+		private void fail(final HttpException err) throws IOException {
+			final FtNio.Sink sink = new FtNio.Sink();
+			BkBasic.print(BkBasic.failure(err, err.code()), sink, false);
+			this.output.addAll(sink.chunks());
+			this.closing = true;
+		}
+
+		/**
+		 * Replace input buffer with a bigger one.
+		 *
+		 * 把输入缓冲替换成一个更大的
+		 *
+		 * @param capacity 新的容量
+		 */
+		private void grow(final int capacity) {
+			final ByteBuffer bigger = ByteBuffer.allocate(capacity);
+			this.input.flip();
+			bigger.put(this.input);
+			this.input = bigger;
+		}
+
+		/**
+		 * Find the end of the head (right after the empty line).
+		 *
+		 * 找到头部的结束位置（紧跟在空行之后）
+		 *
+		 * @param bytes 字节
+		 * @param size 有效字节数
+		 * @return position 位置，如果未找到则为 -1
+		 */
+		private static int end(final byte[] bytes, final int size) {
+			int pos = -1;
+			for (int idx = 3; idx < size; ++idx) {
+				if (bytes[idx] == '\n' && bytes[idx - 1] == '\r'
+					&& bytes[idx - 2] == '\n' && bytes[idx - 3] == '\r') {
+					pos = idx + 1;
+					break;
+				}
+			}
+			return pos;
+		}
+	}
+
+	/**
+	 * Part of a response waiting to be written.
+	 *
+	 * 等待写出的响应的一部分
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private interface Chunk {
+
+		/**
+		 * Write as much as the channel accepts.
+		 *
+		 * 尽可能多地写出通道接受的数据
+		 *
+		 * @param channel 非阻塞通道
+		 * @return TRUE if the chunk is written completely
+		 * @throws IOException
+		 */
+		boolean send(SocketChannel channel) throws IOException;
+
+		/**
+		 * Release resources of the chunk, quietly.
+		 *
+		 * 安静地释放这一部分的资源
+		 */
+		void close();
+	}
+
+	/**
+	 * Bytes of a response.
+	 *
+	 * 响应的字节
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Bytes implements FtNio.Chunk {
+
+		/**
+		 * Bytes left to write (in read mode).
+		 *
+		 * 剩余要写出的字节（读模式）
+		 */
+		private final transient ByteBuffer buffer;
+
+		/**
+		 * Owner of the bytes, closed once they are written.
+		 *
+		 * 字节的所有者，在它们写出后关闭
+		 */
+		private final transient Closeable owner;
+
+		/**
+		 * Ctor.
+		 * @param buf 要写出的字节
+		 */
+		Bytes(final ByteBuffer buf) {
+			this(buf, null);
+		}
+
+		/**
+		 * Ctor.
+		 * @param buf 要写出的字节
+		 * @param own 字节的所有者，可以为 NULL
+		 */
+		Bytes(final ByteBuffer buf, final Closeable own) {
+			this.buffer = buf;
+			this.owner = own;
+		}
+
+		@Override
+		public boolean send(final SocketChannel channel) throws IOException {
+			channel.write(this.buffer);
+			final boolean done = !this.buffer.hasRemaining();
+			if (done) {
+				this.close();
+			}
+			return done;
+		}
+
+		@Override
+		public void close() {
+			this.buffer.position(this.buffer.limit());
+			if (this.owner != null) {
+				try {
+					this.owner.close();
+				} catch (final IOException ex) {
+					assert ex != null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Region of a file, sent with
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+	 *
+	 * 文件的一个区域，通过{@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}发送
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Region implements FtNio.Chunk {
+
+		/**
+		 * File.
+		 *
+		 * 文件
+		 */
+		private final transient FileChannel file;
+
+		/**
+		 * End of the region.
+		 *
+		 * 区域的结束位置
+		 */
+		private final transient long end;
+
+		/**
+		 * Next byte to send.
+		 *
+		 * 下一个要发送的字节
+		 */
+		private transient long position;
+
+		/**
+		 * Ctor.
+		 * @param chnl 文件通道
+		 * @param start 区域的起始位置
+		 * @param count 区域的字节数
+		 */
+		Region(final FileChannel chnl, final long start, final long count) {
+			this.file = chnl;
+			this.position = start;
+			this.end = start + count;
+		}
+
+		@Override
+		public boolean send(final SocketChannel channel) throws IOException {
+			final long sent = this.file.transferTo(
+					this.position, this.end - this.position, channel
+				);
+			if (sent <= 0L && this.file.size() <= this.position) {
+				throw new IOException(
+						String.format(
+							"file is %d bytes shorter than expected",
+							this.end - this.position
+						)
+					);
+			}
+			this.position += sent;
+			final boolean done = this.position >= this.end;
+			if (done) {
+				this.close();
+			}
+			return done;
+		}
+
+		@Override
+		public void close() {
+			try {
+				this.file.close();
+			} catch (final IOException ex) {
+				assert ex != null;
+			}
+		}
+	}
+
+	/**
+	 * Stream of a response, read through a bounded buffer only when the
+	 * channel accepts more bytes.
+	 *
+	 * 响应的流，只在通道接受更多字节时通过一个有界的缓冲读取
+	 *
+	 * <p>The bytes written in front of the stream, usually the head, go
+	 * out together with its first bytes. One call sends at most
+	 * {@link #ROUNDS} buffers, so a fast client of a long body doesn't
+	 * hold the reactor from other connections.
+	 *
+	 * <p>写在流之前的字节（通常是头部）与流的第一批字节一起发出。一次调用最多发送{@link #ROUNDS}个缓冲，
+	 * 所以长身体的快速客户端不会占住反应器而耽误其他连接
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Stream implements FtNio.Chunk {
+
+		/**
+		 * Size of the buffer, besides the bytes in front of the stream.
+		 *
+		 * 缓冲的大小，不算流之前的字节
+		 */
+		private static final int SIZE = 8192;
+
+		/**
+		 * Buffers sent by one call at most.
+		 *
+		 * 一次调用最多发送的缓冲数
+		 */
+		private static final int ROUNDS = 16;
+
+		/**
+		 * Stream.
+		 *
+		 * 流
+		 */
+		private final transient InputStream body;
+
+		/**
+		 * Bytes read but not sent yet (in write mode).
+		 *
+		 * 已读取但未发送的字节（写模式）
+		 */
+		private final transient ByteBuffer buffer;
+
+		/**
+		 * Is the stream read to the end?
+		 *
+		 * 流是否已读到末尾
+		 */
+		private transient boolean ended;
+
+		/**
+		 * Ctor.
+		 * @param front 流之前的字节
+		 * @param input 流
+		 */
+		Stream(final byte[] front, final InputStream input) {
+			this.body = input;
+			this.buffer = ByteBuffer.allocate(front.length + FtNio.Stream.SIZE);
+			this.buffer.put(front);
+		}
+
+		@Override
+		public boolean send(final SocketChannel channel) throws IOException {
+			boolean done = false;
+			for (int round = 0; round < FtNio.Stream.ROUNDS; ++round) {
+				if (!this.ended && this.buffer.hasRemaining()) {
+					final int bytes = this.body.read(
+							this.buffer.array(), this.buffer.position(), this.buffer.remaining()
+						);
+					if (bytes < 0) {
+						this.ended = true;
+					} else {
+						this.buffer.position(this.buffer.position() + bytes);
+					}
+				}
+				this.buffer.flip();
+				channel.write(this.buffer);
+				final boolean sent = !this.buffer.hasRemaining();
+				this.buffer.compact();
+				done = sent && this.ended;
+				if (!sent || done) {
+					break;
+				}
+			}
+			if (done) {
+				this.close();
+			}
+			return done;
+		}
+
+		@Override
+		public void close() {
+			this.ended = true;
+			this.buffer.clear();
+			try {
+				this.body.close();
+			} catch (final IOException ex) {
+				assert ex != null;
+			}
+		}
+	}
+
+	/**
+	 * Output that collects a printed response as chunks, keeping file
+	 * bodies as regions and other bodies as streams to be sent later.
+	 *
+	 * 把打印的响应收集为若干部分的输出，文件身体作为区域、其他身体作为流保存，稍后发送
+	 *
+	 * <p>This class is NOT thread-safe.
+	 *
+	 * <p>这个类不是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Sink extends OutputStream implements ChannelOutput {
+
+		/**
+		 * Complete chunks.
+		 *
+		 * 完整的部分
+		 */
+		private final transient List<FtNio.Chunk> done;
+
+		/**
+		 * Bytes written after the last complete chunk, only heads and
+		 * other short writes, since bodies come as chunks.
+		 *
+		 * 最后一个完整部分之后写入的字节，只有头部和其他短的写入，因为身体以部分的形式到来
+		 */
+		private final transient ByteArrayOutputStream bytes;
+
+		/**
+		 * Ctor.
+		 */
+		Sink() {
+			super();
+			this.done = new LinkedList<>();
+			this.bytes = new ByteArrayOutputStream();
+		}
+
+		@Override
+		public void write(final int data) {
+			this.bytes.write(data);
+		}
+
+		@Override
+		public void write(final byte[] buf, final int off, final int len) {
+			this.bytes.write(buf, off, len);
+		}
+
+		@Override
+		public void transfer(final FileChannel file, final long position,
+				final long count) {
+			this.cut();
+			this.done.add(new FtNio.Region(file, position, count));
+		}
+
+		@Override
+		public void send(final ByteBuffer[] data, final Closeable owner) throws IOException {
+			this.cut();
+			if (data.length == 0) {
+				owner.close();
+			}
+			for (int idx = 0; idx < data.length; ++idx) {
+				if (idx == data.length - 1) {
+					this.done.add(new FtNio.Bytes(data[idx], owner));
+				} else {
+					this.done.add(new FtNio.Bytes(data[idx]));
+				}
+			}
+		}
+
+		@Override
+		public void stream(final InputStream body) {
+			this.done.add(new FtNio.Stream(this.bytes.toByteArray(), body));
+			this.bytes.reset();
+		}
+
+		/**
+		 * All chunks written so far.
+		 *
+		 * 目前为止写入的所有部分
+		 *
+		 * @return chunks 各部分
+		 */
+		List<FtNio.Chunk> chunks() {
+			this.cut();
+			return this.done;
+		}
+
+		/**
+		 * Turn the bytes written so far into a chunk.
+		 *
+		 * 把目前为止写入的字节变成一个部分
+		 */
+		private void cut() {
+			if (this.bytes.size() > 0) {
+				this.done.add(new FtNio.Bytes(ByteBuffer.wrap(this.bytes.toByteArray())));
+				this.bytes.reset();
+			}
+		}
+	}
+}
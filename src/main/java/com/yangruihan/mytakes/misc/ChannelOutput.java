@@ -0,0 +1,236 @@
+package com.yangruihan.mytakes.misc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output that can send regions of files and direct buffers without
+ * copying them through the heap.
+ *
+ * 可以发送文件区域和直接缓冲而不经过堆内存复制的输出
+ *
+ * <p>{@link com.yangruihan.mytakes.rs.RsPrint} recognizes outputs of
+ * this type and gives them file bodies as channels, which end up in
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so
+ * the kernel copies the file straight to the socket:
+ *
+ * <pre> try (final OutputStream output = new ChannelOutput.Blocking(
+ * 	socket.getChannel()
+ * )) {
+ * 	new RsPrint(new RsWithBody(Paths.get("big.iso"))).print(output);
+ * }</pre>
+ *
+ * <p>{@link com.yangruihan.mytakes.rs.RsPrint}能识别这种类型的输出，并把文件身体作为通道交给它们，
+ * 最终调用{@link FileChannel#transferTo(long, long, WritableByteChannel)}，
+ * 所以由内核直接把文件复制到 Socket
+ *
+ * <p>Other bodies are given to them as streams, which they may read only
+ * as fast as they can send the bytes, so a long body is never held in
+ * memory whole.
+ *
+ * <p>其他身体作为流交给它们，它们可以只按发送字节的速度读取，所以长的身体从不被整个保存在内存中
+ *
+ * <p>All implementations of this interface must be output streams.
+ *
+ * <p>这个接口的所有实现必须是输出流
+ *
+ * @author Yrh
+ *
+ */
+public interface ChannelOutput {
+
+	/**
+	 * Send the region of the file, after everything written before it.
+	 * The output takes the file over and closes it once it is sent.
+	 *
+	 * 在之前写入的所有内容之后发送文件的这个区域。输出接管这个文件，并在发送完毕后关闭它
+	 *
+	 * @param file 文件通道
+	 * @param position 区域的起始位置
+	 * @param count 区域的字节数
+	 * @throws IOException
+	 */
+	void transfer(FileChannel file, long position, long count) throws IOException;
+
+	/**
+	 * Send the buffers as they are, after everything written before them.
+	 * The output takes the owner of the buffers over and closes it once
+	 * they are sent.
+	 *
+	 * 在之前写入的所有内容之后原样发送这些缓冲。输出接管这些缓冲的所有者，并在发送完毕后关闭它
+	 *
+	 * @param data 缓冲（读模式）
+	 * @param owner 缓冲的所有者
+	 * @throws IOException
+	 */
+	void send(ByteBuffer[] data, Closeable owner) throws IOException;
+
+	/**
+	 * Send the bytes of the stream as they are read, after everything
+	 * written before them. The output takes the stream over and closes it
+	 * once it is read to the end.
+	 *
+	 * 在之前写入的所有内容之后，边读取边发送流中的字节。输出接管这个流，并在读到末尾后关闭它
+	 *
+	 * @param body 流
+	 * @throws IOException
+	 */
+	void stream(InputStream body) throws IOException;
+
+	/**
+	 * Buffered output stream over a blocking channel.
+	 *
+	 * 阻塞通道之上的带缓冲输出流
+	 *
+	 * <p>This class is NOT thread-safe.
+	 *
+	 * <p>这个类不是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	final class Blocking extends OutputStream implements ChannelOutput {
+
+		/**
+		 * Channel.
+		 *
+		 * 通道
+		 */
+		private final transient WritableByteChannel channel;
+
+		/**
+		 * Bytes written but not sent yet (in write mode).
+		 *
+		 * 已写入但未发送的字节（写模式）
+		 */
+		private final transient ByteBuffer buffer;
+
+		/**
+		 * Ctor.
+		 * @param chnl 阻塞模式的通道
+		 */
+		public Blocking(final WritableByteChannel chnl) {
+			this(chnl, 8192);
+		}
+
+		/**
+		 * Ctor.
+		 * @param chnl 阻塞模式的通道
+		 * @param size 缓冲大小
+		 */
+		public Blocking(final WritableByteChannel chnl, final int size) {
+			super();
+			this.channel = chnl;
+			this.buffer = ByteBuffer.allocate(size);
+		}
+
+		@Override
+		public void write(final int data) throws IOException {
+			if (!this.buffer.hasRemaining()) {
+				this.flush();
+			}
+			this.buffer.put((byte) data);
+		}
+
+		@Override
+		public void write(final byte[] buf, final int off, final int len) throws IOException {
+			if (len >= this.buffer.capacity()) {
+				this.flush();
+				this.send(ByteBuffer.wrap(buf, off, len));
+			} else {
+				if (len > this.buffer.remaining()) {
+					this.flush();
+				}
+				this.buffer.put(buf, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.buffer.flip();
+			this.send(this.buffer);
+			this.buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				this.flush();
+			} finally {
+				this.channel.close();
+			}
+		}
+
+		@Override
+		public void transfer(final FileChannel file, final long position,
+				final long count) throws IOException {
+			try {
+				this.flush();
+				final long end = position + count;
+				long pos = position;
+				while (pos < end) {
+					final long sent = file.transferTo(pos, end - pos, this.channel);
+					if (sent <= 0L && file.size() <= pos) {
+						throw new IOException(
+								String.format("file is %d bytes shorter than expected", end - pos)
+							);
+					}
+					pos += sent;
+				}
+			} finally {
+				file.close();
+			}
+		}
+
+		@Override
+		public void send(final ByteBuffer[] data, final Closeable owner) throws IOException {
+			try {
+				this.flush();
+				for (final ByteBuffer buf : data) {
+					this.send(buf);
+				}
+			} finally {
+				owner.close();
+			}
+		}
+
+		@Override
+		public void stream(final InputStream body) throws IOException {
+			try {
+				while (true) {
+					if (!this.buffer.hasRemaining()) {
+						this.flush();
+					}
+					final int bytes = body.read(
+							this.buffer.array(), this.buffer.position(), this.buffer.remaining()
+						);
+					if (bytes < 0) {
+						break;
+					}
+					this.buffer.position(this.buffer.position() + bytes);
+				}
+			} finally {
+				body.close();
+			}
+		}
+
+		/**
+		 * Send all bytes remaining in the buffer.
+		 *
+		 * 发送缓冲中剩余的所有字节
+		 *
+		 * @param buf 缓冲
+		 * @throws IOException
+		 */
+		private void send(final ByteBuffer buf) throws IOException {
+			while (buf.hasRemaining()) {
+				this.channel.write(buf);
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.yangruihan.mytakes.misc;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of platform daemon threads, named after their owner.
+ *
+ * 平台守护线程的工厂，线程以它们的所有者命名
+ *
+ * <p>Backs and takes that keep their own pools, like
+ * {@code BkParallel} and {@code TkCache}, make their threads with it, so
+ * the threads don't keep the JVM alive and show who owns them in a
+ * thread dump.
+ *
+ * <p>像{@code BkParallel}和{@code TkCache}这样拥有自己线程池的后端和 Take 用它生成线程，
+ * 所以这些线程不会让 JVM 保持运行，并且在线程转储中显示它们的所有者
+ *
+ * <p>The class is thread-safe.
+ *
+ * <p>这个类是线程安全的
+ *
+ * @author Yrh
+ *
+ */
+public final class Daemons implements ThreadFactory {
+
+	/**
+	 * Prefix of thread names.
+	 *
+	 * 线程名的前缀
+	 */
+	private final transient String prefix;
+
+	/**
+	 * Number of threads created so far.
+	 *
+	 * 到目前为止创建的线程数量
+	 */
+	private final transient AtomicInteger count;
+
+	/**
+	 * Ctor.
+	 * @param owner 所有者
+	 */
+	public Daemons(final Class<?> owner) {
+		this.prefix = owner.getSimpleName();
+		this.count = new AtomicInteger();
+	}
+
+	@Override
+	public Thread newThread(final Runnable runnable) {
+		final Thread thread = new Thread(
+					runnable,
+					String.format("%s-%d", this.prefix, this.count.incrementAndGet())
+				);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
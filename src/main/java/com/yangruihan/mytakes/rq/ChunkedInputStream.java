@@ -0,0 +1,305 @@
+package com.yangruihan.mytakes.rq;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.yangruihan.mytakes.HttpException;
+
+/**
+ * Input stream decoding a body sent with chunked transfer coding.
+ *
+ * 解码以分块传输编码发送的身体的输入流
+ *
+ * <p>Chunks are decoded while they are read, so a body of any size
+ * takes constant memory: data is read straight into the buffer of the
+ * caller, and only size lines and trailers go through a fixed buffer.
+ * The stream never reads past the end of the body, so the original
+ * stream may carry the next request:
+ *
+ * <pre> final ChunkedInputStream body = new ChunkedInputStream(input);
+ * Files.copy(body, Paths.get("upload.bin"));
+ * final List&lt;String&gt; trailers = body.trailers();</pre>
+ *
+ * <p>块在读取时被解码，所以任意大小的身体都只占用常数内存：数据被直接读入调用者的缓冲，
+ * 只有大小行和尾部经过一个固定的缓冲。这个流从不读取超过身体结束位置的数据，所以原始流可以承载下一个请求
+ *
+ * <p>Closing the stream doesn't close the original one.
+ *
+ * <p>关闭这个流不会关闭原始流
+ *
+ * <p>This class is NOT thread-safe.
+ *
+ * <p>这个类不是线程安全的
+ *
+ * @author Yrh
+ *
+ */
+public final class ChunkedInputStream extends InputStream {
+
+	/**
+	 * Maximum length of a size line or a trailer line.
+	 *
+	 * 大小行或尾部行的最大长度
+	 */
+	private static final int LIMIT = 4096;
+
+	/**
+	 * Maximum number of trailer lines.
+	 *
+	 * 尾部行的最大数量
+	 */
+	private static final int TRAILERS = 64;
+
+	/**
+	 * Original stream.
+	 *
+	 * 原始流
+	 */
+	private final transient InputStream origin;
+
+	/**
+	 * Buffer for size lines and trailers.
+	 *
+	 * 大小行和尾部的缓冲
+	 */
+	private final transient byte[] line;
+
+	/**
+	 * Trailer lines, after the last chunk.
+	 *
+	 * 尾部行，在最后一个块之后
+	 */
+	private final transient List<String> trailer;
+
+	/**
+	 * Bytes left in the current chunk.
+	 *
+	 * 当前块中剩余的字节数
+	 */
+	private transient long left;
+
+	/**
+	 * Has any chunk been started?
+	 *
+	 * 是否已经开始过任何块
+	 */
+	private transient boolean started;
+
+	/**
+	 * Has the last chunk been read?
+	 *
+	 * 最后一个块是否已被读取
+	 */
+	private transient boolean done;
+
+	/**
+	 * Ctor.
+	 * @param input 原始流
+	 */
+	public ChunkedInputStream(final InputStream input) {
+		super();
+		this.origin = input;
+		this.line = new byte[ChunkedInputStream.LIMIT];
+		this.trailer = new ArrayList<>(0);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int data = -1;
+		if (this.next()) {
+			data = this.origin.read();
+			if (data < 0) {
+				throw new EOFException("chunked body ended in the middle of a chunk");
+			}
+			--this.left;
+		}
+		return data;
+	}
+
+	@Override
+	public int read(final byte[] buf, final int off, final int len) throws IOException {
+		int read = -1;
+		if (len == 0) {
+			read = 0;
+		} else if (this.next()) {
+			read = this.origin.read(buf, off, (int) Math.min(len, this.left));
+			if (read < 0) {
+				throw new EOFException("chunked body ended in the middle of a chunk");
+			}
+			this.left -= read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(final long count) throws IOException {
+		long skipped = 0L;
+		while (skipped < count && this.next()) {
+			final long step = this.origin.skip(Math.min(count - skipped, this.left));
+			if (step <= 0L) {
+				if (this.origin.read() < 0) {
+					throw new EOFException("chunked body ended in the middle of a chunk");
+				}
+				this.left -= 1L;
+				skipped += 1L;
+			} else {
+				this.left -= step;
+				skipped += step;
+			}
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(this.left, this.origin.available());
+	}
+
+	@Override
+	public void close() {
+		// the original stream may carry more requests
+	}
+
+	/**
+	 * Trailer lines, empty until the whole body is read.
+	 *
+	 * 尾部行，在整个身体被读取之前为空
+	 *
+	 * @return lines 尾部行
+	 */
+	public List<String> trailers() {
+		return Collections.unmodifiableList(this.trailer);
+	}
+
+	/**
+	 * Move to the next chunk if the current one is consumed.
+	 *
+	 * 如果当前块已被消费，则移到下一个块
+	 *
+	 * @return TRUE if there are bytes to read
+	 * @throws IOException
+	 */
+	private boolean next() throws IOException {
+		if (this.left == 0L && !this.done) {
+			if (this.started && this.line() != 0) {
+				throw new HttpException(
+						HttpURLConnection.HTTP_BAD_REQUEST,
+						"chunk data is not followed by CRLF"
+					);
+			}
+			this.started = true;
+			this.left = this.size(this.line());
+			if (this.left == 0L) {
+				this.trailers(this.line());
+				this.done = true;
+			}
+		}
+		return this.left > 0L;
+	}
+
+	/**
+	 * Parse chunk size, ignoring chunk extensions.
+	 *
+	 * 解析块大小，忽略块扩展
+	 *
+	 * @param length 大小行的长度
+	 * @return size 块大小
+	 * @throws HttpException
+	 */
+	private long size(final int length) throws HttpException {
+		long size = 0L;
+		int pos = 0;
+		while (pos < length && this.line[pos] != ';'
+				&& this.line[pos] != ' ' && this.line[pos] != '\t') {
+			final int digit = Character.digit(this.line[pos], 16);
+			if (digit < 0 || pos >= 15) {
+				throw new HttpException(
+						HttpURLConnection.HTTP_BAD_REQUEST,
+						String.format("invalid chunk size line \"%s\"", this.text(length))
+					);
+			}
+			size = size << 4 | digit;
+			++pos;
+		}
+		if (pos == 0) {
+			throw new HttpException(
+					HttpURLConnection.HTTP_BAD_REQUEST,
+					String.format("invalid chunk size line \"%s\"", this.text(length))
+				);
+		}
+		return size;
+	}
+
+	/**
+	 * Read trailer lines, up to the empty line.
+	 *
+	 * 读取尾部行，直到空行
+	 *
+	 * @param first 第一行的长度
+	 * @throws IOException
+	 */
+	private void trailers(final int first) throws IOException {
+		int length = first;
+		while (length > 0) {
+			if (this.trailer.size() >= ChunkedInputStream.TRAILERS) {
+				throw new HttpException(
+						HttpURLConnection.HTTP_BAD_REQUEST,
+						String.format("more than %d trailer lines", ChunkedInputStream.TRAILERS)
+					);
+			}
+			this.trailer.add(this.text(length));
+			length = this.line();
+		}
+	}
+
+	/**
+	 * Read one line into the buffer, without its line break.
+	 *
+	 * 读取一行到缓冲中，不含换行符
+	 *
+	 * @return length 行的长度
+	 * @throws IOException
+	 */
+	private int line() throws IOException {
+		int length = 0;
+		while (true) {
+			final int data = this.origin.read();
+			if (data < 0) {
+				throw new EOFException("chunked body ended before its last chunk");
+			}
+			if (data == '\n') {
+				break;
+			}
+			if (length >= ChunkedInputStream.LIMIT) {
+				throw new HttpException(
+						HttpURLConnection.HTTP_BAD_REQUEST,
+						String.format("chunk line is longer than %d bytes", ChunkedInputStream.LIMIT)
+					);
+			}
+			this.line[length] = (byte) data;
+			++length;
+		}
+		if (length > 0 && this.line[length - 1] == '\r') {
+			--length;
+		}
+		return length;
+	}
+
+	/**
+	 * Decode the line in the buffer.
+	 *
+	 * 解码缓冲中的行
+	 *
+	 * @param length 行的长度
+	 * @return text 文本
+	 */
+	private String text(final int length) {
+		return new String(this.line, 0, length, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,535 @@
+package com.yangruihan.mytakes.rq;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.yangruihan.mytakes.misc.Concat;
+
+/**
+ * Flyweight view of a request head, over the buffer it was received in.
+ *
+ * 请求头部的享元视图，建立在接收它的缓冲之上
+ *
+ * <p>Nothing is decoded when the head is parsed: the view keeps only
+ * the offsets of every line and of its colon. A line, a header name or
+ * a header value becomes a {@link String} only when it is asked for,
+ * and names of well-known headers are taken from an interned table, so
+ * looking up a header doesn't decode the others:
+ *
+ * <pre> final List&lt;String&gt; hosts = view.values("Host");</pre>
+ *
+ * <p>解析头部时不会解码任何内容：视图只保存每一行及其冒号的偏移量。只有在被请求时，
+ * 一行、一个头的名字或值才会变成{@link String}，常见头的名字取自一个驻留表，
+ * 所以查找一个头不会解码其他的头
+ *
+ * <p>The first line (the request line) has no name and no value.
+ *
+ * <p>第一行（请求行）没有名字和值
+ *
+ * <p>The class is immutable and thread-safe: decoded strings are cached,
+ * but decoding the same bytes twice gives equal strings.
+ *
+ * <p>这个类是不可变的且线程安全的：解码的字符串会被缓存，但同样的字节解码两次得到的字符串是相等的
+ *
+ * @author Yrh
+ *
+ */
+public final class HeadView implements Iterable<String> {
+
+	/**
+	 * Names of well-known headers.
+	 *
+	 * 常见头的名字
+	 */
+	private static final String[] KNOWN = {
+		"Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language",
+		"Authorization", "Cache-Control", "Connection", "Content-Encoding",
+		"Content-Length", "Content-Type", "Cookie", "Date", "Expect",
+		"Forwarded", "Host", "If-Match", "If-Modified-Since", "If-None-Match",
+		"If-Range", "If-Unmodified-Since", "Keep-Alive", "Origin", "Pragma",
+		"Range", "Referer", "TE", "Trailer", "Transfer-Encoding", "Upgrade",
+		"User-Agent", "Via", "X-Forwarded-For", "X-Forwarded-Host",
+		"X-Forwarded-Port", "X-Forwarded-Proto", "X-Real-IP", "X-Request-Id",
+	};
+
+	/**
+	 * Bytes of the head, with line breaks removed.
+	 *
+	 * 头部的字节，换行符已被移除
+	 */
+	private final transient byte[] bytes;
+
+	/**
+	 * Start, colon and end of every line; colon is -1 if there is none.
+	 *
+	 * 每一行的起始、冒号和结束位置；没有冒号时为 -1
+	 */
+	private final transient int[] bounds;
+
+	/**
+	 * Decoded lines, filled lazily.
+	 *
+	 * 解码后的行，延迟填充
+	 */
+	private final transient String[] lines;
+
+	/**
+	 * Ctor.
+	 * @param buf 头部的字节
+	 * @param bnds 每一行的起始、冒号和结束位置
+	 * @param count 行数
+	 */
+	HeadView(final byte[] buf, final int[] bnds, final int count) {
+		this.bytes = buf;
+		this.bounds = bnds;
+		this.lines = new String[count];
+	}
+
+	/**
+	 * Number of lines, including the request line.
+	 *
+	 * 行数，包括请求行
+	 *
+	 * @return count 行数
+	 */
+	public int size() {
+		return this.lines.length;
+	}
+
+	/**
+	 * Line of the head.
+	 *
+	 * 头部的一行
+	 *
+	 * @param idx 行的下标
+	 * @return line 行
+	 */
+	public String line(final int idx) {
+		String line = this.lines[idx];
+		if (line == null) {
+			line = this.decode(this.start(idx), this.end(idx));
+			this.lines[idx] = line;
+		}
+		return line;
+	}
+
+	/**
+	 * Name of the header in the line, well-known names are interned.
+	 *
+	 * 这一行中头的名字，常见的名字是驻留的
+	 *
+	 * @param idx 行的下标
+	 * @return name 名字，没有时为空字符串
+	 */
+	public String name(final int idx) {
+		final int colon = this.colon(idx);
+		String name = "";
+		if (colon > 0) {
+			final int start = this.start(idx);
+			final int end = this.strip(start, colon);
+			for (final String known : HeadView.KNOWN) {
+				if (this.matches(start, end, known)) {
+					name = known;
+					break;
+				}
+			}
+			if (name.isEmpty()) {
+				name = this.decode(start, end);
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Value of the header in the line, without surrounding spaces.
+	 *
+	 * 这一行中头的值，不含两边的空白
+	 *
+	 * @param idx 行的下标
+	 * @return value 值，没有时为空字符串
+	 */
+	public String value(final int idx) {
+		final int colon = this.colon(idx);
+		String value = "";
+		if (colon > 0) {
+			final int start = this.skip(colon + 1, this.end(idx));
+			value = this.decode(start, this.strip(start, this.end(idx)));
+		}
+		return value;
+	}
+
+	/**
+	 * Does the line have a header with this name (case-insensitive)?
+	 *
+	 * 这一行的头是否具有这个名字（不区分大小写）
+	 *
+	 * @param idx 行的下标
+	 * @param name 名字
+	 * @return TRUE if it has
+	 */
+	public boolean has(final int idx, final CharSequence name) {
+		final int colon = this.colon(idx);
+		final int start = this.start(idx);
+		return colon > 0 && this.matches(start, this.strip(start, colon), name);
+	}
+
+	/**
+	 * Values of all headers with this name (case-insensitive), only these
+	 * values are decoded.
+	 *
+	 * 具有这个名字（不区分大小写）的所有头的值，只有这些值会被解码
+	 *
+	 * @param name 名字
+	 * @return values 值
+	 */
+	public List<String> values(final CharSequence name) {
+		List<String> values = Collections.emptyList();
+		for (int idx = 1; idx < this.lines.length; ++idx) {
+			if (this.has(idx, name)) {
+				if (values.isEmpty()) {
+					values = new ArrayList<>(1);
+				}
+				values.add(this.value(idx));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Values of all headers with this name (case-insensitive) in any
+	 * request head, found without decoding the others if it is a view,
+	 * or a view joined with more lines.
+	 *
+	 * 任意请求头部中具有这个名字（不区分大小写）的所有头的值，如果头部是视图，或者是连接了更多行的视图，
+	 * 查找时不会解码其他头
+	 *
+	 * @param head 请求头部
+	 * @param name 名字
+	 * @return values 值
+	 */
+	public static List<String> lookup(final Iterable<String> head, final CharSequence name) {
+		List<String> values;
+		if (head instanceof HeadView) {
+			values = ((HeadView) head).values(name);
+		} else if (head instanceof HeadView.Joined) {
+			values = HeadView.lookup(((HeadView.Joined) head).origin(), name);
+			final List<String> more = HeadView.scan(((HeadView.Joined) head).extra(), name);
+			if (!more.isEmpty()) {
+				values = new ArrayList<>(values);
+				values.addAll(more);
+			}
+		} else {
+			values = HeadView.scan(head, name);
+		}
+		return values;
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new HeadView.Lines(this);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder text = new StringBuilder();
+		for (int idx = 0; idx < this.lines.length; ++idx) {
+			if (idx > 0) {
+				text.append(", ");
+			}
+			text.append(this.line(idx));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Values of all headers with this name (case-insensitive), found by
+	 * comparing the start of every line, without lower-casing it.
+	 *
+	 * 具有这个名字（不区分大小写）的所有头的值，通过比较每一行的开头找到，不把行转换为小写
+	 *
+	 * @param lines 行
+	 * @param name 名字
+	 * @return values 值
+	 */
+	private static List<String> scan(final Iterable<String> lines, final CharSequence name) {
+		final List<String> values = new ArrayList<>(1);
+		final String text = name.toString();
+		final int length = text.length();
+		for (final String line : lines) {
+			if (line.length() > length && line.charAt(length) == ':'
+					&& line.regionMatches(true, 0, text, 0, length)) {
+				values.add(line.substring(length + 1).trim());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Start of the line.
+	 *
+	 * 行的起始位置
+	 *
+	 * @param idx 行的下标
+	 * @return position 位置
+	 */
+	private int start(final int idx) {
+		return this.bounds[idx * 3];
+	}
+
+	/**
+	 * Colon of the line.
+	 *
+	 * 行中冒号的位置
+	 *
+	 * @param idx 行的下标
+	 * @return position 位置，没有时为 -1
+	 */
+	private int colon(final int idx) {
+		return this.bounds[idx * 3 + 1];
+	}
+
+	/**
+	 * End of the line.
+	 *
+	 * 行的结束位置
+	 *
+	 * @param idx 行的下标
+	 * @return position 位置
+	 */
+	private int end(final int idx) {
+		return this.bounds[idx * 3 + 2];
+	}
+
+	/**
+	 * Skip spaces and tabs at the start.
+	 *
+	 * 跳过开头的空格和制表符
+	 *
+	 * @param start 起始位置
+	 * @param end 结束位置
+	 * @return position 第一个非空白字节的位置
+	 */
+	private int skip(final int start, final int end) {
+		int pos = start;
+		while (pos < end && HeadView.blank(this.bytes[pos])) {
+			++pos;
+		}
+		return pos;
+	}
+
+	/**
+	 * Strip spaces and tabs at the end.
+	 *
+	 * 去掉结尾的空格和制表符
+	 *
+	 * @param start 起始位置
+	 * @param end 结束位置
+	 * @return position 最后一个非空白字节之后的位置
+	 */
+	private int strip(final int start, final int end) {
+		int pos = end;
+		while (pos > start && HeadView.blank(this.bytes[pos - 1])) {
+			--pos;
+		}
+		return pos;
+	}
+
+	/**
+	 * Are these bytes equal to the name, ignoring ASCII case?
+	 *
+	 * 这些字节是否等于这个名字，忽略 ASCII 大小写
+	 *
+	 * @param start 起始位置
+	 * @param end 结束位置
+	 * @param name 名字
+	 * @return TRUE if they are
+	 */
+	private boolean matches(final int start, final int end, final CharSequence name) {
+		boolean matches = end - start == name.length();
+		for (int idx = 0; matches && idx < name.length(); ++idx) {
+			matches = HeadView.lower(this.bytes[start + idx]) == HeadView.lower(name.charAt(idx));
+		}
+		return matches;
+	}
+
+	/**
+	 * Decode bytes, which are all 7-bit, as checked by the parser.
+	 *
+	 * 解码字节，解析器已经检查过它们都是 7 位的
+	 *
+	 * @param start 起始位置
+	 * @param end 结束位置
+	 * @return text 文本
+	 */
+	private String decode(final int start, final int end) {
+		return new String(this.bytes, start, end - start, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Is it a space or a tab?
+	 *
+	 * 是否是空格或制表符
+	 *
+	 * @param data 字节
+	 * @return TRUE if it is
+	 */
+	private static boolean blank(final int data) {
+		return data == ' ' || data == '\t';
+	}
+
+	/**
+	 * ASCII lower case.
+	 *
+	 * ASCII 小写
+	 *
+	 * @param data 字符
+	 * @return character 小写的字符
+	 */
+	private static int lower(final int data) {
+		int lower = data;
+		if (data >= 'A' && data <= 'Z') {
+			lower = data + ('a' - 'A');
+		}
+		return lower;
+	}
+
+	/**
+	 * Request head followed by more header lines, which keeps
+	 * {@link HeadView#lookup(Iterable, CharSequence)} as fast as the head
+	 * alone: the head is searched as it is, a view without decoding, and
+	 * only the extra lines are scanned.
+	 *
+	 * 后面跟着更多头的请求头部，它使{@link HeadView#lookup(Iterable, CharSequence)}与单独的头部一样快：
+	 * 头部按原样查找（如果是视图则不解码），只有额外的行会被逐行扫描
+	 *
+	 * <p>Neither the head nor the extra lines are copied.
+	 *
+	 * <p>头部和额外的行都不会被复制
+	 *
+	 * <p>The class is immutable and thread-safe.
+	 *
+	 * <p>这个类是不可变的且线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	public static final class Joined implements Iterable<String> {
+
+		/**
+		 * Original head, with the request line.
+		 *
+		 * 原始头部，包括请求行
+		 */
+		private final transient Iterable<String> head;
+
+		/**
+		 * Header lines after it.
+		 *
+		 * 它后面的头
+		 */
+		private final transient Iterable<String> lines;
+
+		/**
+		 * Ctor.
+		 * @param hed 原始头部，包括请求行
+		 * @param extra 它后面的头
+		 */
+		public Joined(final Iterable<String> hed, final Iterable<String> extra) {
+			this.head = hed;
+			this.lines = extra;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return new Concat<String>(this.head, this.lines).iterator();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s, %s", this.head, this.lines);
+		}
+
+		/**
+		 * Original head, with the request line.
+		 *
+		 * 原始头部，包括请求行
+		 *
+		 * @return head 头部
+		 */
+		Iterable<String> origin() {
+			return this.head;
+		}
+
+		/**
+		 * Header lines after the original head.
+		 *
+		 * 原始头部后面的头
+		 *
+		 * @return lines 行
+		 */
+		Iterable<String> extra() {
+			return this.lines;
+		}
+	}
+
+	/**
+	 * Iterator over decoded lines.
+	 *
+	 * 解码后的行的迭代器
+	 *
+	 * <p>This class is NOT thread-safe.
+	 *
+	 * <p>这个类不是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Lines implements Iterator<String> {
+
+		/**
+		 * The view.
+		 *
+		 * 视图
+		 */
+		private final transient HeadView view;
+
+		/**
+		 * Next line to return.
+		 *
+		 * 下一个要返回的行
+		 */
+		private transient int next;
+
+		/**
+		 * Ctor.
+		 * @param hview 视图
+		 */
+		Lines(final HeadView hview) {
+			this.view = hview;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next < this.view.size();
+		}
+
+		@Override
+		public String next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException("No more lines in the head.");
+			}
+			final String line = this.view.line(this.next);
+			++this.next;
+			return line;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("This iterable is immutable and cannot remove anything");
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.yangruihan.mytakes.rq;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yangruihan.mytakes.Request;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Request decorator, decoding a body sent with chunked transfer coding.
+ *
+ * 请求装饰器，解码以分块传输编码发送的身体
+ *
+ * <p>If the last transfer coding in {@code Transfer-Encoding} headers is
+ * {@code chunked}, the body is a {@link ChunkedInputStream} over the
+ * original one, otherwise the original body is returned as is:
+ *
+ * <pre> final InputStream body = new RqChunked(req).body();</pre>
+ *
+ * <p>如果{@code Transfer-Encoding}头中的最后一个传输编码是{@code chunked}，
+ * 身体是原始身体之上的一个{@link ChunkedInputStream}，否则原样返回原始身体
+ *
+ * <p>The body is made once, so that all its readers share the decoder.
+ *
+ * <p>身体只生成一次，所以它的所有读取者共享同一个解码器
+ *
+ * <p>The class is thread-safe.
+ *
+ * <p>这个类是线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(callSuper = true)
+public final class RqChunked extends RqWrap {
+
+	/**
+	 * Body, made on first use.
+	 *
+	 * 身体，在第一次使用时生成
+	 */
+	private final transient AtomicReference<InputStream> decoded;
+
+	/**
+	 * Ctor.
+	 * @param req 原始请求
+	 */
+	public RqChunked(final Request req) {
+		super(req);
+		this.decoded = new AtomicReference<>();
+	}
+
+	@Override
+	public InputStream body() throws IOException {
+		if (this.decoded.get() == null) {
+			InputStream body = super.body();
+			if (RqChunked.chunked(HeadView.lookup(this.head(), "Transfer-Encoding"))) {
+				body = new ChunkedInputStream(body);
+			}
+			this.decoded.compareAndSet(null, body);
+		}
+		return this.decoded.get();
+	}
+
+	/**
+	 * Is {@code chunked} the last of these transfer codings?
+	 *
+	 * {@code chunked}是否是这些传输编码中的最后一个
+	 *
+	 * @param values {@code Transfer-Encoding}头的值
+	 * @return TRUE if it is
+	 */
+	public static boolean chunked(final List<String> values) {
+		boolean chunked = false;
+		if (!values.isEmpty()) {
+			final String last = values.get(values.size() - 1);
+			final int comma = last.lastIndexOf(',');
+			chunked = "chunked".equals(
+					last.substring(comma + 1).trim().toLowerCase(Locale.ENGLISH)
+				);
+		}
+		return chunked;
+	}
+}
@@ -0,0 +1,210 @@
+package com.yangruihan.mytakes.rq;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yangruihan.mytakes.Request;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * HTTP headers parsing.
+ * 
+ * HTTP 头的解析
+ * 
+ * <p>Headers are found by name in constant time, the name is
+ * case-insensitive:
+ * 
+ * <pre> final List&lt;String&gt; hosts =
+ * 	new RqHeaders.Base(request).header("Host");</pre>
+ * 
+ * <p>按名字查找头只需要常数时间，名字不区分大小写
+ * 
+ * <p>All implementations of this interface must be immutable and thread-safe.
+ * 
+ * <p>这个接口的所有实现必须是不变且线程安全的
+ * 
+ * @author Yrh
+ *
+ */
+public interface RqHeaders extends Request {
+
+	/**
+	 * Get all values of the header.
+	 * 
+	 * 获得这个头的所有值
+	 * 
+	 * @param key 头的名字，不区分大小写
+	 * @return values 值，没有时为空列表
+	 * @throws IOException
+	 */
+	List<String> header(CharSequence key) throws IOException;
+
+	/**
+	 * Get all header names, in lower case.
+	 * 
+	 * 获得所有头的名字，以小写表示
+	 * 
+	 * @return names 名字
+	 * @throws IOException
+	 */
+	Set<String> names() throws IOException;
+
+	/**
+	 * Request decorator, for HTTP headers parsing.
+	 * 
+	 * 用于解析 HTTP 头的请求装饰器
+	 * 
+	 * <p>The head is turned into a hashed multimap once, on the first
+	 * lookup, and the map is kept for all later lookups.
+	 * 
+	 * <p>头部在第一次查找时被转换成一个哈希多重映射，之后的查找都使用这个映射
+	 * 
+	 * <p>The class is immutable and thread-safe.
+	 * 
+	 * <p>这个类是不可变的且线程安全的
+	 * 
+	 * @author Yrh
+	 *
+	 */
+	@EqualsAndHashCode(callSuper = true)
+	final class Base extends RqWrap implements RqHeaders {
+
+		/**
+		 * Headers, by lower case name, built on first use.
+		 * 
+		 * 按小写名字索引的头，在第一次使用时建立
+		 */
+		private final transient AtomicReference<Map<String, List<String>>> map;
+
+		/**
+		 * Ctor.
+		 * @param req 原始请求
+		 */
+		public Base(final Request req) {
+			super(req);
+			this.map = new AtomicReference<>();
+		}
+
+		@Override
+		public List<String> header(final CharSequence key) throws IOException {
+			final List<String> values = this.map().get(
+						key.toString().toLowerCase(Locale.ENGLISH)
+					);
+			final List<String> found;
+			if (values == null) {
+				found = Collections.emptyList();
+			} else {
+				found = values;
+			}
+			return found;
+		}
+
+		@Override
+		public Set<String> names() throws IOException {
+			return this.map().keySet();
+		}
+
+		/**
+		 * Get the map, building it if needed.
+		 * 
+		 * 获取映射，如果需要则建立它
+		 * 
+		 * @return map 映射
+		 * @throws IOException
+		 */
+		private Map<String, List<String>> map() throws IOException {
+			if (this.map.get() == null) {
+				this.map.compareAndSet(null, RqHeaders.Base.build(this.head()));
+			}
+			return this.map.get();
+		}
+
+		/**
+		 * Build unmodifiable map of headers from the head.
+		 * 
+		 * 从头部建立不可修改的头映射
+		 * 
+		 * @param head 头部
+		 * @return map 映射
+		 */
+		private static Map<String, List<String>> build(final Iterable<String> head) {
+			final Map<String, List<String>> map = new HashMap<>(32);
+			RqHeaders.Base.collect(map, head, true);
+			for (final Map.Entry<String, List<String>> entry : map.entrySet()) {
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+			return Collections.unmodifiableMap(map);
+		}
+
+		/**
+		 * Add headers of the lines to the map, without decoding a view
+		 * more than needed.
+		 * 
+		 * 把这些行中的头添加到映射中，对视图只做必要的解码
+		 * 
+		 * @param map 映射
+		 * @param head 行
+		 * @param first 第一行是否是请求行
+		 */
+		private static void collect(final Map<String, List<String>> map,
+				final Iterable<String> head, final boolean first) {
+			if (head instanceof HeadView) {
+				final HeadView view = (HeadView) head;
+				for (int idx = 1; idx < view.size(); ++idx) {
+					final String name = view.name(idx);
+					if (!name.isEmpty()) {
+						RqHeaders.Base.put(map, name, view.value(idx));
+					}
+				}
+			} else if (head instanceof HeadView.Joined) {
+				RqHeaders.Base.collect(map, ((HeadView.Joined) head).origin(), first);
+				RqHeaders.Base.collect(map, ((HeadView.Joined) head).extra(), false);
+			} else {
+				final Iterator<String> lines = head.iterator();
+				if (first && lines.hasNext()) {
+					lines.next();
+				}
+				while (lines.hasNext()) {
+					final String line = lines.next();
+					final int colon = line.indexOf(':');
+					if (colon > 0) {
+						RqHeaders.Base.put(
+							map,
+							line.substring(0, colon).trim(),
+							line.substring(colon + 1).trim()
+						);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Add one value to the map.
+		 * 
+		 * 向映射中添加一个值
+		 * 
+		 * @param map 映射
+		 * @param name 名字
+		 * @param value 值
+		 */
+		private static void put(final Map<String, List<String>> map,
+				final String name, final String value) {
+			final String key = name.toLowerCase(Locale.ENGLISH);
+			List<String> values = map.get(key);
+			if (values == null) {
+				values = new ArrayList<>(1);
+				map.put(key, values);
+			}
+			values.add(value);
+		}
+	}
+}
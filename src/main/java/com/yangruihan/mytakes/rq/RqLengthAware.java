@@ -0,0 +1,220 @@
+package com.yangruihan.mytakes.rq;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yangruihan.mytakes.HttpException;
+import com.yangruihan.mytakes.Request;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Request decorator, limiting the body to its {@code Content-Length}.
+ *
+ * 请求装饰器，把身体限制在它的{@code Content-Length}之内
+ *
+ * <p>The body of a request read from a connection is the connection
+ * stream itself, so a take reading too much would block on the next
+ * request, and a take reading too little would leave bytes the back
+ * then parses as the next request. This decorator ends the body where
+ * the request ends, reports {@link InputStream#available()} within it,
+ * and skips what is left quickly:
+ *
+ * <pre> final InputStream body = new RqLengthAware(req).body();
+ * // after the take is done
+ * body.skip(Long.MAX_VALUE);</pre>
+ *
+ * <p>从连接中读取的请求的身体就是连接的流本身，所以读取过多的 Take 会阻塞在下一个请求上，
+ * 读取过少的 Take 会留下一些字节，后端随后会把它们当作下一个请求解析。
+ * 这个装饰器让身体在请求结束的位置结束，在身体之内报告{@link InputStream#available()}，
+ * 并且能快速跳过剩余的部分
+ *
+ * <p>A request without {@code Content-Length} and
+ * {@code Transfer-Encoding} headers has an empty body, according to
+ * RFC 7230. A request with {@code Transfer-Encoding} is left as is, see
+ * {@link RqChunked}. Closing the body doesn't close the original one.
+ *
+ * <p>根据 RFC 7230，没有{@code Content-Length}和{@code Transfer-Encoding}头的请求身体为空。
+ * 带有{@code Transfer-Encoding}的请求保持原样，见{@link RqChunked}。关闭身体不会关闭原始身体
+ *
+ * <p>The class is thread-safe.
+ *
+ * <p>这个类是线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(callSuper = true)
+public final class RqLengthAware extends RqWrap {
+
+	/**
+	 * Body, made on first use.
+	 *
+	 * 身体，在第一次使用时生成
+	 */
+	private final transient AtomicReference<InputStream> capped;
+
+	/**
+	 * Ctor.
+	 * @param req 原始请求
+	 */
+	public RqLengthAware(final Request req) {
+		super(req);
+		this.capped = new AtomicReference<>();
+	}
+
+	@Override
+	public InputStream body() throws IOException {
+		if (this.capped.get() == null) {
+			final Iterable<String> head = this.head();
+			InputStream body = super.body();
+			if (HeadView.lookup(head, "Transfer-Encoding").isEmpty()) {
+				body = new RqLengthAware.Capped(
+						body, RqLengthAware.length(HeadView.lookup(head, "Content-Length"))
+					);
+			}
+			this.capped.compareAndSet(null, body);
+		}
+		return this.capped.get();
+	}
+
+	/**
+	 * Length of the body, according to these {@code Content-Length} values.
+	 *
+	 * 根据这些{@code Content-Length}值得到的身体长度
+	 *
+	 * <p>Several values, in several headers or in one separated by commas,
+	 * must all be the same, according to RFC 7230; a request with different
+	 * ones is rejected, since a proxy in front may have used another one.
+	 *
+	 * <p>根据 RFC 7230，多个值（在多个头中或者在一个头中以逗号分隔）必须全部相同；
+	 * 值不同的请求被拒绝，因为前面的代理可能使用了另一个值
+	 *
+	 * @param values {@code Content-Length}头的值
+	 * @return length 长度，没有值时为 0
+	 * @throws HttpException
+	 */
+	public static long length(final List<String> values) throws HttpException {
+		long length = -1L;
+		for (final String value : values) {
+			for (final String part : value.split(",", -1)) {
+				final long parsed;
+				try {
+					parsed = Long.parseLong(part.trim());
+				} catch (final NumberFormatException ex) {
+					throw new HttpException(
+							HttpURLConnection.HTTP_BAD_REQUEST,
+							String.format("invalid header \"Content-Length: %s\"", value),
+							ex
+						);
+				}
+				if (parsed < 0L) {
+					throw new HttpException(
+							HttpURLConnection.HTTP_BAD_REQUEST,
+							String.format("negative length in header \"Content-Length: %s\"", value)
+						);
+				}
+				if (length >= 0L && parsed != length) {
+					throw new HttpException(
+							HttpURLConnection.HTTP_BAD_REQUEST,
+							String.format("different values in headers \"Content-Length\": %s", values)
+						);
+				}
+				length = parsed;
+			}
+		}
+		return Math.max(length, 0L);
+	}
+
+	/**
+	 * Stream limited to a number of bytes of the original one.
+	 *
+	 * 限制在原始流的若干字节之内的流
+	 *
+	 * <p>This class is NOT thread-safe.
+	 *
+	 * <p>这个类不是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Capped extends InputStream {
+
+		/**
+		 * Original stream.
+		 *
+		 * 原始流
+		 */
+		private final transient InputStream origin;
+
+		/**
+		 * Bytes left to read.
+		 *
+		 * 剩余可读的字节数
+		 */
+		private transient long left;
+
+		/**
+		 * Ctor.
+		 * @param input 原始流
+		 * @param length 可读的字节数
+		 */
+		Capped(final InputStream input, final long length) {
+			super();
+			this.origin = input;
+			this.left = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int data = -1;
+			if (this.left > 0L) {
+				data = this.origin.read();
+				if (data >= 0) {
+					--this.left;
+				}
+			}
+			return data;
+		}
+
+		@Override
+		public int read(final byte[] buf, final int off, final int len) throws IOException {
+			int read = -1;
+			if (len == 0) {
+				read = 0;
+			} else if (this.left > 0L) {
+				read = this.origin.read(buf, off, (int) Math.min(len, this.left));
+				if (read > 0) {
+					this.left -= read;
+				}
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(final long count) throws IOException {
+			long skipped = 0L;
+			if (count > 0L && this.left > 0L) {
+				skipped = this.origin.skip(Math.min(count, this.left));
+				if (skipped <= 0L && this.origin.read() >= 0) {
+					skipped = 1L;
+				}
+				this.left -= skipped;
+			}
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(this.left, this.origin.available());
+		}
+
+		@Override
+		public void close() {
+			// the original stream may carry more requests
+		}
+	}
+}
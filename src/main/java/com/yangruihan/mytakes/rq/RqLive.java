@@ -1,16 +1,14 @@
 package com.yangruihan.mytakes.rq;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.util.Collection;
-import java.util.LinkedList;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import com.yangruihan.mytakes.HttpException;
 import com.yangruihan.mytakes.Request;
-import com.yangruihan.mytakes.misc.Opt;
-import com.yangruihan.mytakes.misc.Utf8String;
 
 import lombok.EqualsAndHashCode;
 
@@ -31,6 +29,41 @@ import lombok.EqualsAndHashCode;
 @EqualsAndHashCode(callSuper = true)
 public final class RqLive extends RqWrap {
 
+	/**
+	 * Maximum length of the head, in bytes.
+	 * 
+	 * 头部的最大字节数
+	 */
+	private static final int LIMIT = 65536;
+
+	/**
+	 * Parser state: inside a line.
+	 * 
+	 * 解析状态：在一行之中
+	 */
+	private static final int LINE = 0;
+
+	/**
+	 * Parser state: right after a Carriage Return.
+	 * 
+	 * 解析状态：紧跟在回车之后
+	 */
+	private static final int CR = 1;
+
+	/**
+	 * Parser state: right after the end of a non-empty line.
+	 * 
+	 * 解析状态：紧跟在一个非空行的结尾之后
+	 */
+	private static final int EOL = 2;
+
+	/**
+	 * Parser state: the empty line has been read.
+	 * 
+	 * 解析状态：已经读到了空行
+	 */
+	private static final int DONE = 3;
+
 	/**
 	 * Ctor.
 	 * @param input 输入流
@@ -45,38 +78,26 @@ public final class RqLive extends RqWrap {
 	 * 
 	 * 解析输入流
 	 * 
+	 * <p>The head is read in bulk, so the stream has to support
+	 * {@link InputStream#mark(int)}, in order to give back the bytes read
+	 * beyond the head. Other streams are wrapped into a
+	 * {@link BufferedInputStream}, which becomes the body of the request.
+	 * 
+	 * <p>头部是成块读取的，所以流必须支持{@link InputStream#mark(int)}，以便把读过头部的字节
+	 * 还回去。其他的流会被包装成一个{@link BufferedInputStream}，并作为请求的身体
+	 * 
 	 * @param input 输入流
 	 * @return request 解析生成的请求对象（request）
 	 * @throws IOException
 	 */
-	@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
 	private static Request parse(final InputStream input) throws IOException {
-		boolean eof = true;
-		final Collection<String> head = new LinkedList<>(); // 声明一个 LinkedList 用来存储头部数据
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		Opt<Integer> data = new Opt.Empty<>();
-		data = RqLive.data(input, data, false);
-		while (data.get() > 0) {
-			eof = false;
-			if (data.get() == '\r') {
-				RqLive.checkLineFeed(input, baos, head.size() + 1);
-				if (baos.size() == 0) {
-					break;
-				}
-				data = new Opt.Single<>(input.read());
-				final Opt<String> header = RqLive.newHeader(data, baos);
-				if (header.has()) {
-					head.add(header.get());
-				}
-				data = RqLive.data(input, data, false);
-				continue;
-			}
-			baos.write(RqLive.legalCharacter(data, baos, head.size() + 1));
-			data = RqLive.data(input, new Opt.Empty<>(), true);
-		}
-		if (eof) {
-			throw new IOException("empty request");
+		final InputStream stream;
+		if (input.markSupported()) {
+			stream = input;
+		} else {
+			stream = new BufferedInputStream(input);
 		}
+		final HeadView head = RqLive.head(stream);
 		return new Request() {
 
 			@Override
@@ -86,107 +107,211 @@ public final class RqLive extends RqWrap {
 
 			@Override
 			public InputStream body() throws IOException {
-				return input;
+				return stream;
 			}
 		};
 	}
-	
+
 	/**
-	 * Builds current read header.
+	 * Read all lines of the head, leaving the stream right after the
+	 * empty line that ends it.
+	 * 
+	 * 读取头部的所有行，并使流停留在结束头部的空行之后
 	 * 
-	 * 生成当前读的头（header）
+	 * <p>Bytes are scanned by a small state machine, straight in the read
+	 * buffer: line breaks are dropped and the rest is moved down in place,
+	 * so no object is created per byte. The buffer then becomes a
+	 * {@link HeadView}, which decodes lines only when they are read.
 	 * 
-	 * @param data 当前读到的字节
-	 * @param baos 当前读到的头（header）
-	 * @return header
+	 * <p>字节由一个小型状态机直接在读缓冲中扫描：换行符被丢弃，其余的字节原地前移，
+	 * 所以不会为每个字节创建对象。之后缓冲成为一个{@link HeadView}，只有在读取时才解码各行
+	 * 
+	 * @param input 支持标记的输入流
+	 * @return head 头部的所有行
+	 * @throws IOException
 	 */
-	private static Opt<String> newHeader(final Opt<Integer> data,
-			final ByteArrayOutputStream baos) {
-		Opt<String> header = new Opt.Empty<>();
-		if (data.get() != ' ' && data.get() != '\t') {
-			header = new Opt.Single<>(
-						new Utf8String(baos.toByteArray()).string()
-					);
-			baos.reset();
+	@SuppressWarnings("PMD.CyclomaticComplexity")
+	private static HeadView head(final InputStream input) throws IOException {
+		int[] bounds = new int[48];
+		int count = 0;
+		int colon = -1;
+		byte[] buf = new byte[2048];
+		int limit = 0;
+		int pos = 0;
+		int write = 0;
+		int start = 0;
+		int state = RqLive.LINE;
+		input.mark(RqLive.LIMIT);
+		while (state != RqLive.DONE) {
+			if (pos == limit) {
+				if (limit == buf.length) {
+					buf = RqLive.grow(buf);
+				}
+				final int read = input.read(buf, limit, buf.length - limit);
+				if (read < 0) {
+					break;
+				}
+				limit += read;
+				continue;
+			}
+			final int data = buf[pos] & 0xff;
+			++pos;
+			if (state == RqLive.CR) {
+				RqLive.checkLineFeed(data, buf, start, write, count + 1);
+				if (write > start) {
+					state = RqLive.EOL;
+				} else if (count > 0) {
+					state = RqLive.DONE;
+				} else {
+					state = RqLive.LINE;
+				}
+				continue;
+			}
+			if (state == RqLive.EOL && data != ' ' && data != '\t') {
+				bounds = RqLive.line(bounds, count, start, colon, write);
+				++count;
+				start = write;
+				colon = -1;
+			}
+			if (data == '\r') {
+				state = RqLive.CR;
+			} else {
+				if (data == ':' && colon < 0) {
+					colon = write;
+				}
+				buf[write] = (byte) RqLive.legalCharacter(data, buf, start, write, count + 1);
+				++write;
+				state = RqLive.LINE;
+			}
+		}
+		if (state == RqLive.EOL) {
+			bounds = RqLive.line(bounds, count, start, colon, write);
+			++count;
 		}
-		return header;
+		if (count == 0) {
+			throw new IOException("empty request");
+		}
+		input.reset();
+		RqLive.skip(input, pos);
+		return new HeadView(buf, bounds, count);
 	}
-	
+
 	/**
-	 * Checks whether or not the next byte to read is a Line Feed.
+	 * Record bounds of a line.
 	 * 
-	 * 检查要读的下一个字节是否是换行符
+	 * 记录一行的边界
 	 * 
-	 * <p><i>Please note that this method assumes that the previous byte read
-	 * was a Carriage Return.</i>
+	 * @param bounds 已记录的边界
+	 * @param count 已记录的行数
+	 * @param start 行的起始位置
+	 * @param colon 冒号的位置
+	 * @param end 行的结束位置
+	 * @return bounds 边界，可能是一个更大的数组
+	 */
+	private static int[] line(final int[] bounds, final int count,
+			final int start, final int colon, final int end) {
+		int[] all = bounds;
+		if (all.length < (count + 1) * 3) {
+			all = Arrays.copyOf(all, all.length * 2);
+		}
+		all[count * 3] = start;
+		all[count * 3 + 1] = colon;
+		all[count * 3 + 2] = end;
+		return all;
+	}
+
+	/**
+	 * Make the buffer twice bigger, up to the limit.
 	 * 
-	 * <p>请注意，此方法假定之前一个字节是回车
+	 * 把缓冲扩大一倍，最多到上限
 	 * 
-	 * @param input 要读的输入流
-	 * @param baos 当前读取的头（header）
-	 * @param position 当前头（header）的行数
-	 * @throws IOException 
+	 * @param buf 缓冲
+	 * @return buffer 更大的缓冲
+	 * @throws HttpException
 	 */
-	private static void checkLineFeed(final InputStream input,
-			final ByteArrayOutputStream baos, final Integer position) throws IOException {
-		if (input.read() != '\n') {
+	private static byte[] grow(final byte[] buf) throws HttpException {
+		if (buf.length >= RqLive.LIMIT) {
 			throw new HttpException(
 						HttpURLConnection.HTTP_BAD_REQUEST,
-						String.format("there is no LF after CR in header, line #%d: \"%s\"",
-								position,
-								new Utf8String(baos.toByteArray()).string()
-						)
+						String.format("HTTP head is longer than %d bytes", RqLive.LIMIT)
 					);
 		}
+		return Arrays.copyOf(buf, Math.min(buf.length * 2, RqLive.LIMIT));
+	}
+
+	/**
+	 * Skip exactly the given number of bytes.
+	 * 
+	 * 精确地跳过指定数量的字节
+	 * 
+	 * @param input 输入流
+	 * @param bytes 字节数
+	 * @throws IOException
+	 */
+	private static void skip(final InputStream input, final long bytes) throws IOException {
+		long left = bytes;
+		while (left > 0L) {
+			final long skipped = input.skip(left);
+			if (skipped <= 0L) {
+				throw new IOException(
+							String.format("failed to skip %d bytes of HTTP head", left)
+						);
+			}
+			left -= skipped;
+		}
 	}
 	
 	/**
-	 * Returns a legal character based n the read character.
+	 * Checks whether or not the byte read after a Carriage Return is a
+	 * Line Feed.
 	 * 
-	 * 返回一个基于位置n读到的字符的合法字符
+	 * 检查回车之后读到的字节是否是换行符
 	 * 
-	 * @param data 读到的字符
-	 * @param baos 包含读取到的头（header）的输出字节流
+	 * @param data 读到的字节
+	 * @param buf 缓冲
+	 * @param start 当前头（header）的起始位置
+	 * @param end 当前头（header）的结束位置
 	 * @param position 当前头（header）的行数
-	 * @return
-	 * @throws IOException
+	 * @throws HttpException
 	 */
-	private static Integer legalCharacter(final Opt<Integer> data,
-			final ByteArrayOutputStream baos, final Integer position) throws IOException {
-		if ((data.get() > 0x7f || data.get() < 0x20) && data.get() != '\t') {
+	private static void checkLineFeed(final int data, final byte[] buf,
+			final int start, final int end, final int position) throws HttpException {
+		if (data != '\n') {
 			throw new HttpException(
 						HttpURLConnection.HTTP_BAD_REQUEST,
-						String.format("illegal character 0x%02X in HTTP header line #%d: \"%s\"",
-								data.get(),
+						String.format("there is no LF after CR in header, line #%d: \"%s\"",
 								position,
-								new Utf8String(baos.toByteArray()).string()
+								new String(buf, start, end - start, StandardCharsets.US_ASCII)
 						)
 					);
 		}
-		return data.get();
 	}
 	
 	/**
-	 * Obtains new byte if hasn't
+	 * Returns a legal character based on the read character.
 	 * 
-	 * 是否填充新的数据
+	 * 返回一个基于读到的字符的合法字符
 	 * 
-	 * @param input 输入流
-	 * @param data 数据（空或者是当前数据）
-	 * @param available 表明是否先检查这里是否有有可用的字节数据
-	 * @return 下一个或者当前数据
-	 * @throws IOException
+	 * @param data 读到的字符
+	 * @param buf 缓冲
+	 * @param start 当前头（header）的起始位置
+	 * @param end 当前头（header）的结束位置
+	 * @param position 当前头（header）的行数
+	 * @return character 合法的字符
+	 * @throws HttpException
 	 */
-	private static Opt<Integer> data(final InputStream input,
-			final Opt<Integer> data, final boolean available) throws IOException {
-		final Opt<Integer> ret;
-		if (data.has()) {
-			ret = data;
-		} else if (available && input.available() <= 0) {
-			ret = new Opt.Single<>(-1);
-		} else {
-			ret = new Opt.Single<>(input.read());
+	private static int legalCharacter(final int data, final byte[] buf,
+			final int start, final int end, final int position) throws HttpException {
+		if ((data > 0x7f || data < 0x20) && data != '\t') {
+			throw new HttpException(
+						HttpURLConnection.HTTP_BAD_REQUEST,
+						String.format("illegal character 0x%02X in HTTP header line #%d: \"%s\"",
+								data,
+								position,
+								new String(buf, start, end - start, StandardCharsets.US_ASCII)
+						)
+					);
 		}
-		return ret;
+		return data;
 	}
 }
@@ -0,0 +1,135 @@
+package com.yangruihan.mytakes.rq;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yangruihan.mytakes.Request;
+import com.yangruihan.mytakes.rs.Body;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Request decorator, computing the head once and, optionally, reading the
+ * body once so that it can be read many times.
+ *
+ * 请求装饰器，只计算一次头部，并且可以只读取一次身体，以便它能被读取多次
+ *
+ * <p>The head of the original request is copied, on first use, into an
+ * immutable list, which every later call returns, so a chain of filters
+ * asking for the head again and again doesn't walk the decorators below
+ * every time. A {@link HeadView} or {@link HeadView.Joined} head, which
+ * is immutable already, is kept as it is instead, so
+ * {@link HeadView#lookup(Iterable, CharSequence)} still finds headers
+ * through its index. With a limit, the body is read on first use too,
+ * kept in memory up to the limit and spilled into a temporary file
+ * beyond it, and every call returns a new stream from its start:
+ *
+ * <pre> final Request req = new RqOnce(origin, 65536);
+ * final InputStream first = req.body();
+ * final InputStream again = req.body();</pre>
+ *
+ * <p>原始请求的头部在第一次使用时被复制进一个不可变的列表，之后的每次调用都返回它，
+ * 所以一连串反复读取头部的过滤器不用每次都遍历下面的装饰器。本来就不可变的{@link HeadView}或{@link HeadView.Joined}头部则保持原样，
+ * 所以{@link HeadView#lookup(Iterable, CharSequence)}仍然通过它的索引查找头。给定上限时，身体也在第一次使用时被读取，
+ * 不超过上限的部分保存在内存中，超过上限时溢出到一个临时文件，每次调用都返回一个从头开始的新流
+ *
+ * <p>Without a limit the body is the original one. A temporary file is
+ * deleted soon after the request is collected by GC, see
+ * {@link Body.Spill}.
+ *
+ * <p>没有上限时身体就是原始身体。临时文件在请求被 GC 回收后不久被删除，见{@link Body.Spill}
+ *
+ * <p>The class is thread-safe.
+ *
+ * <p>这个类是线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(callSuper = true)
+public final class RqOnce extends RqWrap {
+
+	/**
+	 * Head, made on first use.
+	 *
+	 * 头部，在第一次使用时生成
+	 */
+	private final transient AtomicReference<Iterable<String>> lines;
+
+	/**
+	 * Body.
+	 *
+	 * 身体
+	 */
+	private final transient Body content;
+
+	/**
+	 * Ctor.
+	 * @param req 原始请求
+	 */
+	public RqOnce(final Request req) {
+		super(req);
+		this.lines = new AtomicReference<>();
+		this.content = RqOnce.origin(req);
+	}
+
+	/**
+	 * Ctor.
+	 * @param req 原始请求
+	 * @param limit 保存在内存中的身体的最大字节数
+	 */
+	public RqOnce(final Request req, final int limit) {
+		super(req);
+		this.lines = new AtomicReference<>();
+		this.content = new Body.Spill(RqOnce.origin(req), limit);
+	}
+
+	@Override
+	public Iterable<String> head() throws IOException {
+		if (this.lines.get() == null) {
+			final Iterable<String> head = super.head();
+			if (head instanceof HeadView || head instanceof HeadView.Joined) {
+				this.lines.compareAndSet(null, head);
+			} else {
+				final List<String> copy = new ArrayList<>(16);
+				for (final String line : head) {
+					copy.add(line);
+				}
+				this.lines.compareAndSet(null, Collections.unmodifiableList(copy));
+			}
+		}
+		return this.lines.get();
+	}
+
+	@Override
+	public InputStream body() throws IOException {
+		return this.content.input();
+	}
+
+	/**
+	 * Body of the request, as it is.
+	 *
+	 * 请求的身体，保持原样
+	 *
+	 * @param req 请求
+	 * @return body 身体
+	 */
+	private static Body origin(final Request req) {
+		return new Body() {
+
+			@Override
+			public InputStream input() throws IOException {
+				return req.body();
+			}
+
+			@Override
+			public long length() throws IOException {
+				return req.body().available();
+			}
+		};
+	}
+}
@@ -0,0 +1,325 @@
+package com.yangruihan.mytakes.rq;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yangruihan.mytakes.Request;
+import com.yangruihan.mytakes.misc.Opt;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Request received from a socket, with typed information about the
+ * connection it came from.
+ *
+ * 从 Socket 接收的请求，带有它所来自的连接的类型化信息
+ *
+ * <p>Backs give takes requests of this type, so a take can ask for the
+ * addresses of the connection without parsing any header. Decorators
+ * made from {@link RqWrap}, like {@link RqOnce}, hide the type, so the
+ * request is found with {@link #of(Request)}, which looks through them:
+ *
+ * <pre> final Opt&lt;RqSocket&gt; sock = RqSocket.of(req);
+ * if (sock.has()) {
+ * 	final InetAddress client = sock.get().remoteAddress();
+ * }</pre>
+ *
+ * <p>后端交给 Take 的请求是这种类型的，所以 Take 无需解析任何头就可以得到连接的地址。
+ * 由{@link RqWrap}构成的装饰器，比如{@link RqOnce}，会隐藏这个类型，所以要通过
+ * {@link #of(Request)}找到这个请求，它会穿过这些装饰器查找
+ *
+ * <p>The head ends with {@code X-Takes-LocalAddress},
+ * {@code X-Takes-LocalPort}, {@code X-Takes-RemoteAddress} and
+ * {@code X-Takes-RemotePort} headers, for takes and decorators that only
+ * see the head. They are rendered when the head is iterated for the
+ * first time on the connection, and shared by all its requests; the head
+ * of the original request is not copied, and stays a view for
+ * {@link HeadView#lookup(Iterable, CharSequence)}, through
+ * {@link HeadView.Joined}.
+ *
+ * <p>头部以{@code X-Takes-LocalAddress}、{@code X-Takes-LocalPort}、{@code X-Takes-RemoteAddress}
+ * 和{@code X-Takes-RemotePort}头结尾，供只看头部的 Take 和装饰器使用。它们在连接上的头部第一次被迭代时生成，
+ * 并被连接的所有请求共享；原始请求的头部不会被复制，并通过{@link HeadView.Joined}对
+ * {@link HeadView#lookup(Iterable, CharSequence)}保持为视图
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(callSuper = true)
+public final class RqSocket extends RqWrap {
+
+	/**
+	 * Connection.
+	 *
+	 * 连接
+	 */
+	private final transient RqSocket.Connection conn;
+
+	/**
+	 * When the request started, in {@link System#nanoTime()} terms.
+	 *
+	 * 请求开始的时间，以{@link System#nanoTime()}计
+	 */
+	private final transient long nanos;
+
+	/**
+	 * Ctor.
+	 * @param req 原始请求
+	 * @param connection 请求所来自的连接
+	 */
+	public RqSocket(final Request req, final RqSocket.Connection connection) {
+		this(req, connection, System.nanoTime());
+	}
+
+	/**
+	 * Ctor.
+	 * @param req 原始请求
+	 * @param connection 请求所来自的连接
+	 * @param start 请求开始的时间，以{@link System#nanoTime()}计
+	 */
+	public RqSocket(final Request req, final RqSocket.Connection connection,
+			final long start) {
+		super(req);
+		this.conn = connection;
+		this.nanos = start;
+	}
+
+	@Override
+	public Iterable<String> head() throws IOException {
+		return new HeadView.Joined(super.head(), this.conn);
+	}
+
+	/**
+	 * The request from a socket the request is, or wraps through
+	 * {@link RqWrap} decorators.
+	 *
+	 * 请求本身或者它通过{@link RqWrap}装饰器包装的来自 Socket 的请求
+	 *
+	 * @param req 请求
+	 * @return request 来自 Socket 的请求，没有时为空
+	 */
+	public static Opt<RqSocket> of(final Request req) {
+		Request rq = req;
+		while (!(rq instanceof RqSocket) && rq instanceof RqWrap) {
+			rq = ((RqWrap) rq).wrapped();
+		}
+		final Opt<RqSocket> sock;
+		if (rq instanceof RqSocket) {
+			sock = new Opt.Single<>((RqSocket) rq);
+		} else {
+			sock = new Opt.Empty<>();
+		}
+		return sock;
+	}
+
+	/**
+	 * This request from the same connection, with its head copied and
+	 * without a body, so a take can answer it again after this one is
+	 * answered and gone back to the back.
+	 *
+	 * 来自同一个连接的这个请求，头部被复制，没有身体，所以在这个请求应答完并回到后端之后，
+	 * Take 仍然可以再次应答它
+	 *
+	 * @return request 请求
+	 * @throws IOException
+	 */
+	public RqSocket copy() throws IOException {
+		final List<String> lines = new ArrayList<>(16);
+		for (final String line : super.head()) {
+			lines.add(line);
+		}
+		return new RqSocket(
+			new Request() {
+
+				@Override
+				public Iterable<String> head() {
+					return lines;
+				}
+
+				@Override
+				public InputStream body() {
+					return new ByteArrayInputStream(new byte[0]);
+				}
+			},
+			this.conn,
+			this.nanos
+		);
+	}
+
+	/**
+	 * Local address of the connection.
+	 *
+	 * 连接的本地地址
+	 *
+	 * @return address 地址
+	 */
+	public InetAddress localAddress() {
+		return this.conn.local.getAddress();
+	}
+
+	/**
+	 * Local port of the connection.
+	 *
+	 * 连接的本地端口
+	 *
+	 * @return port 端口
+	 */
+	public int localPort() {
+		return this.conn.local.getPort();
+	}
+
+	/**
+	 * Remote address of the connection.
+	 *
+	 * 连接的远程地址
+	 *
+	 * @return address 地址
+	 */
+	public InetAddress remoteAddress() {
+		return this.conn.remote.getAddress();
+	}
+
+	/**
+	 * Remote port of the connection.
+	 *
+	 * 连接的远程端口
+	 *
+	 * @return port 端口
+	 */
+	public int remotePort() {
+		return this.conn.remote.getPort();
+	}
+
+	/**
+	 * Number of the connection, unique in this JVM.
+	 *
+	 * 连接的编号，在这个 JVM 中唯一
+	 *
+	 * @return number 编号
+	 */
+	public long connection() {
+		return this.conn.number;
+	}
+
+	/**
+	 * When the request started, in {@link System#nanoTime()} terms.
+	 *
+	 * 请求开始的时间，以{@link System#nanoTime()}计
+	 *
+	 * @return nanos 纳秒
+	 */
+	public long start() {
+		return this.nanos;
+	}
+
+	/**
+	 * Connection requests come from, with its headers.
+	 *
+	 * 请求所来自的连接，以及它的头
+	 *
+	 * <p>A back makes one for every socket it accepts, before reading
+	 * requests from it. Iterating it gives the {@code X-Takes-*} headers.
+	 *
+	 * <p>后端为它接收的每个 Socket 生成一个，在从中读取请求之前。迭代它得到{@code X-Takes-*}头
+	 *
+	 * <p>The class is immutable and thread-safe.
+	 *
+	 * <p>这个类是不可变的且线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	public static final class Connection implements Iterable<String> {
+
+		/**
+		 * Numbers given to connections so far.
+		 *
+		 * 目前为止分配给连接的编号
+		 */
+		private static final AtomicLong NUMBERS = new AtomicLong();
+
+		/**
+		 * Local address.
+		 *
+		 * 本地地址
+		 */
+		private final transient InetSocketAddress local;
+
+		/**
+		 * Remote address.
+		 *
+		 * 远程地址
+		 */
+		private final transient InetSocketAddress remote;
+
+		/**
+		 * Number of the connection.
+		 *
+		 * 连接的编号
+		 */
+		private final transient long number;
+
+		/**
+		 * Headers, made on first use.
+		 *
+		 * 头，在第一次使用时生成
+		 */
+		private final transient AtomicReference<List<String>> lines;
+
+		/**
+		 * Ctor.
+		 * @param socket 已连接的 Socket
+		 */
+		public Connection(final Socket socket) {
+			this(
+				(InetSocketAddress) socket.getLocalSocketAddress(),
+				(InetSocketAddress) socket.getRemoteSocketAddress()
+			);
+		}
+
+		/**
+		 * Ctor.
+		 * @param lcl 本地地址
+		 * @param rmt 远程地址
+		 */
+		public Connection(final InetSocketAddress lcl, final InetSocketAddress rmt) {
+			this.local = lcl;
+			this.remote = rmt;
+			this.number = RqSocket.Connection.NUMBERS.incrementAndGet();
+			this.lines = new AtomicReference<>();
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			if (this.lines.get() == null) {
+				this.lines.compareAndSet(
+						null,
+						Collections.unmodifiableList(
+							Arrays.asList(
+								"X-Takes-LocalAddress: " + this.local.getAddress().getHostAddress(),
+								"X-Takes-LocalPort: " + this.local.getPort(),
+								"X-Takes-RemoteAddress: " + this.remote.getAddress().getHostAddress(),
+								"X-Takes-RemotePort: " + this.remote.getPort()
+							)
+						)
+					);
+			}
+			return this.lines.get().iterator();
+		}
+	}
+}
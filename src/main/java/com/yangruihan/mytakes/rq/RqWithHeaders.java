@@ -1,12 +1,12 @@
 package com.yangruihan.mytakes.rq;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 import com.yangruihan.mytakes.Request;
+import com.yangruihan.mytakes.misc.Concat;
 
 import lombok.EqualsAndHashCode;
 
@@ -36,24 +36,36 @@ public final class RqWithHeaders extends RqWrap {
 	 * @param headers 需要添加的头信息
 	 */
 	public RqWithHeaders(final Request req, final Iterable<? extends CharSequence> headers) {
-		super(new Request() {
-			
-			@Override
-			public List<String> head() throws IOException {
-				final List<String> head = new LinkedList<>();
-				for (final String hdr : req.head()) {
-					head.add(hdr);
-				}
-				for (final CharSequence header : headers) {
-					head.add(header.toString().trim());
-				}
-				return head;
-			}
+		super(RqWithHeaders.make(req, headers));
+	}
+
+	/**
+	 * Make a request with the headers appended to its head.
+	 * 
+	 * 生成一个在头部后追加了这些头信息的请求
+	 * 
+	 * <p>The origin head is not copied, the new headers are just
+	 * concatenated to it. The request is a {@link RqWrap} of the origin,
+	 * so {@link RqSocket#of(Request)} finds the socket under it.
+	 * 
+	 * <p>原始头部不会被复制，新的头信息只是被串联在它之后。这个请求是原始请求的{@link RqWrap}，
+	 * 所以{@link RqSocket#of(Request)}能找到它下面的 Socket
+	 * 
+	 * @param req 原始请求
+	 * @param headers 需要添加的头信息
+	 * @return request 请求
+	 */
+	private static Request make(final Request req, final Iterable<? extends CharSequence> headers) {
+		final List<String> extra = new ArrayList<>(4);
+		for (final CharSequence header : headers) {
+			extra.add(header.toString().trim());
+		}
+		return new RqWrap(req) {
 			
 			@Override
-			public InputStream body() throws IOException {
-				return req.body();
+			public Iterable<String> head() throws IOException {
+				return new Concat<String>(req.head(), extra);
 			}
-		});
+		};
 	}
 }
@@ -46,4 +46,15 @@ public class RqWrap implements Request {
 		return this.origin.body();
 	}
 
+	/**
+	 * The request this one wraps.
+	 * 
+	 * 这个请求包装的请求
+	 * 
+	 * @return request 请求
+	 */
+	final Request wrapped() {
+		return this.origin;
+	}
+
 }
@@ -1,15 +1,24 @@
 package com.yangruihan.mytakes.rs;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The body of a response used by {@link RsWithBody}.
@@ -41,17 +50,42 @@ public interface Body {
 	 * @return
 	 * @throws IOException
 	 */
-	int length() throws IOException;
+	long length() throws IOException;
 	
 	/**
 	 * Content of a body based on an {@link java.net.URL}.
 	 * 
 	 * 基于{@link java.net.URL}的响应体内容
 	 * 
+	 * <p>The resource is opened once for both the length and the content:
+	 * the length comes from the metadata of the connection, for example
+	 * the size of a {@code jar:} entry, and the content is read from the
+	 * same connection. Without such metadata the length is unknown, -1,
+	 * and no stream is opened to guess it. {@code file:} URLs are served as
+	 * {@link Body.File}, so they can be sent without copying.
+	 * 
+	 * <p>资源只打开一次，同时用于长度和内容：长度来自连接的元数据，例如{@code jar:}条目的大小，
+	 * 内容从同一个连接读取。没有这种元数据时长度是未知的，即 -1，不会为了猜测它而打开流。
+	 * {@code file:} URL 作为{@link Body.File}提供，所以它们可以不经复制地发送
+	 * 
+	 * <p>The length is kept once known, so asking for it again, even after
+	 * the content is read, opens nothing. Like {@link Body.Direct}, call
+	 * {@link #close()} if the content is not read at all, to close the
+	 * connection opened for the length; a response dropped unread closes
+	 * the stream of its body instead, which is that connection.
+	 * 
+	 * <p>长度一旦已知就被保存，所以再次获取它时，即使在内容读取之后，也不会打开任何东西。
+	 * 与{@link Body.Direct}一样，如果内容根本没有被读取，调用{@link #close()}关闭为获取长度而打开的连接；
+	 * 不经读取就被丢弃的响应则关闭它的身体的流，也就是这个连接
+	 * 
+	 * <p>The class is thread-safe.
+	 * 
+	 * <p>这个类是线程安全的
+	 * 
 	 * @author Yrh
 	 *
 	 */
-	final class URL implements Body {
+	final class URL implements Body, Closeable {
 		
 		/**
 		 * The {@link java.net.URL} of the content.
@@ -60,6 +94,21 @@ public interface Body {
 		 */
 		private final transient java.net.URL url;
 		
+		/**
+		 * Connection opened for the length and not read yet, guarded by
+		 * itself.
+		 * 
+		 * 为获取长度而打开、尚未读取的连接，由它自己保护
+		 */
+		private final transient AtomicReference<URLConnection> opened;
+		
+		/**
+		 * Length, once known, or {@code null}.
+		 * 
+		 * 长度，已知之后才有，否则为{@code null}
+		 */
+		private final transient AtomicReference<Long> size;
+		
 		/**
 		 * Constructs an {@code URL} with the specified {@link java.net.URL}.
 		 * 
@@ -69,17 +118,90 @@ public interface Body {
 		 */
 		public URL(final java.net.URL content) {
 			this.url = content;
+			this.opened = new AtomicReference<>();
+			this.size = new AtomicReference<>();
 		}
 
 		@Override
 		public InputStream input() throws IOException {
-			return this.url.openStream();
+			final InputStream input;
+			if (this.file()) {
+				input = new Body.File(this.path()).input();
+			} else {
+				URLConnection conn;
+				synchronized (this.opened) {
+					conn = this.opened.getAndSet(null);
+				}
+				if (conn == null) {
+					conn = this.url.openConnection();
+				}
+				input = conn.getInputStream();
+				this.size.compareAndSet(null, conn.getContentLengthLong());
+			}
+			return input;
 		}
 
 		@Override
-		public int length() throws IOException {
-			try (final InputStream input = this.url.openStream()) {
-				return input.available();
+		public long length() throws IOException {
+			final long length;
+			if (this.file()) {
+				length = new Body.File(this.path()).length();
+			} else {
+				synchronized (this.opened) {
+					if (this.size.get() == null) {
+						final URLConnection conn = this.url.openConnection();
+						this.size.set(conn.getContentLengthLong());
+						this.opened.set(conn);
+					}
+				}
+				length = this.size.get();
+			}
+			return length;
+		}
+
+		/**
+		 * Close the connection opened for the length, if the content has
+		 * not been read from it.
+		 * 
+		 * 关闭为获取长度而打开的连接，如果还没有从中读取内容
+		 */
+		@Override
+		public void close() throws IOException {
+			final URLConnection conn;
+			synchronized (this.opened) {
+				conn = this.opened.getAndSet(null);
+			}
+			if (conn instanceof HttpURLConnection) {
+				((HttpURLConnection) conn).disconnect();
+			} else if (conn != null) {
+				conn.getInputStream().close();
+			}
+		}
+		
+		/**
+		 * Is it a {@code file:} URL?
+		 * 
+		 * 是否是{@code file:} URL
+		 * 
+		 * @return TRUE if it is
+		 */
+		private boolean file() {
+			return "file".equalsIgnoreCase(this.url.getProtocol());
+		}
+		
+		/**
+		 * Path of the file of a {@code file:} URL.
+		 * 
+		 * {@code file:} URL 对应文件的路径
+		 * 
+		 * @return path 路径
+		 * @throws IOException
+		 */
+		private Path path() throws IOException {
+			try {
+				return Paths.get(this.url.toURI());
+			} catch (final URISyntaxException | IllegalArgumentException ex) {
+				throw new IOException(String.format("invalid file URL %s", this.url), ex);
 			}
 		}
 	}
@@ -118,7 +240,7 @@ public interface Body {
 		}
 
 		@Override
-		public int length() throws IOException {
+		public long length() throws IOException {
 			return this.bytes.length;
 		}
 	}
@@ -128,6 +250,11 @@ public interface Body {
 	 * 
 	 * 基于{@link InputStream}的响应体内容
 	 * 
+	 * <p>The length of the stream is unknown until it is read, so
+	 * {@link RsWithBody} sends it with chunked transfer coding.
+	 * 
+	 * <p>流的长度在读完之前是未知的，所以{@link RsWithBody}以分块传输编码发送它
+	 * 
 	 * @author Yrh
 	 *
 	 */
@@ -140,13 +267,6 @@ public interface Body {
 		 */
 		private final transient InputStream stream;
 		
-		/**
-		 * The length of the stream.
-		 * 
-		 * 流的长度
-		 */
-		private final transient AtomicInteger length;
-		
 		/**
 		 * Constructs an {@code Stream} with the specified {@link InputStream}.
 		 * 
@@ -156,60 +276,420 @@ public interface Body {
 		 */
 		Stream(final InputStream input) {
 			this.stream = input;
-			this.length = new AtomicInteger(-1);
 		}
 
 		@Override
-		public InputStream input() throws IOException {
-			this.estimate();
+		public InputStream input() {
 			return this.stream;
 		}
 
 		@Override
-		public int length() throws IOException {
-			this.estimate();
-			return this.length.get();
+		public long length() {
+			return -1L;
+		}
+	}
+	
+	/**
+	 * Content of a body based on a file.
+	 * 
+	 * 基于文件的响应体内容
+	 * 
+	 * <p>The input is a {@link FileInputStream}, so
+	 * {@link RsPrint} can send it with
+	 * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+	 * when the output is a {@link com.yangruihan.mytakes.misc.ChannelOutput}.
+	 * 
+	 * <p>输入是一个{@link FileInputStream}，所以当输出是
+	 * {@link com.yangruihan.mytakes.misc.ChannelOutput}时，{@link RsPrint}可以用
+	 * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}发送它
+	 * 
+	 * @author Yrh
+	 *
+	 */
+	final class File implements Body {
+		
+		/**
+		 * The path of the file.
+		 * 
+		 * 文件的路径
+		 */
+		private final transient Path path;
+		
+		/**
+		 * Constructs a {@code File} with the specified {@link Path}.
+		 * 
+		 * 构造一个带有指定{@link Path}的{@code File}
+		 * 
+		 * @param content
+		 */
+		public File(final Path content) {
+			this.path = content;
+		}
+
+		@Override
+		public InputStream input() throws IOException {
+			return new FileInputStream(this.path.toFile());
+		}
+
+		@Override
+		public long length() throws IOException {
+			return Files.size(this.path);
 		}
 		
 		/**
-		 * Estimates the length of the {@code InputStream}.
+		 * When the file was last modified.
 		 * 
-		 * 估计{@code InputStream}的长度
+		 * 文件最后修改的时间
 		 * 
+		 * @return millis 纪元毫秒
 		 * @throws IOException
 		 */
-		private void estimate() throws IOException {
-			if (this.length.get() == -1) {
-				this.length.compareAndSet(-1, this.stream.available());
-			}
+		public long modified() throws IOException {
+			return Files.getLastModifiedTime(this.path).toMillis();
 		}
 	}
 	
 	/**
-	 * Decorator that will store the content of the underlying Body into a
-	 * temporary File.
+	 * Content of a body in pooled direct byte buffers, filled through a
+	 * writer.
 	 * 
-	 * 装饰器将会将基础身体（body）的内容存入一个临时文件
+	 * 保存在池化的直接字节缓冲中的响应体内容，通过写入器填充
 	 * 
-	 * <p><b>The content of the Body will be stored into a temporary
-	 * file to be able to read it as many times as we want so use it only
-	 * for large content, for small content use {@link Body.ByteArray}
-	 * instead.</b>
+	 * <p>Large generated content stays off the Java heap, and fronts
+	 * writing to channels send the buffers as they are, without copying
+	 * them. Buffers grow in size classes while the content is written:
 	 * 
-	 * <p><b>存入临时文件的身体（body）内容可以随心所欲的被我们读取，不过仅限于
-	 * 大型内容，对于一个小型内容应使用{@link Body.ByteArray}替代
+	 * <pre> final Body.Direct body = new Body.Direct();
+	 * try (final OutputStream output = body.writer()) {
+	 * 	report.write(output);
+	 * }
+	 * return new RsWithBody(new RsEmpty(), body);</pre>
+	 * 
+	 * <p>大量生成的内容留在 Java 堆之外，写入通道的前端直接发送这些缓冲而不复制它们。
+	 * 缓冲在写入内容时按大小类别增长
+	 * 
+	 * <p>Buffers are reference counted. A new body has one reference, for
+	 * one reading, and every stream returned by {@link #input()} releases
+	 * one reference when it is closed, which {@link RsPrint} does once the
+	 * body is written. Call {@link #retain()} before every extra reading,
+	 * and {@link #close()} if the body is not read at all. Buffers go back
+	 * to the pool when the last reference is released.
+	 * 
+	 * <p>缓冲是引用计数的。新的身体有一个引用，供一次读取使用，{@link #input()}返回的每个流在关闭时释放一个引用，
+	 * {@link RsPrint}在身体写完后会关闭它。每次额外读取之前调用{@link #retain()}，
+	 * 如果身体根本没有被读取则调用{@link #close()}。最后一个引用被释放时，缓冲回到池中
+	 * 
+	 * <p>The content must be written completely before it is read. The
+	 * class is thread-safe after that.
+	 * 
+	 * <p>内容必须在读取之前完整写入。在此之后这个类是线程安全的
 	 * 
 	 * @author Yrh
 	 *
 	 */
-	final class TempFile implements Body {
+	final class Direct implements Body, Closeable {
 		
 		/**
-		 * The temporary file that contains the content of the body.
+		 * Pool of buffers.
 		 * 
-		 * 存储身体（body）内容的临时文件
+		 * 缓冲池
 		 */
-		private final transient File file;
+		private final transient Slabs pool;
+		
+		/**
+		 * Buffers with the content (in write mode).
+		 * 
+		 * 保存内容的缓冲（写模式）
+		 */
+		private final transient List<ByteBuffer> buffers;
+		
+		/**
+		 * References left.
+		 * 
+		 * 剩余的引用数
+		 */
+		private final transient AtomicInteger refs;
+		
+		/**
+		 * Ctor.
+		 */
+		public Direct() {
+			this(Slabs.SHARED);
+		}
+		
+		/**
+		 * Ctor.
+		 * @param slabs 缓冲池
+		 */
+		private Direct(final Slabs slabs) {
+			this.pool = slabs;
+			this.buffers = new ArrayList<>(4);
+			this.refs = new AtomicInteger(1);
+		}
+		
+		/**
+		 * Output stream appending to the content.
+		 * 
+		 * 追加到内容的输出流
+		 * 
+		 * <p>The stream is NOT thread-safe.
+		 * 
+		 * <p>这个流不是线程安全的
+		 * 
+		 * @return output 输出流
+		 */
+		public OutputStream writer() {
+			return new OutputStream() {
+				
+				@Override
+				public void write(final int data) {
+					Body.Direct.this.room().put((byte) data);
+				}
+				
+				@Override
+				public void write(final byte[] buf, final int off, final int len) {
+					int pos = off;
+					final int end = off + len;
+					while (pos < end) {
+						final ByteBuffer room = Body.Direct.this.room();
+						final int step = Math.min(end - pos, room.remaining());
+						room.put(buf, pos, step);
+						pos += step;
+					}
+				}
+			};
+		}
+		
+		/**
+		 * Add a reference, for one more reading.
+		 * 
+		 * 增加一个引用，供多一次读取使用
+		 * 
+		 * @return this 这个身体
+		 * @throws IOException
+		 */
+		public Body.Direct retain() throws IOException {
+			while (true) {
+				final int count = this.refs.get();
+				if (count <= 0) {
+					throw new IOException("the body is released");
+				}
+				if (this.refs.compareAndSet(count, count + 1)) {
+					break;
+				}
+			}
+			return this;
+		}
+
+		@Override
+		public InputStream input() throws IOException {
+			if (this.refs.get() <= 0) {
+				throw new IOException("the body is released");
+			}
+			final ByteBuffer[] data = new ByteBuffer[this.buffers.size()];
+			for (int idx = 0; idx < data.length; ++idx) {
+				data[idx] = (ByteBuffer) this.buffers.get(idx).asReadOnlyBuffer().flip();
+			}
+			return new Body.Direct.Input(this, data);
+		}
+
+		@Override
+		public long length() {
+			long length = 0L;
+			for (final ByteBuffer buf : this.buffers) {
+				length += buf.position();
+			}
+			return length;
+		}
+		
+		/**
+		 * Release one reference.
+		 * 
+		 * 释放一个引用
+		 */
+		@Override
+		public void close() {
+			while (true) {
+				final int count = this.refs.get();
+				if (count <= 0) {
+					break;
+				}
+				if (this.refs.compareAndSet(count, count - 1)) {
+					if (count == 1) {
+						for (final ByteBuffer buf : this.buffers) {
+							this.pool.release(buf);
+						}
+					}
+					break;
+				}
+			}
+		}
+		
+		/**
+		 * Buffer with room for more content, taken from the pool if needed.
+		 * 
+		 * 有空间容纳更多内容的缓冲，如果需要则从池中取得
+		 * 
+		 * @return buffer 缓冲
+		 */
+		private ByteBuffer room() {
+			ByteBuffer room = null;
+			if (!this.buffers.isEmpty()) {
+				room = this.buffers.get(this.buffers.size() - 1);
+			}
+			if (room == null || !room.hasRemaining()) {
+				room = this.pool.acquire(Math.min(this.buffers.size(), Slabs.classes() - 1));
+				this.buffers.add(room);
+			}
+			return room;
+		}
+		
+		/**
+		 * Stream over the buffers, releasing its reference when closed.
+		 * 
+		 * 缓冲之上的流，关闭时释放它的引用
+		 * 
+		 * <p>This class is NOT thread-safe.
+		 * 
+		 * <p>这个类不是线程安全的
+		 * 
+		 * @author Yrh
+		 *
+		 */
+		static final class Input extends InputStream {
+			
+			/**
+			 * The body.
+			 * 
+			 * 身体
+			 */
+			private final transient Body.Direct body;
+			
+			/**
+			 * Read-only views of the buffers (in read mode).
+			 * 
+			 * 缓冲的只读视图（读模式）
+			 */
+			private final transient ByteBuffer[] data;
+			
+			/**
+			 * Buffer being read.
+			 * 
+			 * 正在读取的缓冲
+			 */
+			private transient int current;
+			
+			/**
+			 * Is the stream closed?
+			 * 
+			 * 流是否已被关闭
+			 */
+			private transient boolean closed;
+			
+			/**
+			 * Ctor.
+			 * @param owner 身体
+			 * @param views 缓冲的只读视图
+			 */
+			Input(final Body.Direct owner, final ByteBuffer[] views) {
+				super();
+				this.body = owner;
+				this.data = views;
+			}
+
+			@Override
+			public int read() {
+				int data = -1;
+				if (this.next()) {
+					data = this.data[this.current].get() & 0xFF;
+				}
+				return data;
+			}
+
+			@Override
+			public int read(final byte[] buf, final int off, final int len) {
+				int read = -1;
+				if (len == 0) {
+					read = 0;
+				} else if (this.next()) {
+					read = Math.min(len, this.data[this.current].remaining());
+					this.data[this.current].get(buf, off, read);
+				}
+				return read;
+			}
+
+			@Override
+			public int available() {
+				int available = 0;
+				if (this.next()) {
+					available = this.data[this.current].remaining();
+				}
+				return available;
+			}
+
+			@Override
+			public void close() {
+				if (!this.closed) {
+					this.closed = true;
+					this.body.close();
+				}
+			}
+			
+			/**
+			 * Views of what is left to read, which are consumed by this call.
+			 * 
+			 * 剩余可读内容的视图，这次调用会消费它们
+			 * 
+			 * @return buffers 缓冲
+			 */
+			ByteBuffer[] remaining() {
+				final ByteBuffer[] left = Arrays.copyOfRange(this.data, this.current, this.data.length);
+				this.current = this.data.length;
+				return left;
+			}
+			
+			/**
+			 * Move to the next buffer if the current one is consumed.
+			 * 
+			 * 如果当前缓冲已被消费，则移到下一个缓冲
+			 * 
+			 * @return TRUE if there are bytes to read
+			 */
+			private boolean next() {
+				while (this.current < this.data.length && !this.data[this.current].hasRemaining()) {
+					++this.current;
+				}
+				return this.current < this.data.length;
+			}
+		}
+	}
+	
+	/**
+	 * Decorator that keeps the content of the underlying Body in memory
+	 * if it is small, or spills it into a temporary file otherwise.
+	 * 
+	 * 装饰器，如果基础身体（body）的内容较小则把它保存在内存中，否则把它溢出到一个临时文件
+	 * 
+	 * <p>The content is read once, on first use, so it can be read as many
+	 * times as we want. Files are created in a spool directory and
+	 * deleted when the body is closed, or soon after it is collected by
+	 * GC, whichever comes first:
+	 * 
+	 * <pre> try (final Body.Spill body = new Body.Spill(new Body.Stream(input))) {
+	 * 	new RsPrint(new RsWithBody(new RsEmpty(), body)).print(output);
+	 * }</pre>
+	 * 
+	 * <p>内容在第一次使用时被读取一次，所以它可以被随意读取多次。文件在缓存目录中创建，
+	 * 在身体被关闭时，或者在它被 GC 回收后不久被删除，以先发生者为准
+	 * 
+	 * <p>The class is thread-safe.
+	 * 
+	 * <p>这个类是线程安全的
+	 * 
+	 * @author Yrh
+	 *
+	 */
+	final class Spill implements Body, Closeable {
 		
 		/**
 		 * The underlying body.
@@ -219,69 +699,249 @@ public interface Body {
 		private final transient Body body;
 		
 		/**
-		 * Constructs a {@code TempFile} with the specified {@link Body}.
+		 * Largest content kept in memory.
 		 * 
-		 * 构造一个带有指定{@link Body}的{@code TempFile}
+		 * 保存在内存中的最大内容
+		 */
+		private final transient int threshold;
+		
+		/**
+		 * Spool of temporary files.
+		 * 
+		 * 临时文件的缓存目录
+		 */
+		private final transient Spool spool;
+		
+		/**
+		 * Lock for the content.
+		 * 
+		 * 内容的锁
+		 */
+		private final transient Object lock;
+		
+		/**
+		 * Content kept in memory, if it is small.
+		 * 
+		 * 保存在内存中的内容，如果它较小
+		 */
+		private transient byte[] bytes;
+		
+		/**
+		 * File with the content, if it is large.
+		 * 
+		 * 保存内容的文件，如果它较大
+		 */
+		private transient Spool.File file;
+		
+		/**
+		 * Is the body closed?
+		 * 
+		 * 身体是否已被关闭
+		 */
+		private transient boolean closed;
+		
+		/**
+		 * Constructs a {@code Spill} with the specified {@link Body}, kept in
+		 * memory up to 64 KB.
+		 * 
+		 * 构造一个带有指定{@link Body}的{@code Spill}，不超过 64 KB 的内容保存在内存中
 		 * 
 		 * @param body
 		 */
-		public TempFile(final Body body) {
+		public Spill(final Body body) {
+			this(body, 65536);
+		}
+		
+		/**
+		 * Constructs a {@code Spill} with the specified {@link Body} and
+		 * threshold, spilling into a sub-directory of {@code java.io.tmpdir}.
+		 * 
+		 * 构造一个带有指定{@link Body}和阈值的{@code Spill}，溢出到{@code java.io.tmpdir}的一个子目录中
+		 * 
+		 * @param body
+		 * @param limit 保存在内存中的最大字节数
+		 */
+		public Spill(final Body body, final int limit) {
+			this(body, limit, Spool.DEFAULT);
+		}
+		
+		/**
+		 * Constructs a {@code Spill} with the specified {@link Body},
+		 * threshold and spool directory.
+		 * 
+		 * 构造一个带有指定{@link Body}、阈值和缓存目录的{@code Spill}
+		 * 
+		 * @param body
+		 * @param limit 保存在内存中的最大字节数
+		 * @param dir 缓存目录
+		 */
+		public Spill(final Body body, final int limit, final Path dir) {
+			this(body, limit, new Spool(dir));
+		}
+		
+		/**
+		 * Ctor.
+		 * @param body
+		 * @param limit 保存在内存中的最大字节数
+		 * @param spl 缓存目录
+		 */
+		private Spill(final Body body, final int limit, final Spool spl) {
 			this.body = body;
-			this.file = new File(
-							System.getProperty("java.io.tmpdir"),
-							String.format("%s-%s.tmp", 
-									Body.TempFile.class.getName(),
-									UUID.randomUUID().toString()
-							)
-						);
+			this.threshold = limit;
+			this.spool = spl;
+			this.lock = new Object();
 		}
 
 		@Override
 		public InputStream input() throws IOException {
-			return new FileInputStream(this.file());
+			synchronized (this.lock) {
+				this.load();
+				final InputStream input;
+				if (this.file == null) {
+					input = new ByteArrayInputStream(this.bytes);
+				} else {
+					input = new FileInputStream(this.file.path().toFile());
+				}
+				return input;
+			}
 		}
 
 		@Override
-		public int length() throws IOException {
-			return (int)this.file().length();
+		public long length() throws IOException {
+			synchronized (this.lock) {
+				this.load();
+				final long length;
+				if (this.file == null) {
+					length = this.bytes.length;
+				} else {
+					length = Files.size(this.file.path());
+				}
+				return length;
+			}
 		}
 		
 		/**
-		 * Needed to remove the file once the Stream object is no more used.
+		 * Delete the temporary file, if there is one. Streams already
+		 * opened can still be read where the platform allows it.
 		 * 
-		 * 一旦该流对象不再使用则应该清除临时文件
+		 * 删除临时文件，如果有的话。在平台允许的情况下，已经打开的流仍然可以读取
 		 */
 		@Override
-		protected void finalize() throws Throwable {
-			try {
-				Files.delete(Paths.get(this.file.getAbsolutePath()));
-			} finally {
-				super.finalize();
+		public void close() {
+			synchronized (this.lock) {
+				this.closed = true;
+				this.bytes = null;
+				if (this.file != null) {
+					this.file.delete();
+					this.file = null;
+				}
 			}
 		}
 		
 		/**
-		 * Gives the {@code File} that contains the content of the underlying
-		 * {@code  Body}.
+		 * Read the underlying body, if not read yet.
 		 * 
-		 * 给出包含基础{@code  Body}内容的{@code File}
+		 * 读取基础身体（body），如果还没有读取过
 		 * 
-		 * @return
 		 * @throws IOException
 		 */
-		private File file() throws IOException {
-			synchronized (this.file) {
-				if (!this.file.exists()) {
-					this.file.deleteOnExit();
-					try (final InputStream content = this.body.input()) {
-						Files.copy(
-								content, Paths.get(this.file.getAbsolutePath()),
-								StandardCopyOption.REPLACE_EXISTING
-						);
+		private void load() throws IOException {
+			if (this.closed) {
+				throw new IOException("the body is closed");
+			}
+			if (this.bytes == null && this.file == null) {
+				final ByteArrayOutputStream memory = new ByteArrayOutputStream();
+				Spool.File spilled = null;
+				OutputStream output = memory;
+				try (final InputStream content = this.body.input()) {
+					final byte[] chunk = new byte[8192];
+					while (true) {
+						final int read = content.read(chunk);
+						if (read < 0) {
+							break;
+						}
+						if (spilled == null && memory.size() + read > this.threshold) {
+							spilled = this.spool.create(this);
+							output = Files.newOutputStream(spilled.path());
+							memory.writeTo(output);
+						}
+						output.write(chunk, 0, read);
+					}
+					if (spilled == null && memory.size() > this.threshold) {
+						spilled = this.spool.create(this);
 					}
+					output.close();
+				} catch (final IOException ex) {
+					output.close();
+					if (spilled != null) {
+						spilled.delete();
+					}
+					throw ex;
+				}
+				if (spilled == null) {
+					this.bytes = memory.toByteArray();
+				} else {
+					this.file = spilled;
 				}
-				return this.file;
 			}
 		}
 	}
+	
+	/**
+	 * Decorator that will store the content of the underlying Body into a
+	 * temporary File.
+	 * 
+	 * 装饰器将会将基础身体（body）的内容存入一个临时文件
+	 * 
+	 * <p><b>The content of the Body will be stored into a temporary
+	 * file to be able to read it as many times as we want so use it only
+	 * for large content, for small content use {@link Body.ByteArray}
+	 * or {@link Body.Spill} instead.</b>
+	 * 
+	 * <p><b>存入临时文件的身体（body）内容可以随心所欲的被我们读取，不过仅限于
+	 * 大型内容，对于一个小型内容应使用{@link Body.ByteArray}或{@link Body.Spill}替代
+	 * 
+	 * <p>The file is deleted when the body is closed, or soon after it is
+	 * collected by GC.
+	 * 
+	 * <p>文件在身体被关闭时，或者在它被 GC 回收后不久被删除
+	 * 
+	 * @author Yrh
+	 *
+	 */
+	final class TempFile implements Body, Closeable {
+		
+		/**
+		 * The spilling body, with nothing kept in memory.
+		 * 
+		 * 溢出的身体，不在内存中保存任何内容
+		 */
+		private final transient Body.Spill spill;
+		
+		/**
+		 * Constructs a {@code TempFile} with the specified {@link Body}.
+		 * 
+		 * 构造一个带有指定{@link Body}的{@code TempFile}
+		 * 
+		 * @param body
+		 */
+		public TempFile(final Body body) {
+			this.spill = new Body.Spill(body, -1);
+		}
+
+		@Override
+		public InputStream input() throws IOException {
+			return this.spill.input();
+		}
+
+		@Override
+		public long length() throws IOException {
+			return this.spill.length();
+		}
+		
+		@Override
+		public void close() {
+			this.spill.close();
+		}
+	}
 }
@@ -0,0 +1,406 @@
+package com.yangruihan.mytakes.rs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Flat head of a response: status line and parallel arrays of header
+ * names and values.
+ *
+ * 响应的扁平头部：状态行以及头名字和值的平行数组
+ *
+ * <p>Response decorators produce a new {@code Head} from the head of
+ * their origin, instead of wrapping it into another iterable, so the
+ * head printed at the end is one flat structure, whatever the number of
+ * decorators:
+ *
+ * <pre> final Head head = Head.of(res.head())
+ * 	.set("Content-Type", "text/plain")
+ * 	.without("Set-Cookie");</pre>
+ *
+ * <p>响应装饰器从原始响应的头部生成一个新的{@code Head}，而不是把它包装进另一个可迭代对象，
+ * 所以无论有多少装饰器，最后打印的头部都是一个扁平的结构
+ *
+ * <p>Every operation takes O(headers) time and never changes the arrays
+ * of an existing head. Lines are rendered as {@code name: value}.
+ *
+ * <p>每个操作耗时 O(头的数量)，并且从不修改已有头部的数组。各行被表示为{@code name: value}
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+public final class Head implements Iterable<String> {
+
+	/**
+	 * No headers.
+	 *
+	 * 没有头
+	 */
+	private static final String[] NONE = new String[0];
+
+	/**
+	 * Status line, empty if there is none.
+	 *
+	 * 状态行，没有时为空字符串
+	 */
+	private final transient String status;
+
+	/**
+	 * Header names.
+	 *
+	 * 头的名字
+	 */
+	private final transient String[] names;
+
+	/**
+	 * Header values, {@code null} for lines without colon.
+	 *
+	 * 头的值，没有冒号的行为{@code null}
+	 */
+	private final transient String[] values;
+
+	/**
+	 * Ctor.
+	 * @param line 状态行
+	 */
+	public Head(final String line) {
+		this(line, Head.NONE, Head.NONE);
+	}
+
+	/**
+	 * Ctor.
+	 * @param line 状态行
+	 * @param hnames 头的名字
+	 * @param hvalues 头的值
+	 */
+	private Head(final String line, final String[] hnames, final String[] hvalues) {
+		this.status = line;
+		this.names = hnames;
+		this.values = hvalues;
+	}
+
+	/**
+	 * Flat head of these lines, the same object if it is a head already.
+	 *
+	 * 这些行的扁平头部，如果它已经是一个扁平头部则返回同一个对象
+	 *
+	 * @param lines 头部的行
+	 * @return head 扁平头部
+	 */
+	public static Head of(final Iterable<String> lines) {
+		final Head head;
+		if (lines instanceof Head) {
+			head = (Head) lines;
+		} else {
+			String line = "";
+			final List<String> hnames = new ArrayList<>(8);
+			final List<String> hvalues = new ArrayList<>(8);
+			for (final String text : lines) {
+				if (text.startsWith("HTTP/")) {
+					line = text;
+					continue;
+				}
+				final int colon = text.indexOf(':');
+				if (colon < 0) {
+					hnames.add(text);
+					hvalues.add(null);
+				} else {
+					hnames.add(text.substring(0, colon));
+					hvalues.add(text.substring(colon + 1).trim());
+				}
+			}
+			head = new Head(
+					line,
+					hnames.toArray(new String[hnames.size()]),
+					hvalues.toArray(new String[hvalues.size()])
+				);
+		}
+		return head;
+	}
+
+	/**
+	 * Status line.
+	 *
+	 * 状态行
+	 *
+	 * @return line 状态行，没有时为空字符串
+	 */
+	public String status() {
+		return this.status;
+	}
+
+	/**
+	 * Number of headers, not counting the status line.
+	 *
+	 * 头的数量，不计状态行
+	 *
+	 * @return count 数量
+	 */
+	public int size() {
+		return this.names.length;
+	}
+
+	/**
+	 * Name of the header.
+	 *
+	 * 头的名字
+	 *
+	 * @param idx 头的下标
+	 * @return name 名字
+	 */
+	public String name(final int idx) {
+		return this.names[idx];
+	}
+
+	/**
+	 * Value of the header.
+	 *
+	 * 头的值
+	 *
+	 * @param idx 头的下标
+	 * @return value 值，没有冒号的行为{@code null}
+	 */
+	public String value(final int idx) {
+		return this.values[idx];
+	}
+
+	/**
+	 * Is there a header with this name (case-insensitive)?
+	 *
+	 * 是否存在具有这个名字（不区分大小写）的头
+	 *
+	 * @param name 名字
+	 * @return TRUE if there is
+	 */
+	public boolean has(final String name) {
+		boolean has = false;
+		for (final String hname : this.names) {
+			if (hname.equalsIgnoreCase(name)) {
+				has = true;
+				break;
+			}
+		}
+		return has;
+	}
+
+	/**
+	 * The same head with another status line.
+	 *
+	 * 具有另一个状态行的同一头部
+	 *
+	 * @param line 状态行
+	 * @return head 头部
+	 */
+	public Head status(final String line) {
+		return new Head(line, this.names, this.values);
+	}
+
+	/**
+	 * The same head with one more header line, split at its colon.
+	 *
+	 * 多了一个头的同一头部，头在冒号处分割
+	 *
+	 * @param header 头
+	 * @return head 头部
+	 */
+	public Head with(final String header) {
+		final int colon = header.indexOf(':');
+		final Head head;
+		if (colon < 0) {
+			head = this.append(header, null);
+		} else {
+			head = this.append(
+					header.substring(0, colon),
+					header.substring(colon + 1).trim()
+				);
+		}
+		return head;
+	}
+
+	/**
+	 * The same head with one more header.
+	 *
+	 * 多了一个头的同一头部
+	 *
+	 * @param name 名字
+	 * @param value 值
+	 * @return head 头部
+	 */
+	public Head with(final String name, final String value) {
+		return this.append(name, value.trim());
+	}
+
+	/**
+	 * The same head without headers of this name (case-insensitive).
+	 *
+	 * 去掉这个名字（不区分大小写）的头之后的同一头部
+	 *
+	 * @param name 名字
+	 * @return head 头部
+	 */
+	public Head without(final String name) {
+		int left = 0;
+		for (final String hname : this.names) {
+			if (!hname.equalsIgnoreCase(name)) {
+				++left;
+			}
+		}
+		final Head head;
+		if (left == this.names.length) {
+			head = this;
+		} else {
+			final String[] hnames = new String[left];
+			final String[] hvalues = new String[left];
+			int pos = 0;
+			for (int idx = 0; idx < this.names.length; ++idx) {
+				if (!this.names[idx].equalsIgnoreCase(name)) {
+					hnames[pos] = this.names[idx];
+					hvalues[pos] = this.values[idx];
+					++pos;
+				}
+			}
+			head = new Head(this.status, hnames, hvalues);
+		}
+		return head;
+	}
+
+	/**
+	 * The same head with only one header of this name, with this value.
+	 *
+	 * 只有一个这个名字的头，并且值为这个值的同一头部
+	 *
+	 * @param name 名字
+	 * @param value 值
+	 * @return head 头部
+	 */
+	public Head set(final String name, final String value) {
+		return this.without(name).with(name, value);
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Head.Lines(this);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder text = new StringBuilder(this.status);
+		for (int idx = 0; idx < this.names.length; ++idx) {
+			text.append(", ").append(this.line(idx));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Header line.
+	 *
+	 * 头的行
+	 *
+	 * @param idx 头的下标
+	 * @return line 行
+	 */
+	private String line(final int idx) {
+		final String line;
+		if (this.values[idx] == null) {
+			line = this.names[idx];
+		} else {
+			line = new StringBuilder(this.names[idx].length() + this.values[idx].length() + 2)
+				.append(this.names[idx])
+				.append(": ")
+				.append(this.values[idx])
+				.toString();
+		}
+		return line;
+	}
+
+	/**
+	 * The same head with one more header.
+	 *
+	 * 多了一个头的同一头部
+	 *
+	 * @param name 名字
+	 * @param value 值，可以为{@code null}
+	 * @return head 头部
+	 */
+	private Head append(final String name, final String value) {
+		final String[] hnames = Arrays.copyOf(this.names, this.names.length + 1);
+		final String[] hvalues = Arrays.copyOf(this.values, this.values.length + 1);
+		hnames[this.names.length] = name;
+		hvalues[this.values.length] = value;
+		return new Head(this.status, hnames, hvalues);
+	}
+
+	/**
+	 * Iterator over lines of the head, status line first.
+	 *
+	 * 头部各行的迭代器，状态行在最前
+	 *
+	 * <p>This class is NOT thread-safe.
+	 *
+	 * <p>这个类不是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Lines implements Iterator<String> {
+
+		/**
+		 * The head.
+		 *
+		 * 头部
+		 */
+		private final transient Head head;
+
+		/**
+		 * Next header to return, -1 for the status line.
+		 *
+		 * 下一个要返回的头，-1 表示状态行
+		 */
+		private transient int next;
+
+		/**
+		 * Ctor.
+		 * @param hed 头部
+		 */
+		Lines(final Head hed) {
+			this.head = hed;
+			if (hed.status.isEmpty()) {
+				this.next = 0;
+			} else {
+				this.next = -1;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next < this.head.names.length;
+		}
+
+		@Override
+		public String next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException("No more lines in the head.");
+			}
+			final String line;
+			if (this.next < 0) {
+				line = this.head.status;
+			} else {
+				line = this.head.line(this.next);
+			}
+			++this.next;
+			return line;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("This iterable is immutable and cannot remove anything");
+		}
+	}
+}
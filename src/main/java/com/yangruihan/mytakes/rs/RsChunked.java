@@ -0,0 +1,98 @@
+package com.yangruihan.mytakes.rs;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.yangruihan.mytakes.Response;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Response decorator, sending the body with chunked transfer coding.
+ *
+ * 响应装饰器，以分块传输编码发送身体
+ *
+ * <p>The length of the body doesn't have to be known in advance: the
+ * {@code Content-Length} header is removed and
+ * {@code Transfer-Encoding: chunked} is added. The body stays as it is;
+ * {@link RsPrint} encodes it chunk by chunk while it is sent, so it goes
+ * out as it is produced, for example:
+ *
+ * <pre> new RsChunked(
+ * 	new RsWithType(new RsEmpty(), "text/csv"),
+ * 	report.stream()
+ * )</pre>
+ *
+ * <p>身体的长度不必事先知道：{@code Content-Length}头被移除，加上{@code Transfer-Encoding: chunked}。
+ * 身体保持原样；{@link RsPrint}在发送它时一块一块地编码，所以它在生成的同时就被发送
+ *
+ * <p>HTTP/1.0 clients don't know the coding, so the backs send them the
+ * body as it is and close the connection after it.
+ *
+ * <p>HTTP/1.0 客户端不认识这种编码，所以后端把身体原样发给它们，并在之后关闭连接
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+public final class RsChunked extends RsWrap {
+
+	/**
+	 * Ctor.
+	 * @param body 响应体
+	 */
+	public RsChunked(final InputStream body) {
+		this(new RsEmpty(), body);
+	}
+
+	/**
+	 * Ctor.
+	 * @param res 原始响应
+	 * @param body 响应体
+	 */
+	public RsChunked(final Response res, final InputStream body) {
+		this(
+			new Response() {
+
+				@Override
+				public Iterable<String> head() throws IOException {
+					return res.head();
+				}
+
+				@Override
+				public InputStream body() {
+					return body;
+				}
+			}
+		);
+	}
+
+	/**
+	 * Ctor.
+	 * @param res 原始响应
+	 */
+	public RsChunked(final Response res) {
+		super(
+			new Response() {
+
+				@Override
+				public Iterable<String> head() throws IOException {
+					return Head.of(res.head())
+						.without("Content-Length")
+						.set("Transfer-Encoding", "chunked");
+				}
+
+				@Override
+				public InputStream body() throws IOException {
+					return res.body();
+				}
+			}
+		);
+	}
+}
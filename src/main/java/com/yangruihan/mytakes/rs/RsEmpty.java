@@ -3,7 +3,6 @@ package com.yangruihan.mytakes.rs;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
 
 import com.yangruihan.mytakes.Response;
 
@@ -26,9 +25,16 @@ import lombok.ToString;
 @EqualsAndHashCode
 public final class RsEmpty implements Response {
 
+	/**
+	 * Head of every empty response.
+	 * 
+	 * 所有空响应的头部
+	 */
+	private static final Head HEAD = new Head("HTTP/1.1 200 OK");
+
 	@Override
 	public Iterable<String> head() throws IOException {
-		return Collections.singletonList("HTTP/1.1 200 OK");
+		return RsEmpty.HEAD;
 	}
 
 	@Override
@@ -0,0 +1,395 @@
+package com.yangruihan.mytakes.rs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yangruihan.mytakes.Response;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Response rendered once, with its status line, headers and body, into
+ * one immutable array of bytes.
+ *
+ * 只渲染一次的响应，它的状态行、头和身体被渲染进一个不可变的字节数组
+ *
+ * <p>The original response is validated, encoded and read on first use
+ * only; later its head and body come from the array, and
+ * {@link RsPrint} sends the array with a single write. It is meant for
+ * responses that never change, made once and given out to every request:
+ *
+ * <pre> private static final Response HEALTH = new RsFrozen(
+ * 	new RsWithType(new RsText("{\"status\":\"up\"}"), "application/json")
+ * );</pre>
+ *
+ * <p>原始响应只在第一次使用时被校验、编码和读取；之后它的头部和身体都来自这个数组，
+ * {@link RsPrint}用一次写入发送这个数组。它适用于从不改变的响应，只生成一次然后交给每一个请求
+ *
+ * <p>The original response is read once, even if many threads use this
+ * one for the first time together, and the array is shared by all of
+ * them, never changed.
+ *
+ * <p>即使很多线程同时第一次使用这个响应，原始响应也只被读取一次，这个数组被所有线程共享，从不修改
+ *
+ * <p>A body sent with chunked transfer coding, see {@link RsChunked}, is
+ * read whole, so its length is known, and the array has a
+ * {@code Content-Length} header instead.
+ *
+ * <p>以分块传输编码发送的身体，见{@link RsChunked}，被整个读取，所以它的长度是已知的，
+ * 这个数组带有的是{@code Content-Length}头
+ *
+ * <p>A copy with another head, see {@link #with(Iterable)}, shares the
+ * body bytes; only its head is encoded, and it is sent in front of them.
+ *
+ * <p>带有另一个头部的副本，见{@link #with(Iterable)}，共享身体的字节；只有它的头部被编码，
+ * 并在这些字节之前发送
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@ToString(of = "origin")
+@EqualsAndHashCode(of = "origin")
+public final class RsFrozen implements Response {
+
+	/**
+	 * Original response.
+	 *
+	 * 原始响应
+	 */
+	private final transient Response origin;
+
+	/**
+	 * Rendered response, made on first use.
+	 *
+	 * 渲染后的响应，在第一次使用时生成
+	 */
+	private final transient AtomicReference<RsFrozen.Rendered> rendered;
+
+	/**
+	 * Entity tag of the body, made on first use and shared by the copies
+	 * with the same body.
+	 *
+	 * 身体的实体标签，在第一次使用时生成，并被身体相同的副本共享
+	 */
+	private final transient AtomicReference<String> tag;
+
+	/**
+	 * This response with its entity tag, made on first use.
+	 *
+	 * 带有实体标签的这个响应，在第一次使用时生成
+	 */
+	private final transient AtomicReference<RsFrozen> tagged;
+
+	/**
+	 * Ctor.
+	 * @param res 原始响应
+	 */
+	public RsFrozen(final Response res) {
+		this(res, null, new AtomicReference<String>());
+	}
+
+	/**
+	 * Ctor.
+	 * @param res 原始响应
+	 * @param done 渲染后的响应，没有时为{@code null}
+	 * @param etag 身体的实体标签
+	 */
+	private RsFrozen(final Response res, final RsFrozen.Rendered done,
+			final AtomicReference<String> etag) {
+		this.origin = res;
+		this.rendered = new AtomicReference<>(done);
+		this.tag = etag;
+		this.tagged = new AtomicReference<>();
+	}
+
+	@Override
+	public Iterable<String> head() throws IOException {
+		return this.render().head;
+	}
+
+	@Override
+	public InputStream body() throws IOException {
+		final RsFrozen.Rendered done = this.render();
+		return new ByteArrayInputStream(
+				done.bytes, done.split, done.bytes.length - done.split
+			);
+	}
+
+	/**
+	 * Number of bytes of the whole response in HTTP format.
+	 *
+	 * HTTP 格式的整个响应的字节数
+	 *
+	 * @return size 字节数
+	 * @throws IOException
+	 */
+	public int size() throws IOException {
+		final RsFrozen.Rendered done = this.render();
+		int size = done.bytes.length;
+		if (done.top != null) {
+			size += done.top.length - done.split;
+		}
+		return size;
+	}
+
+	/**
+	 * This response with another head and the same body, whose bytes and
+	 * {@link #etag()} are shared; only the head is encoded. The head must
+	 * describe the same body, with the same {@code Content-Length}.
+	 *
+	 * 带有另一个头部和同一个身体的这个响应，身体的字节和{@link #etag()}是共享的；只有头部被编码。
+	 * 头部必须描述同一个身体，带有同样的{@code Content-Length}
+	 *
+	 * @param head 头部
+	 * @return response 响应
+	 * @throws IOException
+	 */
+	public RsFrozen with(final Iterable<String> head) throws IOException {
+		final RsFrozen.Rendered done = this.render();
+		final Head hed = Head.of(head);
+		return new RsFrozen(
+			new Response() {
+
+				@Override
+				public Iterable<String> head() {
+					return hed;
+				}
+
+				@Override
+				public InputStream body() {
+					return new ByteArrayInputStream(
+							done.bytes, done.split, done.bytes.length - done.split
+						);
+				}
+			},
+			new RsFrozen.Rendered(hed, RsPrint.encode(hed), done.bytes, done.split),
+			this.tag
+		);
+	}
+
+	/**
+	 * Strong entity tag of the body, a 64-bit FNV-1a hash of its bytes,
+	 * computed once for all the copies with this body.
+	 *
+	 * 身体的强实体标签，即它的字节的 64 位 FNV-1a 哈希值，对所有带有这个身体的副本只计算一次
+	 *
+	 * @return tag 实体标签，带引号
+	 * @throws IOException
+	 */
+	public String etag() throws IOException {
+		String etag = this.tag.get();
+		if (etag == null) {
+			final RsFrozen.Rendered done = this.render();
+			long hash = 0xcbf29ce484222325L;
+			for (int idx = done.split; idx < done.bytes.length; ++idx) {
+				hash = (hash ^ done.bytes[idx] & 0xff) * 0x100000001b3L;
+			}
+			etag = String.format("\"%016x\"", hash);
+			this.tag.set(etag);
+		}
+		return etag;
+	}
+
+	/**
+	 * This response with an {@code ETag} header of its {@link #etag()},
+	 * made once {@link #with(Iterable) with} the same body bytes, so it is
+	 * still sent with a single write.
+	 *
+	 * 带有{@link #etag()}的{@code ETag}头的这个响应，只{@link #with(Iterable) 以}同样的身体字节生成一次，
+	 * 所以它仍然用一次写入发送
+	 *
+	 * @return response 响应
+	 * @throws IOException
+	 */
+	public RsFrozen tagged() throws IOException {
+		RsFrozen res = this.tagged.get();
+		if (res == null) {
+			this.tagged.compareAndSet(
+					null, this.with(Head.of(this.head()).set("ETag", this.etag()))
+				);
+			res = this.tagged.get();
+		}
+		return res;
+	}
+
+	/**
+	 * The whole response in HTTP format, the head and then the body; the
+	 * bytes must not be changed.
+	 *
+	 * HTTP 格式的整个响应，先是头部然后是身体；这些字节不能被修改
+	 *
+	 * @return buffers 缓冲
+	 * @throws IOException
+	 */
+	ByteBuffer[] buffers() throws IOException {
+		final RsFrozen.Rendered done = this.render();
+		final ByteBuffer[] buffers;
+		if (done.top == null) {
+			buffers = new ByteBuffer[] {ByteBuffer.wrap(done.bytes)};
+		} else {
+			buffers = new ByteBuffer[] {ByteBuffer.wrap(done.top), this.rest()};
+		}
+		return buffers;
+	}
+
+	/**
+	 * The head in HTTP format, with the final empty line; the bytes must
+	 * not be changed.
+	 *
+	 * HTTP 格式的头部，包括最后的空行；这些字节不能被修改
+	 *
+	 * @return buffer 缓冲
+	 * @throws IOException
+	 */
+	ByteBuffer top() throws IOException {
+		final RsFrozen.Rendered done = this.render();
+		final ByteBuffer buffer;
+		if (done.top == null) {
+			buffer = ByteBuffer.wrap(done.bytes, 0, done.split);
+		} else {
+			buffer = ByteBuffer.wrap(done.top);
+		}
+		return buffer;
+	}
+
+	/**
+	 * The body; the bytes must not be changed.
+	 *
+	 * 身体；这些字节不能被修改
+	 *
+	 * @return buffer 缓冲
+	 * @throws IOException
+	 */
+	ByteBuffer rest() throws IOException {
+		final RsFrozen.Rendered done = this.render();
+		return ByteBuffer.wrap(done.bytes, done.split, done.bytes.length - done.split);
+	}
+
+	/**
+	 * Render the original response, once.
+	 *
+	 * 渲染原始响应，只渲染一次
+	 *
+	 * @return rendered 渲染后的响应
+	 * @throws IOException
+	 */
+	private RsFrozen.Rendered render() throws IOException {
+		RsFrozen.Rendered done = this.rendered.get();
+		if (done == null) {
+			synchronized (this.rendered) {
+				done = this.rendered.get();
+				if (done == null) {
+					Head head = Head.of(this.origin.head());
+					final ByteArrayOutputStream baos;
+					final byte[] encoded;
+					if (RsPrint.chunked(head)) {
+						final ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+						this.read(body);
+						head = head.without("Transfer-Encoding")
+							.set("Content-Length", Integer.toString(body.size()));
+						encoded = RsPrint.encode(head);
+						baos = new ByteArrayOutputStream(encoded.length + body.size());
+						baos.write(encoded);
+						body.writeTo(baos);
+					} else {
+						encoded = RsPrint.encode(head);
+						baos = new ByteArrayOutputStream(encoded.length + 256);
+						baos.write(encoded);
+						this.read(baos);
+					}
+					done = new RsFrozen.Rendered(head, null, baos.toByteArray(), encoded.length);
+					this.rendered.set(done);
+				}
+			}
+		}
+		return done;
+	}
+
+	/**
+	 * Read the whole body of the original response.
+	 *
+	 * 读取原始响应的整个身体
+	 *
+	 * @param output 输出
+	 * @throws IOException
+	 */
+	private void read(final ByteArrayOutputStream output) throws IOException {
+		try (final InputStream body = this.origin.body()) {
+			final byte[] buf = new byte[4096];
+			while (true) {
+				final int bytes = body.read(buf);
+				if (bytes < 0) {
+					break;
+				}
+				output.write(buf, 0, bytes);
+			}
+		}
+	}
+
+	/**
+	 * Rendered response.
+	 *
+	 * 渲染后的响应
+	 *
+	 * <p>The class is immutable and thread-safe.
+	 *
+	 * <p>这个类是不可变的且线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Rendered {
+
+		/**
+		 * Head.
+		 *
+		 * 头部
+		 */
+		private final transient Head head;
+
+		/**
+		 * Head in HTTP format, sent instead of the one in the bytes, or
+		 * {@code null} if the bytes start with it.
+		 *
+		 * HTTP 格式的头部，代替字节中的头部发送，如果字节以它开头则为{@code null}
+		 */
+		private final transient byte[] top;
+
+		/**
+		 * Head and body in HTTP format.
+		 *
+		 * HTTP 格式的头部和身体
+		 */
+		private final transient byte[] bytes;
+
+		/**
+		 * Where the body starts.
+		 *
+		 * 身体开始的位置
+		 */
+		private final transient int split;
+
+		/**
+		 * Ctor.
+		 * @param hed 头部
+		 * @param encoded HTTP 格式的头部，如果字节以它开头则为{@code null}
+		 * @param data HTTP 格式的头部和身体
+		 * @param start 身体开始的位置
+		 */
+		Rendered(final Head hed, final byte[] encoded, final byte[] data, final int start) {
+			this.head = hed;
+			this.top = encoded;
+			this.bytes = data;
+			this.split = start;
+		}
+	}
+}
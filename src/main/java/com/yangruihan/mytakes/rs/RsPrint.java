@@ -1,14 +1,20 @@
 package com.yangruihan.mytakes.rs;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.Writer;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.yangruihan.mytakes.Response;
-import com.yangruihan.mytakes.misc.Utf8OutputStreamWriter;
+import com.yangruihan.mytakes.misc.ChannelOutput;
 import com.yangruihan.mytakes.misc.Utf8String;
 
 import lombok.EqualsAndHashCode;
@@ -31,18 +37,101 @@ import lombok.ToString;
 public final class RsPrint extends RsWrap {
 	
 	/**
-	 * Pattern for first line.
+	 * Pattern for first line, used in error messages.
 	 * 
-	 * 第一行的模式
+	 * 第一行的模式，用于错误信息中
 	 */
-	private static final Pattern FIRST = Pattern.compile("HTTP/1\\.1 \\d{3} [a-zA-Z ]+");
+	private static final String FIRST = "HTTP/1\\.1 \\d{3} [a-zA-Z ]+";
 	
 	/**
-	 * Pattern for all other lines in the head.
+	 * Pattern for all other lines in the head, used in error messages.
 	 * 
-	 * 头部（header）中其他行的模式
+	 * 头部（header）中其他行的模式，用于错误信息中
 	 */
-	private static final Pattern OTHERS = Pattern.compile("[a-zA-Z0-9\\-]+:\\p{Print}+");
+	private static final String OTHERS = "[a-zA-Z0-9\\-]+:\\p{Print}+";
+
+	/**
+	 * Prefix of the first line.
+	 * 
+	 * 第一行的前缀
+	 */
+	private static final String VERSION = "HTTP/1.1 ";
+
+	/**
+	 * Class of characters allowed in header names.
+	 * 
+	 * 允许出现在头的名字中的字符类别
+	 */
+	private static final int NAME = 1;
+
+	/**
+	 * Class of printable characters, allowed in header values.
+	 * 
+	 * 可打印字符的类别，允许出现在头的值中
+	 */
+	private static final int PRINT = 2;
+
+	/**
+	 * Class of characters allowed in reason phrases.
+	 * 
+	 * 允许出现在原因短语中的字符类别
+	 */
+	private static final int REASON = 4;
+
+	/**
+	 * Room for the size line before the data of a chunk.
+	 * 
+	 * 块数据之前为大小行预留的空间
+	 */
+	private static final int PREFIX = 10;
+
+	/**
+	 * Maximum size of the data of a chunk.
+	 * 
+	 * 块数据的最大大小
+	 */
+	private static final int CHUNK = 8192;
+
+	/**
+	 * The last chunk, with an empty trailer.
+	 * 
+	 * 最后一个块，带有空的尾部
+	 */
+	private static final byte[] LAST = {'0', '\r', '\n', '\r', '\n'};
+
+	/**
+	 * Classes of every 7-bit character.
+	 * 
+	 * 每个 7 位字符的类别
+	 */
+	private static final byte[] CLASSES = RsPrint.classes();
+
+	/**
+	 * Encoded first lines of known statuses, with line breaks.
+	 * 
+	 * 已知状态的第一行编码后的字节，带有换行符
+	 */
+	private static final Map<String, byte[]> STATUSES = RsPrint.statuses();
+
+	/**
+	 * Owner of shared bytes, which have nothing to release.
+	 * 
+	 * 共享字节的所有者，它们没有需要释放的东西
+	 */
+	private static final Closeable SHARED = new Closeable() {
+
+		@Override
+		public void close() {
+			// the bytes stay with their response
+		}
+	};
+
+	/**
+	 * Original response.
+	 * 
+	 * 原始响应
+	 */
+	private final transient Response origin;
 
 	/**
 	 * Ctor.
@@ -50,6 +139,7 @@ public final class RsPrint extends RsWrap {
 	 */
 	public RsPrint(final Response res) {
 		super(res);
+		this.origin = res;
 	}
 	
 	/**
@@ -99,12 +189,24 @@ public final class RsPrint extends RsWrap {
 	 * 
 	 * 打印到输出流
 	 * 
+	 * <p>A {@link RsFrozen} response is sent as its bytes, in one write,
+	 * even if its head is not in front of its body in the same array.
+	 * 
+	 * <p>{@link RsFrozen}响应以它的字节发送，只写入一次，即使它的头部和身体不在同一个数组中
+	 * 
 	 * @param output
 	 * @throws IOException
 	 */
 	public void print(final OutputStream output) throws IOException {
-		this.printHead(output);
-		this.printBody(output);
+		if (this.origin instanceof RsFrozen) {
+			RsPrint.write(output, ((RsFrozen) this.origin).buffers());
+			output.flush();
+		} else {
+			final Head head = Head.of(this.head());
+			output.write(RsPrint.encode(head));
+			this.send(output, RsPrint.chunked(head));
+			output.flush();
+		}
 	}
 	
 	/**
@@ -116,56 +218,476 @@ public final class RsPrint extends RsWrap {
 	 * @throws IOException
 	 */
 	public void printHead(final OutputStream output) throws IOException {
-		final String eol = "\r\n"; // end of line
-		final Writer writer = new Utf8OutputStreamWriter(output);
-		int pos = 0;
-		for (final String line : this.head()) {
-			if (pos == 0 && !RsPrint.FIRST.matcher(line).matches()) {
+		if (this.origin instanceof RsFrozen) {
+			RsPrint.write(output, ((RsFrozen) this.origin).top());
+		} else {
+			output.write(RsPrint.encode(Head.of(this.head())));
+		}
+		output.flush();
+	}
+	
+	/**
+	 * Print it into output stream, and close the body.
+	 * 
+	 * 打印到输出流，并关闭身体
+	 * 
+	 * <p>A file body is sent with
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * and a {@link Body.Direct} body as its buffers, without copying them
+	 * through the heap, when the output is a {@link ChannelOutput}.
+	 * 
+	 * <p>当输出是{@link ChannelOutput}时，文件身体通过
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}发送，
+	 * {@link Body.Direct}身体以它的缓冲发送，不经过堆内存复制
+	 * 
+	 * <p>Other bodies are given to a {@link ChannelOutput} as streams, see
+	 * {@link ChannelOutput#stream(InputStream)}, and read as it sends them.
+	 * 
+	 * <p>其他身体作为流交给{@link ChannelOutput}，见{@link ChannelOutput#stream(InputStream)}，
+	 * 在它发送的同时被读取
+	 * 
+	 * <p>The body of a {@link RsFrozen} response is sent as its bytes.
+	 * 
+	 * <p>{@link RsFrozen}响应的身体以它的字节发送
+	 * 
+	 * <p>If the last transfer coding of the response is {@code chunked},
+	 * see {@link RsChunked}, the body is encoded in chunks of up to 8 KB
+	 * while it is read.
+	 * 
+	 * <p>如果响应的最后一个传输编码是{@code chunked}，见{@link RsChunked}，
+	 * 身体在被读取时编码为最多 8 KB 的块
+	 * 
+	 * @param output
+	 * @throws IOException
+	 */
+	public void printBody(final OutputStream output) throws IOException {
+		if (this.origin instanceof RsFrozen) {
+			RsPrint.write(output, ((RsFrozen) this.origin).rest());
+		} else {
+			this.send(output, RsPrint.chunked(Head.of(this.head())));
+		}
+		output.flush();
+	}
+
+	/**
+	 * Send the body and close it.
+	 * 
+	 * 发送身体并关闭它
+	 * 
+	 * @param output 输出
+	 * @param chunked 是否以分块传输编码发送
+	 * @throws IOException
+	 */
+	private void send(final OutputStream output, final boolean chunked) throws IOException {
+		final InputStream body = this.body();
+		if (chunked) {
+			RsPrint.pipe(new RsPrint.Chunks(body), output);
+		} else if (body instanceof FileInputStream && output instanceof ChannelOutput) {
+			final FileChannel file = ((FileInputStream) body).getChannel();
+			final long position = file.position();
+			((ChannelOutput) output).transfer(file, position, file.size() - position);
+		} else if (body instanceof Body.Direct.Input && output instanceof ChannelOutput) {
+			((ChannelOutput) output).send(((Body.Direct.Input) body).remaining(), body);
+		} else {
+			RsPrint.pipe(body, output);
+		}
+	}
+
+	/**
+	 * Send the stream as it is read, and close it.
+	 * 
+	 * 在读取流的同时发送它，并关闭它
+	 * 
+	 * @param body 流
+	 * @param output 输出
+	 * @throws IOException
+	 */
+	private static void pipe(final InputStream body, final OutputStream output)
+			throws IOException {
+		if (output instanceof ChannelOutput) {
+			((ChannelOutput) output).stream(body);
+		} else {
+			try {
+				final byte[] buf = new byte[RsPrint.PREFIX + RsPrint.CHUNK + 2];
+				while (true) {
+					final int bytes = body.read(buf);
+					if (bytes < 0) {
+						break;
+					}
+					output.write(buf, 0, bytes);
+				}
+			} finally {
+				body.close();
+			}
+		}
+	}
+	
+	/**
+	 * Is {@code chunked} the last transfer coding of the response?
+	 * 
+	 * {@code chunked}是否是响应的最后一个传输编码
+	 * 
+	 * @param head 响应头部
+	 * @return TRUE if it is
+	 */
+	static boolean chunked(final Head head) {
+		String last = "";
+		for (int idx = 0; idx < head.size(); ++idx) {
+			if (head.value(idx) != null && "Transfer-Encoding".equalsIgnoreCase(head.name(idx))) {
+				last = head.value(idx);
+			}
+		}
+		return "chunked".equalsIgnoreCase(last.substring(last.lastIndexOf(',') + 1).trim());
+	}
+	
+	/**
+	 * Is it a valid header line, {@code name:value}?
+	 * 
+	 * 是否是一个合法的头部行，即{@code name:value}
+	 * 
+	 * @param line 行
+	 * @return TRUE if it is
+	 */
+	static boolean header(final String line) {
+		final int colon = line.indexOf(':');
+		return colon > 0 && colon < line.length() - 1
+				&& RsPrint.all(line, 0, colon, RsPrint.NAME)
+				&& RsPrint.all(line, colon + 1, line.length(), RsPrint.PRINT);
+	}
+	
+	/**
+	 * Validate the head and encode it, with the final empty line, in one
+	 * array, copying characters as ASCII bytes.
+	 * 
+	 * 校验头部并把它连同最后的空行编码进一个数组，把字符作为 ASCII 字节复制
+	 * 
+	 * @param head 头部
+	 * @return bytes 字节
+	 */
+	static byte[] encode(final Head head) {
+		final String status = head.status();
+		final byte[] first = RsPrint.first(status);
+		int size = first.length + 2;
+		for (int idx = 0; idx < head.size(); ++idx) {
+			size += head.name(idx).length() + 2;
+			if (head.value(idx) != null) {
+				size += head.value(idx).length() + 2;
+			}
+		}
+		final byte[] buf = new byte[size];
+		System.arraycopy(first, 0, buf, 0, first.length);
+		int pos = first.length;
+		for (int idx = 0; idx < head.size(); ++idx) {
+			final String name = head.name(idx);
+			final String value = head.value(idx);
+			if (name.isEmpty() || value == null
+					|| !RsPrint.copy(name, buf, pos, RsPrint.NAME)
+					|| !RsPrint.copy(value, buf, pos + name.length() + 2, RsPrint.PRINT)) {
+				final String line;
+				if (value == null) {
+					line = name;
+				} else {
+					line = String.format("%s: %s", name, value);
+				}
 				throw new IllegalArgumentException(
 						String.format(
-							"first line of HTTP response \"%s\" doesn't match \"%s\" regular expression, but it should, according to RFC 7230",
+							"header line #%d of HTTP response \"%s\" doesn't match \"%s\" regular expression, but it should, according to RFC 7230",
+							idx + 2,
 							line,
-							RsPrint.FIRST
+							RsPrint.OTHERS
 						)
 				);
 			}
-			if (pos > 0 && !RsPrint.OTHERS.matcher(line).matches()) {
+			pos += name.length();
+			buf[pos] = ':';
+			buf[pos + 1] = ' ';
+			pos += value.length() + 2;
+			buf[pos] = '\r';
+			buf[pos + 1] = '\n';
+			pos += 2;
+		}
+		buf[pos] = '\r';
+		buf[pos + 1] = '\n';
+		return buf;
+	}
+	
+	/**
+	 * Write shared bytes, which a {@link ChannelOutput} sends as they are.
+	 * 
+	 * 写入共享的字节，{@link ChannelOutput}会原样发送它们
+	 * 
+	 * @param output 输出
+	 * @param buffers 缓冲，包装着数组
+	 * @throws IOException
+	 */
+	private static void write(final OutputStream output, final ByteBuffer... buffers)
+			throws IOException {
+		if (output instanceof ChannelOutput) {
+			((ChannelOutput) output).send(buffers, RsPrint.SHARED);
+		} else {
+			for (final ByteBuffer buffer : buffers) {
+				output.write(
+						buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()
+					);
+			}
+		}
+	}
+	
+	/**
+	 * Encoded first line, with its line break, pre-encoded if the status is known.
+	 * 
+	 * 编码后的第一行，带有换行符，已知状态的第一行是预先编码的
+	 * 
+	 * @param line 第一行
+	 * @return bytes 字节
+	 */
+	private static byte[] first(final String line) {
+		byte[] bytes = RsPrint.STATUSES.get(line);
+		if (bytes == null) {
+			final int len = RsPrint.VERSION.length();
+			bytes = new byte[line.length() + 2];
+			if (line.length() < len + 5 || !line.startsWith(RsPrint.VERSION)
+					|| !RsPrint.digits(line, len, len + 3) || line.charAt(len + 3) != ' '
+					|| !RsPrint.all(line, len + 4, line.length(), RsPrint.REASON)
+					|| !RsPrint.copy(line, bytes, 0, RsPrint.PRINT)) {
 				throw new IllegalArgumentException(
 						String.format(
-							"header line #%d of HTTP response \"%s\" doesn't match \"%s\" regular expression, but it should, according to RFC 7230",
-							pos + 1,
+							"first line of HTTP response \"%s\" doesn't match \"%s\" regular expression, but it should, according to RFC 7230",
 							line,
-							RsPrint.OTHERS
+							RsPrint.FIRST
 						)
 				);
 			}
-			writer.append(line);
-			writer.append(eol);
-			++pos;
+			bytes[line.length()] = '\r';
+			bytes[line.length() + 1] = '\n';
 		}
-		writer.append(eol);
-        writer.flush();
+		return bytes;
 	}
 	
 	/**
-	 * Print it into output stream.
+	 * Copy characters as ASCII bytes, checking their class on the way.
 	 * 
-	 * 打印到输出流
+	 * 把字符作为 ASCII 字节复制，同时检查它们的类别
 	 * 
-	 * @param output
-	 * @throws IOException
+	 * @param text 文本
+	 * @param buf 缓冲
+	 * @param offset 缓冲中的起始位置
+	 * @param cls 字符类别
+	 * @return TRUE if all characters are of this class
 	 */
-	public void printBody(final OutputStream output) throws IOException {
-		final InputStream body = this.body();
-		final byte[] buf = new byte[4096];
-		while (true) {
-			final int bytes = body.read(buf);
-			if (bytes < 0) {
+	private static boolean copy(final String text, final byte[] buf, final int offset,
+			final int cls) {
+		boolean valid = true;
+		for (int idx = 0; idx < text.length(); ++idx) {
+			final char chr = text.charAt(idx);
+			if (chr >= RsPrint.CLASSES.length || (RsPrint.CLASSES[chr] & cls) == 0) {
+				valid = false;
 				break;
 			}
-			output.write(buf, 0, bytes);
+			buf[offset + idx] = (byte) chr;
 		}
-		output.flush();
+		return valid;
+	}
+	
+	/**
+	 * Are all characters in this range of this class?
+	 * 
+	 * 这个范围内的字符是否都属于这个类别
+	 * 
+	 * @param text 文本
+	 * @param start 起始位置
+	 * @param end 结束位置
+	 * @param cls 字符类别
+	 * @return TRUE if they are
+	 */
+	private static boolean all(final String text, final int start, final int end, final int cls) {
+		boolean valid = true;
+		for (int idx = start; valid && idx < end; ++idx) {
+			final char chr = text.charAt(idx);
+			valid = chr < RsPrint.CLASSES.length && (RsPrint.CLASSES[chr] & cls) != 0;
+		}
+		return valid;
+	}
+	
+	/**
+	 * Are all characters in this range decimal digits?
+	 * 
+	 * 这个范围内的字符是否都是十进制数字
+	 * 
+	 * @param text 文本
+	 * @param start 起始位置
+	 * @param end 结束位置
+	 * @return TRUE if they are
+	 */
+	private static boolean digits(final String text, final int start, final int end) {
+		boolean valid = true;
+		for (int idx = start; valid && idx < end; ++idx) {
+			valid = text.charAt(idx) >= '0' && text.charAt(idx) <= '9';
+		}
+		return valid;
 	}
 	
+	/**
+	 * Make the table of character classes.
+	 * 
+	 * 生成字符类别表
+	 * 
+	 * @return table 表
+	 */
+	private static byte[] classes() {
+		final byte[] table = new byte[128];
+		for (int chr = 0x20; chr < 0x7F; ++chr) {
+			int cls = RsPrint.PRINT;
+			if (chr >= 'a' && chr <= 'z' || chr >= 'A' && chr <= 'Z') {
+				cls |= RsPrint.NAME | RsPrint.REASON;
+			} else if (chr >= '0' && chr <= '9' || chr == '-') {
+				cls |= RsPrint.NAME;
+			} else if (chr == ' ') {
+				cls |= RsPrint.REASON;
+			}
+			table[chr] = (byte) cls;
+		}
+		return table;
+	}
+	
+	/**
+	 * Encode first lines of all statuses with known reasons.
+	 * 
+	 * 编码所有已知原因的状态的第一行
+	 * 
+	 * @return map 第一行到其字节的映射
+	 */
+	private static Map<String, byte[]> statuses() {
+		final Map<String, byte[]> map = new HashMap<>(0);
+		for (final Map.Entry<Integer, String> entry : RsWithStatus.reasons().entrySet()) {
+			final String line = String.format(
+					"%s%d %s", RsPrint.VERSION, entry.getKey(), entry.getValue()
+				);
+			map.put(line, String.format("%s\r\n", line).getBytes(StandardCharsets.US_ASCII));
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Body encoded in chunks of up to 8 KB as it is read.
+	 * 
+	 * 在读取时被编码为最多 8 KB 的块的身体
+	 * 
+	 * <p>This class is NOT thread-safe.
+	 * 
+	 * <p>这个类不是线程安全的
+	 * 
+	 * @author Yrh
+	 *
+	 */
+	private static final class Chunks extends InputStream {
+
+		/**
+		 * Original body.
+		 * 
+		 * 原始身体
+		 */
+		private final transient InputStream body;
+
+		/**
+		 * Current chunk, with room for its size line in front.
+		 * 
+		 * 当前的块，前面为它的大小行预留了空间
+		 */
+		private final transient byte[] buf;
+
+		/**
+		 * Next byte of the current chunk to give out.
+		 * 
+		 * 当前的块中下一个要给出的字节
+		 */
+		private transient int start;
+
+		/**
+		 * End of the current chunk.
+		 * 
+		 * 当前的块的结束位置
+		 */
+		private transient int end;
+
+		/**
+		 * Is the last chunk given out already?
+		 * 
+		 * 最后一个块是否已经给出
+		 */
+		private transient boolean over;
+
+		/**
+		 * Ctor.
+		 * @param input 原始身体
+		 */
+		Chunks(final InputStream input) {
+			super();
+			this.body = input;
+			this.buf = new byte[RsPrint.PREFIX + RsPrint.CHUNK + 2];
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] one = new byte[1];
+			int data = -1;
+			if (this.read(one, 0, 1) > 0) {
+				data = one[0] & 0xFF;
+			}
+			return data;
+		}
+
+		@Override
+		public int read(final byte[] output, final int off, final int len) throws IOException {
+			if (this.start == this.end && !this.over) {
+				this.fill();
+			}
+			int bytes = -1;
+			if (this.start < this.end) {
+				bytes = Math.min(len, this.end - this.start);
+				System.arraycopy(this.buf, this.start, output, off, bytes);
+				this.start += bytes;
+			}
+			return bytes;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.body.close();
+		}
+
+		/**
+		 * Read the next chunk, or make the last one at the end of the body.
+		 * 
+		 * 读取下一个块，在身体的末尾则生成最后一个块
+		 * 
+		 * @throws IOException
+		 */
+		private void fill() throws IOException {
+			int bytes = 0;
+			while (bytes == 0) {
+				bytes = this.body.read(this.buf, RsPrint.PREFIX, RsPrint.CHUNK);
+			}
+			if (bytes < 0) {
+				System.arraycopy(RsPrint.LAST, 0, this.buf, 0, RsPrint.LAST.length);
+				this.start = 0;
+				this.end = RsPrint.LAST.length;
+				this.over = true;
+			} else {
+				int first = RsPrint.PREFIX - 2;
+				this.buf[first] = '\r';
+				this.buf[first + 1] = '\n';
+				int rest = bytes;
+				do {
+					--first;
+					this.buf[first] = (byte) Character.forDigit(rest & 0xF, 16);
+					rest >>>= 4;
+				} while (rest > 0);
+				this.start = first;
+				this.end = RsPrint.PREFIX + bytes + 2;
+				this.buf[this.end - 2] = '\r';
+				this.buf[this.end - 1] = '\n';
+			}
+		}
+	}
 }
@@ -83,11 +83,16 @@ public final class RsText extends RsWrap {
 	
 	/**
 	 * Ctor.
+	 * 
+	 * <p>The body is sent as it is read, with chunked transfer coding.
+	 * 
+	 * <p>身体在读取的同时以分块传输编码发送
+	 * 
 	 * @param res 原始响应
 	 * @param body HTML身体（body）
 	 */
 	public RsText(final Response res, final InputStream body) {
-		this(new RsWithBody(res, new Body.TempFile(new Body.Stream(body))));
+		this(new RsWithBody(res, body));
 	}
 	
 	/**
@@ -4,6 +4,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 
 import com.yangruihan.mytakes.Response;
 import com.yangruihan.mytakes.misc.Utf8String;
@@ -34,6 +39,15 @@ import lombok.ToString;
 @ToString(callSuper = true)
 @EqualsAndHashCode(callSuper = true)
 public final class RsWithBody extends RsWrap {
+	
+	/**
+	 * Format of HTTP dates, according to RFC 7231.
+	 * 
+	 * 根据 RFC 7231 的 HTTP 日期格式
+	 */
+	private static final DateTimeFormatter DATE = DateTimeFormatter
+			.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+			.withZone(ZoneOffset.UTC);
 
 	/**
 	 * Constructs a {@code RsWithBody} with the specified body that will be
@@ -81,6 +95,18 @@ public final class RsWithBody extends RsWrap {
 		this(new RsEmpty(), url);
 	}
 	
+	/**
+	 * Constructs a {@code RsWithBody} with the content of the specified
+	 * file as body
+	 * 
+	 * 构造一个以特殊文件内容为响应体的响应
+	 * 
+	 * @param path 文件路径
+	 */
+	public RsWithBody(final Path path) {
+		this(new RsEmpty(), path);
+	}
+	
 	/**
 	 * Constructs a {@code RsWithBody} with the specified response and body. The
 	 * body will be encoded into UTF-8 by default.
@@ -117,6 +143,26 @@ public final class RsWithBody extends RsWrap {
 		this(res, new Body.URL(url));
 	}
 	
+	/**
+	 * Ctor.
+	 * 
+	 * <p>The file is sent without copying it through the heap when the
+	 * response is printed to a {@link com.yangruihan.mytakes.misc.ChannelOutput}.
+	 * 
+	 * <p>当响应被打印到{@link com.yangruihan.mytakes.misc.ChannelOutput}时，文件不经过堆内存复制就被发送
+	 * 
+	 * <p>The response says when the file was last modified, unless the
+	 * original response does.
+	 * 
+	 * <p>响应会说明文件最后修改的时间，除非原始响应已经说明了
+	 * 
+	 * @param res 原始响应
+	 * @param path 文件路径
+	 */
+	public RsWithBody(final Response res, final Path path) {
+		this(res, new Body.File(path));
+	}
+	
 	/**
 	 * Ctor.
 	 * @param res 原始响应
@@ -150,7 +196,16 @@ public final class RsWithBody extends RsWrap {
 				
 				@Override
 				public Iterable<String> head() throws IOException {
-					return RsWithBody.append(res, body.length());
+					Head head = RsWithBody.append(res, body.length());
+					if (body instanceof Body.File && !head.has("Last-Modified")) {
+						head = head.with(
+								"Last-Modified",
+								RsWithBody.DATE.format(
+									Instant.ofEpochMilli(((Body.File) body).modified())
+								)
+							);
+					}
+					return head;
 				}
 				
 				@Override
@@ -166,18 +221,24 @@ public final class RsWithBody extends RsWrap {
 	 * 
 	 * 添加内容长度到响应中的响应头
 	 * 
+	 * <p>A body of unknown length is sent with chunked transfer coding
+	 * instead, see {@link RsChunked}.
+	 * 
+	 * <p>长度未知的身体改为以分块传输编码发送，见{@link RsChunked}
+	 * 
 	 * @param res 响应
-	 * @param length 长度
+	 * @param length 长度，未知时为负数
 	 * @return
 	 * @throws IOException
 	 */
-	private static Iterable<String> append(final Response res, final int length) throws IOException {
-		final String header = "Content-Length";
-		return new RsWithHeader(
-					new RsWithoutHeader(res, header),
-					header,
-					Integer.toString(length)
-				).head();
+	private static Head append(final Response res, final long length) throws IOException {
+		final Head head;
+		if (length < 0L) {
+			head = Head.of(res.head()).without("Content-Length").set("Transfer-Encoding", "chunked");
+		} else {
+			head = Head.of(res.head()).set("Content-Length", Long.toString(length));
+		}
+		return head;
 	}
 	
 }
@@ -2,11 +2,8 @@ package com.yangruihan.mytakes.rs;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.regex.Pattern;
 
 import com.yangruihan.mytakes.Response;
-import com.yangruihan.mytakes.misc.Concat;
 
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -51,11 +48,11 @@ import lombok.ToString;
 public final class RsWithHeader extends RsWrap {
 
 	/**
-	 * Pattern for all other lines in the head.
+	 * Pattern for all other lines in the head, used in error messages.
 	 * 
-	 * 在头部中所有其他行的模式
+	 * 在头部中所有其他行的模式，用于错误信息中
 	 */
-	private static final Pattern HEADER = Pattern.compile("[a-zA-Z0-9\\-]+:\\p{Print}+");
+	private static final String HEADER = "[a-zA-Z0-9\\-]+:\\p{Print}+";
 	
 	/**
 	 * Ctor.
@@ -116,7 +113,7 @@ public final class RsWithHeader extends RsWrap {
 	 * @return
 	 */
 	private static Iterable<String> extend(final Iterable<String> head, final String header) {
-		if (!RsWithHeader.HEADER.matcher(header).matches()) {
+		if (!RsPrint.header(header)) {
 			throw new IllegalArgumentException(
 						String.format(
 								"header line of HTTP response \"%s\" doesn't match \"%s\" regular expression, but it should, according to RFC 7230",
@@ -125,6 +122,6 @@ public final class RsWithHeader extends RsWrap {
 						)
 					);
 		}
-		return new Concat<String>(head, Collections.singleton(header));
+		return Head.of(head).with(header);
 	}
 }
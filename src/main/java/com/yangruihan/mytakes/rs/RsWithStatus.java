@@ -8,9 +8,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.yangruihan.mytakes.Response;
-import com.yangruihan.mytakes.misc.Concat;
-import com.yangruihan.mytakes.misc.Condition;
-import com.yangruihan.mytakes.misc.Select;
 
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -96,17 +93,13 @@ public final class RsWithStatus extends RsWrap {
 								status)
 					);
 		}
-		return new Concat<String>(
-					Collections.singletonList(String.format("HTTP/1.1 %d %s", status, reason)),
-					new Select<String>(
-								origin.head(),
-								new Condition<String>() {
-									
-									public boolean fits(final String item) {
-										return !item.startsWith("HTTP/");
-									}
-								}
-							)
+		return Head.of(origin.head()).status(
+					new StringBuilder(16 + reason.length())
+						.append("HTTP/1.1 ")
+						.append(status)
+						.append(' ')
+						.append(reason)
+						.toString()
 				);
 	}
 	
@@ -126,6 +119,17 @@ public final class RsWithStatus extends RsWrap {
 		return reason;
 	}
 	
+	/**
+	 * All known statuses and their reasons.
+	 * 
+	 * 所有已知的状态值和他们的原因
+	 * 
+	 * @return map 状态值到原因的映射
+	 */
+	static Map<Integer, String> reasons() {
+		return RsWithStatus.REASONS;
+	}
+	
 	/**
 	 * Make all reasons.
 	 * 
@@ -161,6 +165,7 @@ public final class RsWithStatus extends RsWrap {
         map.put(HttpURLConnection.HTTP_INTERNAL_ERROR, "Internal Error");
         map.put(HttpURLConnection.HTTP_BAD_GATEWAY, "Bad Gateway");
         map.put(HttpURLConnection.HTTP_NOT_IMPLEMENTED, "Not Implemented");
+        map.put(HttpURLConnection.HTTP_UNAVAILABLE, "Service Unavailable");
         return map;
 	}
 }
@@ -1,5 +1,7 @@
 package com.yangruihan.mytakes.rs;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 
 import com.yangruihan.mytakes.Response;
@@ -104,21 +106,24 @@ public final class RsWithType extends RsWrap {
 	 * @return
 	 */
 	private static Response make(final Response res, final CharSequence type, final Opt<Charset> charset) {
-		final Response response;
+		final String value;
 		if (charset.has()) {
-			response = new RsWithHeader(
-						new RsWithoutHeader(res, RsWithType.HEADER),
-						RsWithType.HEADER,
-						String.format("%s; %s=%s", type, RsWithType.CHARSET, charset.get().name())
-					);
+			value = String.format("%s; %s=%s", type, RsWithType.CHARSET, charset.get().name());
 		} else {
-			response = new RsWithHeader(
-						new RsWithoutHeader(res, RsWithType.HEADER),
-						RsWithType.HEADER,
-						type
-					);
+			value = type.toString();
 		}
-		return response;
+		return new Response() {
+			
+			@Override
+			public Iterable<String> head() throws IOException {
+				return Head.of(res.head()).set(RsWithType.HEADER, value);
+			}
+			
+			@Override
+			public InputStream body() throws IOException {
+				return res.body();
+			}
+		};
 	}
 	
 	/**
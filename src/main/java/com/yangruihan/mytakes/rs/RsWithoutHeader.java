@@ -2,11 +2,8 @@ package com.yangruihan.mytakes.rs;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Locale;
 
 import com.yangruihan.mytakes.Response;
-import com.yangruihan.mytakes.misc.Condition;
-import com.yangruihan.mytakes.misc.Select;
 
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -38,15 +35,7 @@ public final class RsWithoutHeader extends RsWrap {
 				
 				@Override
 				public Iterable<String> head() throws IOException {
-					final String prefix = String.format("%s:", name.toString().toLowerCase(Locale.ENGLISH));
-					return new Select<String>(
-								res.head(),
-								new Condition<String>() {
-									public boolean fits(final String header) {
-										return !header.toLowerCase(Locale.ENGLISH).startsWith(prefix);
-									};
-								}
-							);
+					return Head.of(res.head()).without(name.toString());
 				}
 				
 				@Override
@@ -0,0 +1,157 @@
+package com.yangruihan.mytakes.rs;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct byte buffers in a few size classes.
+ *
+ * 按几个大小类别划分的直接字节缓冲池
+ *
+ * <p>Buffers of a class are cut from direct slabs of one megabyte, so
+ * small buffers don't cost one native allocation each. Released buffers
+ * go back to the free list of their class, up to a limit of pooled
+ * bytes per class; beyond it they are left to GC.
+ *
+ * <p>同一类别的缓冲从一兆字节的直接内存块中切出，所以小缓冲不需要各自进行一次本地分配。
+ * 释放的缓冲回到其类别的空闲列表，每个类别池化的字节数有上限，超过上限的缓冲交给 GC
+ *
+ * <p>The class is thread-safe.
+ *
+ * <p>这个类是线程安全的
+ *
+ * @author Yrh
+ *
+ */
+final class Slabs {
+
+	/**
+	 * Size of a slab.
+	 *
+	 * 内存块的大小
+	 */
+	private static final int SLAB = 1 << 20;
+
+	/**
+	 * Buffer sizes of the classes, ascending.
+	 *
+	 * 各类别的缓冲大小，升序排列
+	 */
+	private static final int[] SIZES = {4 << 10, 64 << 10, Slabs.SLAB};
+
+	/**
+	 * Shared pool.
+	 *
+	 * 共享的缓冲池
+	 */
+	static final Slabs SHARED = new Slabs(32 << 20);
+
+	/**
+	 * Free buffers, by class.
+	 *
+	 * 按类别划分的空闲缓冲
+	 */
+	private final transient Queue<ByteBuffer>[] free;
+
+	/**
+	 * Number of free buffers, by class.
+	 *
+	 * 按类别划分的空闲缓冲数量
+	 */
+	private final transient AtomicInteger[] counts;
+
+	/**
+	 * Most bytes kept free per class.
+	 *
+	 * 每个类别保持空闲的最大字节数
+	 */
+	private final transient int limit;
+
+	/**
+	 * Ctor.
+	 * @param max 每个类别保持空闲的最大字节数
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	Slabs(final int max) {
+		this.limit = max;
+		this.free = new Queue[Slabs.SIZES.length];
+		this.counts = new AtomicInteger[Slabs.SIZES.length];
+		for (int idx = 0; idx < Slabs.SIZES.length; ++idx) {
+			this.free[idx] = new ConcurrentLinkedQueue<>();
+			this.counts[idx] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Number of size classes.
+	 *
+	 * 大小类别的数量
+	 *
+	 * @return count 数量
+	 */
+	static int classes() {
+		return Slabs.SIZES.length;
+	}
+
+	/**
+	 * Take an empty buffer of the class.
+	 *
+	 * 取得一个这个类别的空缓冲
+	 *
+	 * @param cls 类别
+	 * @return buffer 缓冲
+	 */
+	ByteBuffer acquire(final int cls) {
+		ByteBuffer buf = this.free[cls].poll();
+		if (buf == null) {
+			final ByteBuffer slab = ByteBuffer.allocateDirect(Slabs.SLAB);
+			final int size = Slabs.SIZES[cls];
+			for (int pos = 0; pos < Slabs.SLAB; pos += size) {
+				slab.limit(pos + size).position(pos);
+				final ByteBuffer slice = slab.slice();
+				if (buf == null) {
+					buf = slice;
+				} else {
+					this.release(slice);
+				}
+			}
+		} else {
+			this.counts[cls].decrementAndGet();
+		}
+		buf.clear();
+		return buf;
+	}
+
+	/**
+	 * Give a buffer back to its class.
+	 *
+	 * 把一个缓冲还给它的类别
+	 *
+	 * @param buf 由这个池分配的缓冲
+	 */
+	void release(final ByteBuffer buf) {
+		final int cls = Slabs.index(buf.capacity());
+		if ((this.counts[cls].get() + 1L) * Slabs.SIZES[cls] <= this.limit) {
+			this.counts[cls].incrementAndGet();
+			this.free[cls].offer(buf);
+		}
+	}
+
+	/**
+	 * Class of buffers of this capacity.
+	 *
+	 * 这个容量的缓冲所属的类别
+	 *
+	 * @param capacity 容量
+	 * @return class 类别
+	 */
+	private static int index(final int capacity) {
+		int cls = 0;
+		while (Slabs.SIZES[cls] != capacity) {
+			++cls;
+		}
+		return cls;
+	}
+}
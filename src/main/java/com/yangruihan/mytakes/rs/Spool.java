@@ -0,0 +1,182 @@
+package com.yangruihan.mytakes.rs;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directory of temporary files holding bodies, deleted when their
+ * owners are closed or become unreachable.
+ *
+ * 存放身体的临时文件的目录，文件在其所有者被关闭或变得不可达时删除
+ *
+ * <p>Every file is tracked by a phantom reference to its owner. A file
+ * is deleted as soon as the owner releases it, or by a daemon thread
+ * once the owner has been collected, without the extra GC cycle and
+ * the heap pressure of finalizers.
+ *
+ * <p>每个文件都由指向其所有者的虚引用跟踪。文件在所有者释放它时立即被删除，
+ * 或者在所有者被回收之后由一个守护线程删除，没有终结器带来的额外 GC 周期和堆压力
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+final class Spool {
+
+	/**
+	 * Default spool, in a sub-directory of {@code java.io.tmpdir}.
+	 *
+	 * 默认的缓存目录，位于{@code java.io.tmpdir}的一个子目录中
+	 */
+	static final Spool DEFAULT = new Spool(
+			Paths.get(System.getProperty("java.io.tmpdir"), "mytakes-spool")
+		);
+
+	/**
+	 * Owners collected by GC, whose files are to be deleted.
+	 *
+	 * 已被 GC 回收、文件需要删除的所有者
+	 */
+	private static final ReferenceQueue<Object> COLLECTED = Spool.reaper();
+
+	/**
+	 * Files not deleted yet, kept reachable until they are.
+	 *
+	 * 尚未删除的文件，在删除之前保持可达
+	 */
+	private static final Set<Spool.File> LIVE =
+			Collections.newSetFromMap(new ConcurrentHashMap<Spool.File, Boolean>());
+
+	/**
+	 * Directory.
+	 *
+	 * 目录
+	 */
+	private final transient Path dir;
+
+	/**
+	 * Ctor.
+	 * @param path 目录
+	 */
+	Spool(final Path path) {
+		this.dir = path;
+	}
+
+	/**
+	 * Create a new empty file for the owner.
+	 *
+	 * 为所有者创建一个新的空文件
+	 *
+	 * @param owner 所有者
+	 * @return file 文件
+	 * @throws IOException
+	 */
+	Spool.File create(final Object owner) throws IOException {
+		Files.createDirectories(this.dir);
+		final Spool.File file = new Spool.File(
+				owner, Files.createTempFile(this.dir, "body-", ".tmp")
+			);
+		Spool.LIVE.add(file);
+		return file;
+	}
+
+	/**
+	 * Start the daemon deleting files of collected owners.
+	 *
+	 * 启动删除已回收所有者的文件的守护线程
+	 *
+	 * @return queue 引用队列
+	 */
+	private static ReferenceQueue<Object> reaper() {
+		final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+		final Thread thread = new Thread(
+			new Runnable() {
+
+				@Override
+				public void run() {
+					while (true) {
+						try {
+							((Spool.File) queue.remove()).delete();
+						} catch (final InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							break;
+						}
+					}
+				}
+			},
+			Spool.class.getSimpleName()
+		);
+		thread.setDaemon(true);
+		thread.start();
+		return queue;
+	}
+
+	/**
+	 * File in the spool, tracking its owner.
+	 *
+	 * 缓存目录中的文件，跟踪它的所有者
+	 *
+	 * <p>The class is thread-safe.
+	 *
+	 * <p>这个类是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	static final class File extends PhantomReference<Object> {
+
+		/**
+		 * Path of the file.
+		 *
+		 * 文件的路径
+		 */
+		private final transient Path path;
+
+		/**
+		 * Ctor.
+		 * @param owner 所有者
+		 * @param file 文件的路径
+		 */
+		File(final Object owner, final Path file) {
+			super(owner, Spool.COLLECTED);
+			this.path = file;
+		}
+
+		/**
+		 * Path of the file.
+		 *
+		 * 文件的路径
+		 *
+		 * @return path 路径
+		 */
+		Path path() {
+			return this.path;
+		}
+
+		/**
+		 * Delete the file, quietly, once.
+		 *
+		 * 安静地删除文件，只删除一次
+		 */
+		void delete() {
+			if (Spool.LIVE.remove(this)) {
+				this.clear();
+				try {
+					Files.deleteIfExists(this.path);
+				} catch (final IOException ex) {
+					assert ex != null;
+				}
+			}
+		}
+	}
+}
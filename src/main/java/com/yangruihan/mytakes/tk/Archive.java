@@ -0,0 +1,1015 @@
+package com.yangruihan.mytakes.tk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.yangruihan.mytakes.misc.Daemons;
+
+/**
+ * Map of byte arrays by string keys, kept in memory-mapped files of a
+ * directory, so that it outlives the process.
+ *
+ * 以字符串为键的字节数组映射，保存在一个目录的内存映射文件中，所以它比进程活得更久
+ *
+ * <p>Values are appended, with their keys and expiry times, to segment
+ * files of a fixed size, {@code segment-00000000.dat} and on; the newest
+ * one is active, the others are sealed. An open-addressing hash table in
+ * {@code index.dat} points at the latest record of every key. Records are
+ * written before the slots that point at them and their lengths are
+ * written last, so a process that dies in the middle of a write loses
+ * that write only. When the active segment is full, a new one is made,
+ * and a background thread forces the sealed one to disk, drops expired
+ * records from the index, and compacts sealed segments less than half of
+ * which is still live: their live records are copied to the active
+ * segment and the files are deleted. If the segments take more bytes than
+ * the budget after that, the oldest ones are deleted with their records.
+ * That thread takes the lock of the archive for a batch of slots at a
+ * time, so lookups and writes go on in between.
+ *
+ * <p>值连同它们的键和过期时间被追加到固定大小的段文件{@code segment-00000000.dat}等中；
+ * 最新的一个是活动段，其他的是已封存的段。{@code index.dat}中的一个开放寻址哈希表指向每个键的最新记录。
+ * 记录在指向它们的槽位之前写入，而记录的长度最后写入，所以在写入过程中死掉的进程只丢失这一次写入。
+ * 活动段写满时生成一个新的段，由一个后台线程把已封存的段强制写到磁盘，从索引中丢弃已过期的记录，
+ * 并压缩仍然有效的部分不到一半的已封存段：它们的有效记录被复制到活动段，文件被删除。
+ * 如果之后段占用的字节数仍然超过预算，最旧的段连同它们的记录被删除。
+ * 这个线程每次只为一批槽位持有存档的锁，所以查找和写入可以在其间继续进行
+ *
+ * <p>Opening an existing directory maps the index as it is, so reloading
+ * costs nothing but finding the end of the active segment; only if the
+ * index is missing or damaged is it rebuilt by reading all segments.
+ *
+ * <p>打开已有的目录时原样映射索引，所以重新加载只需要找到活动段的末尾；
+ * 只有当索引缺失或损坏时，才通过读取所有段来重建它
+ *
+ * <p>An archive opened read-only never writes, so several processes can
+ * read the directory another one writes, and they see records written
+ * later. When the writer replaces the index, as it grows, it marks the old
+ * one as retired, and readers map the new one on their next lookup. Only a
+ * reader that found no usable index when it was opened, and rebuilt one in
+ * memory, sees no records written after that. Writes are not forced to
+ * disk until the archive is closed: they survive the end of the process,
+ * not the end of the operating system.
+ *
+ * <p>以只读方式打开的存档从不写入，所以多个进程可以读取另一个进程写入的目录，并且能看到之后写入的记录。
+ * 写入者在索引增长而替换它时，把旧的索引标记为已退役，读取者在下一次查找时映射新的索引。
+ * 只有打开时没有找到可用的索引、在内存中重建了索引的读取者，看不到之后写入的记录。
+ * 写入直到存档关闭时才强制写到磁盘：它们在进程结束后仍然存在，但在操作系统结束后不一定
+ *
+ * <p>The class is thread-safe within one process, with only one writing
+ * process per directory.
+ *
+ * <p>这个类在一个进程内是线程安全的，每个目录只能有一个写入的进程
+ *
+ * @author Yrh
+ *
+ */
+final class Archive implements Closeable {
+
+	/**
+	 * First int of the index.
+	 *
+	 * 索引的第一个 int
+	 */
+	private static final int MAGIC = 0x746b6172;
+
+	/**
+	 * Bytes of the index header: magic, capacity, number of used slots
+	 * and the retired mark.
+	 *
+	 * 索引头的字节数：魔数、容量、已用槽位的数量以及退役标记
+	 */
+	private static final int HEADER = 16;
+
+	/**
+	 * Position of the retired mark in the index header, not zero once
+	 * another index has replaced this one.
+	 *
+	 * 退役标记在索引头中的位置，一旦另一个索引替换了这个索引就不为零
+	 */
+	private static final int RETIRED = 12;
+
+	/**
+	 * Bytes of an index slot: hash, segment, offset and length.
+	 *
+	 * 索引槽位的字节数：哈希值、段、偏移和长度
+	 */
+	private static final int SLOT = 16;
+
+	/**
+	 * Bytes of a record header: length, expiry time and key length.
+	 *
+	 * 记录头的字节数：长度、过期时间和键的长度
+	 */
+	private static final int RECORD = 16;
+
+	/**
+	 * Smallest number of index slots.
+	 *
+	 * 索引槽位的最小数量
+	 */
+	private static final int SLOTS = 64;
+
+	/**
+	 * Most slots the background thread goes over while it holds the lock.
+	 *
+	 * 后台线程持有锁期间最多遍历的槽位数
+	 */
+	private static final int BATCH = 4096;
+
+	/**
+	 * Most bytes the background thread copies while it holds the lock.
+	 *
+	 * 后台线程持有锁期间最多复制的字节数
+	 */
+	private static final int MOVE = 1 << 20;
+
+	/**
+	 * Directory.
+	 *
+	 * 目录
+	 */
+	private final transient Path dir;
+
+	/**
+	 * Bytes of a new segment.
+	 *
+	 * 新段的字节数
+	 */
+	private final transient int size;
+
+	/**
+	 * Most bytes all segments may take.
+	 *
+	 * 所有段最多可以占用的字节数
+	 */
+	private final transient long budget;
+
+	/**
+	 * Is it writable?
+	 *
+	 * 是否可写
+	 */
+	private final transient boolean writable;
+
+	/**
+	 * Mapped segments, by number.
+	 *
+	 * 映射的段，按编号索引
+	 */
+	private final transient TreeMap<Integer, ByteBuffer> segments;
+
+	/**
+	 * Bytes of live records, by segment number.
+	 *
+	 * 有效记录的字节数，按段编号索引
+	 */
+	private final transient Map<Integer, Long> live;
+
+	/**
+	 * Executor service tidying up after a segment is sealed.
+	 *
+	 * 在段被封存之后进行整理的执行器服务
+	 */
+	private final transient ExecutorService service;
+
+	/**
+	 * Index.
+	 *
+	 * 索引
+	 */
+	private transient ByteBuffer index;
+
+	/**
+	 * Where the next record goes in the active segment.
+	 *
+	 * 下一条记录在活动段中的位置
+	 */
+	private transient int tail;
+
+	/**
+	 * Ctor.
+	 * @param path 目录
+	 * @param bytes 新段的字节数
+	 * @param total 所有段最多可以占用的字节数
+	 * @param readonly 是否只读
+	 * @throws IOException
+	 */
+	Archive(final Path path, final int bytes, final long total, final boolean readonly)
+			throws IOException {
+		this.dir = path;
+		this.size = bytes;
+		this.budget = total;
+		this.writable = !readonly;
+		this.segments = new TreeMap<>();
+		this.live = new HashMap<>(0);
+		this.service = new ThreadPoolExecutor(
+					1, 1, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new Daemons(Archive.class)
+				);
+		if (this.writable) {
+			Files.createDirectories(path);
+		}
+		if (Files.isDirectory(path)) {
+			try (final DirectoryStream<Path> files = Files.newDirectoryStream(path, "segment-*.dat")) {
+				for (final Path file : files) {
+					final String name = file.getFileName().toString();
+					this.segments.put(
+							Integer.parseInt(name.substring(8, name.length() - 4)),
+							this.map(file, -1L)
+						);
+				}
+			}
+		}
+		if (this.writable && this.segments.isEmpty()) {
+			this.segments.put(0, this.map(this.segment(0), bytes));
+		}
+		final Path file = path.resolve("index.dat");
+		if (Files.exists(file)) {
+			this.index = this.map(file, -1L);
+		}
+		if (Archive.valid(this.index)) {
+			for (int slot = 0; slot < this.capacity(); ++slot) {
+				if (this.index.getInt(Archive.slot(slot)) != 0) {
+					this.count(
+							this.index.getInt(Archive.slot(slot) + 4),
+							this.index.getInt(Archive.slot(slot) + 12)
+						);
+				}
+			}
+			if (this.writable) {
+				this.tail = this.end(this.active());
+			}
+		} else {
+			this.recover(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Find the value.
+	 *
+	 * 查找值
+	 *
+	 * @param key 键
+	 * @param now 当前时间，以纪元毫秒计
+	 * @return value 值，没有或者已过期时为{@code null}
+	 */
+	synchronized byte[] get(final String key, final long now) {
+		if (this.index.getInt(Archive.RETIRED) != 0) {
+			this.reload();
+		}
+		final byte[] name = key.getBytes(StandardCharsets.UTF_8);
+		final int slot = this.find(Archive.hash(key), name);
+		byte[] value = null;
+		if (slot >= 0) {
+			final int pos = Archive.slot(slot);
+			final ByteBuffer data = this.buffer(this.index.getInt(pos + 4)).duplicate();
+			final int offset = this.index.getInt(pos + 8);
+			if (data.getLong(offset + 4) > now) {
+				value = new byte[this.index.getInt(pos + 12) - Archive.RECORD - name.length];
+				data.position(offset + Archive.RECORD + name.length);
+				data.get(value);
+			} else if (this.writable) {
+				this.drop(slot);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Put the value, replacing the one with the same key, if any; values
+	 * bigger than a segment and writes to a read-only archive are ignored.
+	 *
+	 * 放入值，替换键相同的值（如果有的话）；比一个段还大的值以及对只读存档的写入被忽略
+	 *
+	 * @param key 键
+	 * @param value 值
+	 * @param expires 过期时间，以纪元毫秒计
+	 * @throws IOException
+	 */
+	synchronized void put(final String key, final byte[] value, final long expires)
+			throws IOException {
+		final byte[] name = key.getBytes(StandardCharsets.UTF_8);
+		final int length = Archive.RECORD + name.length + value.length;
+		if (this.writable && length <= this.size) {
+			final ByteBuffer record = ByteBuffer.allocate(length);
+			record.putInt(length).putLong(expires).putInt(name.length).put(name).put(value);
+			this.place(Archive.hash(key), name, record.array());
+		}
+	}
+
+	/**
+	 * Wait for the background thread to finish tidying up, and force the
+	 * active segment and the index to disk.
+	 *
+	 * 等待后台线程完成整理，并把活动段和索引强制写到磁盘
+	 */
+	@Override
+	public void close() {
+		this.service.shutdown();
+		try {
+			this.service.awaitTermination(1L, TimeUnit.MINUTES);
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			if (this.writable) {
+				((MappedByteBuffer) this.buffer(this.active())).force();
+				((MappedByteBuffer) this.index).force();
+			}
+		}
+	}
+
+	/**
+	 * Append the record to the active segment, making a new one if it is
+	 * full, and point the slot of the key at it.
+	 *
+	 * 把记录追加到活动段，如果它已满则生成一个新的段，并把键的槽位指向它
+	 *
+	 * @param hash 键的哈希值
+	 * @param name 键的字节
+	 * @param record 记录
+	 * @throws IOException
+	 */
+	private void place(final int hash, final byte[] name, final byte[] record)
+			throws IOException {
+		if (this.tail + record.length > this.buffer(this.active()).capacity()) {
+			this.roll();
+		}
+		final int number = this.active();
+		final ByteBuffer data = this.buffer(number).duplicate();
+		data.position(this.tail + 4);
+		data.put(record, 4, record.length - 4);
+		data.putInt(this.tail, record.length);
+		this.link(hash, name, number, this.tail, record.length);
+		this.tail += record.length;
+	}
+
+	/**
+	 * Point the slot of the key at the record, taking a free slot if the
+	 * key has none, and growing the index if it gets too full.
+	 *
+	 * 把键的槽位指向记录，如果键没有槽位则占用一个空闲槽位，并在索引太满时扩大它
+	 *
+	 * @param hash 键的哈希值
+	 * @param name 键的字节
+	 * @param number 段编号
+	 * @param offset 偏移
+	 * @param length 长度
+	 * @throws IOException
+	 */
+	private void link(final int hash, final byte[] name, final int number,
+			final int offset, final int length) throws IOException {
+		int slot = this.find(hash, name);
+		if (slot >= 0) {
+			this.count(
+					this.index.getInt(Archive.slot(slot) + 4),
+					-this.index.getInt(Archive.slot(slot) + 12)
+				);
+		} else {
+			if ((this.index.getInt(8) + 1) * 2 > this.capacity()) {
+				this.rehash();
+			}
+			slot = this.free(hash);
+		}
+		final int pos = Archive.slot(slot);
+		this.index.putInt(pos + 4, number);
+		this.index.putInt(pos + 8, offset);
+		this.index.putInt(pos + 12, length);
+		this.index.putInt(pos, hash);
+		this.count(number, length);
+	}
+
+	/**
+	 * Slot of the live record of the key.
+	 *
+	 * 键的有效记录的槽位
+	 *
+	 * @param hash 键的哈希值
+	 * @param name 键的字节
+	 * @return slot 槽位，没有时为 -1
+	 */
+	private int find(final int hash, final byte[] name) {
+		final int mask = this.capacity() - 1;
+		int found = -1;
+		int slot = hash & mask;
+		while (found < 0 && this.index.getInt(Archive.slot(slot)) != 0) {
+			final int pos = Archive.slot(slot);
+			if (this.index.getInt(pos) == hash && this.index.getInt(pos + 4) >= 0
+					&& this.matches(pos, name)) {
+				found = slot;
+			}
+			slot = slot + 1 & mask;
+		}
+		return found;
+	}
+
+	/**
+	 * Take a slot for the key: the first dropped or empty one on its way.
+	 *
+	 * 为键占用一个槽位：它路径上的第一个已丢弃或空的槽位
+	 *
+	 * @param hash 键的哈希值
+	 * @return slot 槽位
+	 */
+	private int free(final int hash) {
+		final int mask = this.capacity() - 1;
+		int slot = hash & mask;
+		while (this.index.getInt(Archive.slot(slot)) != 0
+				&& this.index.getInt(Archive.slot(slot) + 4) >= 0) {
+			slot = slot + 1 & mask;
+		}
+		if (this.index.getInt(Archive.slot(slot)) == 0) {
+			this.index.putInt(8, this.index.getInt(8) + 1);
+		}
+		return slot;
+	}
+
+	/**
+	 * Is the record the slot points at the record of this key?
+	 *
+	 * 槽位指向的记录是否是这个键的记录
+	 *
+	 * @param pos 槽位的位置
+	 * @param name 键的字节
+	 * @return TRUE if it is
+	 */
+	private boolean matches(final int pos, final byte[] name) {
+		final ByteBuffer data = this.buffer(this.index.getInt(pos + 4));
+		final int offset = this.index.getInt(pos + 8);
+		final int length = this.index.getInt(pos + 12);
+		boolean matches = data != null && offset >= 0
+				&& length >= Archive.RECORD + name.length
+				&& offset <= data.capacity() - length
+				&& data.getInt(offset) == length
+				&& data.getInt(offset + 12) == name.length;
+		for (int idx = 0; matches && idx < name.length; ++idx) {
+			matches = data.get(offset + Archive.RECORD + idx) == name[idx];
+		}
+		return matches;
+	}
+
+	/**
+	 * Drop the record the slot points at, keeping the slot on the way of
+	 * other keys.
+	 *
+	 * 丢弃槽位指向的记录，保留槽位以免挡住其他键的路径
+	 *
+	 * @param slot 槽位
+	 */
+	private void drop(final int slot) {
+		final int pos = Archive.slot(slot);
+		this.count(this.index.getInt(pos + 4), -this.index.getInt(pos + 12));
+		this.index.putInt(pos + 4, -1);
+	}
+
+	/**
+	 * Seal the active segment, make a new one, and leave the rest to the
+	 * background thread; if it is stopped, the sealed segment is only
+	 * forced to disk.
+	 *
+	 * 封存活动段，生成一个新的段，其余的交给后台线程；如果它已停止，已封存的段只被强制写到磁盘
+	 *
+	 * @throws IOException
+	 */
+	private void roll() throws IOException {
+		final int number = this.active() + 1;
+		final MappedByteBuffer sealed = (MappedByteBuffer) this.buffer(this.active());
+		this.segments.put(number, this.map(this.segment(number), this.size));
+		this.tail = 0;
+		try {
+			this.service.execute(
+				new Runnable() {
+
+					@Override
+					public void run() {
+						sealed.force();
+						Archive.this.tidy();
+					}
+				}
+			);
+		} catch (final RejectedExecutionException ex) {
+			sealed.force();
+		}
+	}
+
+	/**
+	 * Drop expired records from the index, so that their bytes no longer
+	 * count as live, compact sparse segments, and evict the oldest ones
+	 * if needed; on the background thread.
+	 *
+	 * 从索引中丢弃已过期的记录，这样它们的字节不再算作有效的，压缩稀疏的段，并在需要时驱逐最旧的段；
+	 * 在后台线程上执行
+	 */
+	private void tidy() {
+		final long now = System.currentTimeMillis();
+		try {
+			this.sweep(-1, now);
+			this.compact(now);
+			this.evict();
+		} catch (final IOException ex) {
+			assert ex != null;
+		}
+	}
+
+	/**
+	 * Copy the live records of sealed segments less than half of which is
+	 * live to the active segment, dropping expired ones, and delete them.
+	 *
+	 * 把有效部分不到一半的已封存段的有效记录复制到活动段，丢弃已过期的记录，并删除这些段
+	 *
+	 * @param now 当前时间，以纪元毫秒计
+	 * @throws IOException
+	 */
+	private void compact(final long now) throws IOException {
+		for (final Integer number : this.sparse()) {
+			this.sweep(number, now);
+			this.delete(number);
+		}
+	}
+
+	/**
+	 * Delete the oldest sealed segments, with their records, while all
+	 * segments take more bytes than the budget.
+	 *
+	 * 当所有段占用的字节数超过预算时，删除最旧的已封存段以及它们的记录
+	 *
+	 * @throws IOException
+	 */
+	private void evict() throws IOException {
+		while (true) {
+			final int number = this.oldest();
+			if (number < 0) {
+				break;
+			}
+			this.sweep(number, Long.MAX_VALUE);
+			this.delete(number);
+		}
+	}
+
+	/**
+	 * Sealed segments less than half of which is live.
+	 *
+	 * 有效部分不到一半的已封存段
+	 *
+	 * @return numbers 段编号
+	 */
+	private synchronized List<Integer> sparse() {
+		final List<Integer> sparse = new ArrayList<>(0);
+		for (final Integer number : this.segments.headMap(this.active()).keySet()) {
+			if (this.bytes(number) * 2L < this.buffer(number).capacity()) {
+				sparse.add(number);
+			}
+		}
+		return sparse;
+	}
+
+	/**
+	 * The oldest sealed segment, if all segments take more bytes than the
+	 * budget.
+	 *
+	 * 如果所有段占用的字节数超过预算，则为最旧的已封存段
+	 *
+	 * @return number 段编号，不需要驱逐时为 -1
+	 */
+	private synchronized int oldest() {
+		long total = 0L;
+		for (final ByteBuffer data : this.segments.values()) {
+			total += data.capacity();
+		}
+		int number = -1;
+		if (total > this.budget && this.segments.size() > 1) {
+			number = this.segments.firstKey();
+		}
+		return number;
+	}
+
+	/**
+	 * Go over the index in batches, each under the lock: drop the records
+	 * of the segment expired by the time, and copy the others to the active
+	 * segment; for segment -1, go over the records of all segments and only
+	 * drop the expired ones. If the index is replaced in between, it starts
+	 * over, so no record of the segment is missed.
+	 *
+	 * 分批遍历索引，每一批都持有锁：丢弃段中到这个时间已过期的记录，并把其他记录复制到活动段；
+	 * 段为 -1 时遍历所有段的记录，只丢弃已过期的记录。如果索引在其间被替换，则从头开始，所以不会漏掉段中的记录
+	 *
+	 * @param number 段编号，所有段时为 -1
+	 * @param now 当前时间，以纪元毫秒计
+	 * @throws IOException
+	 */
+	private void sweep(final int number, final long now) throws IOException {
+		ByteBuffer table = null;
+		int slot = 0;
+		boolean more = true;
+		while (more) {
+			synchronized (this) {
+				if (table != this.index) {
+					table = this.index;
+					slot = 0;
+				}
+				final int end = Math.min(slot + Archive.BATCH, this.capacity());
+				int moved = 0;
+				while (slot < end && moved < Archive.MOVE && table == this.index) {
+					final int pos = Archive.slot(slot);
+					final int segment = this.index.getInt(pos + 4);
+					if (this.index.getInt(pos) != 0 && segment >= 0
+							&& (number < 0 || segment == number)) {
+						final ByteBuffer data = this.buffer(segment);
+						final int offset = this.index.getInt(pos + 8);
+						if (data == null || data.getLong(offset + 4) <= now) {
+							this.drop(slot);
+						} else if (number >= 0) {
+							final byte[] record = new byte[this.index.getInt(pos + 12)];
+							final ByteBuffer src = data.duplicate();
+							src.position(offset);
+							src.get(record);
+							final byte[] name = new byte[data.getInt(offset + 12)];
+							System.arraycopy(record, Archive.RECORD, name, 0, name.length);
+							this.place(this.index.getInt(pos), name, record);
+							moved += record.length;
+						}
+					}
+					++slot;
+				}
+				more = table != this.index || slot < this.capacity();
+			}
+		}
+	}
+
+	/**
+	 * Forget the sealed segment and delete its file; no slot may point at
+	 * it any more.
+	 *
+	 * 忘记已封存的段并删除它的文件；不能再有槽位指向它
+	 *
+	 * @param number 段编号
+	 */
+	private synchronized void delete(final int number) {
+		this.segments.remove(number);
+		this.live.remove(number);
+		try {
+			Files.delete(this.segment(number));
+		} catch (final IOException ex) {
+			assert ex != null;
+		}
+	}
+
+	/**
+	 * Make a new index, twice as big as the live keys need, with the live
+	 * slots of the current one.
+	 *
+	 * 生成一个新的索引，大小是有效键所需的两倍，包含当前索引的有效槽位
+	 *
+	 * @throws IOException
+	 */
+	private void rehash() throws IOException {
+		int keys = 0;
+		for (int slot = 0; slot < this.capacity(); ++slot) {
+			if (this.index.getInt(Archive.slot(slot)) != 0
+					&& this.index.getInt(Archive.slot(slot) + 4) >= 0) {
+				++keys;
+			}
+		}
+		final ByteBuffer table = this.table(
+				Math.max(Integer.highestOneBit(keys * 4 + 3), Archive.SLOTS)
+			);
+		final int mask = table.getInt(4) - 1;
+		int used = 0;
+		for (int slot = 0; slot < this.capacity(); ++slot) {
+			final int pos = Archive.slot(slot);
+			if (this.index.getInt(pos) != 0 && this.index.getInt(pos + 4) >= 0) {
+				int target = this.index.getInt(pos) & mask;
+				while (table.getInt(Archive.slot(target)) != 0) {
+					target = target + 1 & mask;
+				}
+				for (int idx = 0; idx < Archive.SLOT; idx += 4) {
+					table.putInt(Archive.slot(target) + idx, this.index.getInt(pos + idx));
+				}
+				++used;
+			}
+		}
+		table.putInt(8, used);
+		this.install(table);
+	}
+
+	/**
+	 * Rebuild the index by reading all segments, oldest first.
+	 *
+	 * 通过读取所有段重建索引，最旧的在前
+	 *
+	 * @param now 当前时间，以纪元毫秒计
+	 * @throws IOException
+	 */
+	private void recover(final long now) throws IOException {
+		this.install(this.table(Archive.SLOTS));
+		for (final Map.Entry<Integer, ByteBuffer> segment : this.segments.entrySet()) {
+			final ByteBuffer data = segment.getValue();
+			final int end = this.end(segment.getKey());
+			int offset = 0;
+			while (offset < end) {
+				final int length = data.getInt(offset);
+				if (data.getLong(offset + 4) > now) {
+					final byte[] name = new byte[data.getInt(offset + 12)];
+					final ByteBuffer src = data.duplicate();
+					src.position(offset + Archive.RECORD);
+					src.get(name);
+					this.link(
+							Archive.hash(new String(name, StandardCharsets.UTF_8)),
+							name, segment.getKey(), offset, length
+						);
+				}
+				offset += length;
+			}
+		}
+		if (this.writable) {
+			this.tail = this.end(this.active());
+		}
+	}
+
+	/**
+	 * Where the records of the segment end.
+	 *
+	 * 段的记录结束的位置
+	 *
+	 * @param number 段编号
+	 * @return offset 偏移
+	 */
+	private int end(final int number) {
+		final ByteBuffer data = this.buffer(number);
+		int offset = 0;
+		int length = 0;
+		do {
+			offset += length;
+			length = 0;
+			if (offset <= data.capacity() - Archive.RECORD) {
+				length = data.getInt(offset);
+				if (length < Archive.RECORD || length > data.capacity() - offset
+						|| data.getInt(offset + 12) > length - Archive.RECORD
+						|| data.getInt(offset + 12) < 0) {
+					length = 0;
+				}
+			}
+		} while (length > 0);
+		return offset;
+	}
+
+	/**
+	 * Make an empty index, in a temporary file if the archive is
+	 * writable, in memory otherwise.
+	 *
+	 * 生成一个空的索引，存档可写时在一个临时文件中，否则在内存中
+	 *
+	 * @param slots 槽位的数量，2 的幂
+	 * @return index 索引
+	 * @throws IOException
+	 */
+	private ByteBuffer table(final int slots) throws IOException {
+		final int bytes = Archive.HEADER + slots * Archive.SLOT;
+		final ByteBuffer table;
+		if (this.writable) {
+			final Path file = this.dir.resolve("index.tmp");
+			Files.deleteIfExists(file);
+			table = this.map(file, bytes);
+		} else {
+			table = ByteBuffer.allocate(bytes);
+		}
+		table.putInt(0, Archive.MAGIC);
+		table.putInt(4, slots);
+		return table;
+	}
+
+	/**
+	 * Make the index current, renaming its file over the old one and then
+	 * marking the old one as retired if the archive is writable.
+	 *
+	 * 使索引成为当前索引，存档可写时把它的文件重命名覆盖旧的文件，然后把旧的索引标记为已退役
+	 *
+	 * @param table 索引
+	 * @throws IOException
+	 */
+	private void install(final ByteBuffer table) throws IOException {
+		if (this.writable) {
+			((MappedByteBuffer) table).force();
+			Files.move(
+					this.dir.resolve("index.tmp"), this.dir.resolve("index.dat"),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING
+				);
+			if (this.index != null && this.index.capacity() >= Archive.HEADER) {
+				this.index.putInt(Archive.RETIRED, 1);
+			}
+		}
+		this.index = table;
+	}
+
+	/**
+	 * Map the index that has replaced the retired one, and forget the
+	 * segments deleted since; the retired one stays if the new one can't
+	 * be mapped.
+	 *
+	 * 映射替换了已退役索引的新索引，并忘记此后被删除的段；如果新索引无法映射，则保留已退役的索引
+	 */
+	private void reload() {
+		try {
+			final ByteBuffer table = this.map(this.dir.resolve("index.dat"), -1L);
+			if (Archive.valid(table)) {
+				this.index = table;
+				final Iterator<Integer> numbers = this.segments.keySet().iterator();
+				while (numbers.hasNext()) {
+					if (!Files.exists(this.segment(numbers.next()))) {
+						numbers.remove();
+					}
+				}
+			}
+		} catch (final IOException ex) {
+			assert ex != null;
+		}
+	}
+
+	/**
+	 * Map the file, read-write with the given size if the archive is
+	 * writable, read-only otherwise.
+	 *
+	 * 映射文件，存档可写时以给定大小读写映射，否则只读映射
+	 *
+	 * @param file 文件
+	 * @param bytes 字节数，为 -1 时是文件当前的大小
+	 * @return buffer 缓冲区
+	 * @throws IOException
+	 */
+	private ByteBuffer map(final Path file, final long bytes) throws IOException {
+		final FileChannel chnl;
+		final FileChannel.MapMode mode;
+		if (this.writable) {
+			chnl = FileChannel.open(
+					file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE
+				);
+			mode = FileChannel.MapMode.READ_WRITE;
+		} else {
+			chnl = FileChannel.open(file, StandardOpenOption.READ);
+			mode = FileChannel.MapMode.READ_ONLY;
+		}
+		try {
+			long length = bytes;
+			if (length < 0L) {
+				length = chnl.size();
+			}
+			return chnl.map(mode, 0L, length);
+		} finally {
+			chnl.close();
+		}
+	}
+
+	/**
+	 * Mapped segment; a read-only archive maps segments made after it was
+	 * opened when it first needs them.
+	 *
+	 * 映射的段；只读存档在第一次需要时映射打开之后生成的段
+	 *
+	 * @param number 段编号
+	 * @return buffer 缓冲区，没有时为{@code null}
+	 */
+	private ByteBuffer buffer(final int number) {
+		ByteBuffer data = this.segments.get(number);
+		if (data == null && !this.writable && number >= 0
+				&& Files.exists(this.segment(number))) {
+			try {
+				data = this.map(this.segment(number), -1L);
+				this.segments.put(number, data);
+			} catch (final IOException ex) {
+				assert ex != null;
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Number of the active segment.
+	 *
+	 * 活动段的编号
+	 *
+	 * @return number 段编号
+	 */
+	private int active() {
+		return this.segments.lastKey();
+	}
+
+	/**
+	 * Number of index slots.
+	 *
+	 * 索引槽位的数量
+	 *
+	 * @return slots 槽位的数量
+	 */
+	private int capacity() {
+		return this.index.getInt(4);
+	}
+
+	/**
+	 * Bytes of live records in the segment.
+	 *
+	 * 段中有效记录的字节数
+	 *
+	 * @param number 段编号
+	 * @return bytes 字节数
+	 */
+	private long bytes(final int number) {
+		final Long bytes = this.live.get(number);
+		long count = 0L;
+		if (bytes != null) {
+			count = bytes;
+		}
+		return count;
+	}
+
+	/**
+	 * Add to the bytes of live records in the segment.
+	 *
+	 * 增加段中有效记录的字节数
+	 *
+	 * @param number 段编号
+	 * @param delta 增加的字节数
+	 */
+	private void count(final int number, final long delta) {
+		if (number >= 0) {
+			this.live.put(number, this.bytes(number) + delta);
+		}
+	}
+
+	/**
+	 * File of the segment.
+	 *
+	 * 段的文件
+	 *
+	 * @param number 段编号
+	 * @return file 文件
+	 */
+	private Path segment(final int number) {
+		return this.dir.resolve(String.format("segment-%08d.dat", number));
+	}
+
+	/**
+	 * Is it a whole index?
+	 *
+	 * 它是否是一个完整的索引
+	 *
+	 * @param table 索引，可以为{@code null}
+	 * @return TRUE if it is
+	 */
+	private static boolean valid(final ByteBuffer table) {
+		return table != null && table.capacity() >= Archive.HEADER
+				&& table.getInt(0) == Archive.MAGIC
+				&& Integer.bitCount(table.getInt(4)) == 1
+				&& table.capacity() == Archive.HEADER + table.getInt(4) * Archive.SLOT;
+	}
+
+	/**
+	 * Position of the slot in the index.
+	 *
+	 * 槽位在索引中的位置
+	 *
+	 * @param slot 槽位
+	 * @return position 位置
+	 */
+	private static int slot(final int slot) {
+		return Archive.HEADER + slot * Archive.SLOT;
+	}
+
+	/**
+	 * Hash of the key, the same in every process, never zero.
+	 *
+	 * 键的哈希值，在每个进程中都相同，从不为零
+	 *
+	 * @param key 键
+	 * @return hash 哈希值
+	 */
+	private static int hash(final String key) {
+		int hash = key.hashCode() * 0x9e3779b9;
+		hash ^= hash >>> 16;
+		if (hash == 0) {
+			hash = 1;
+		}
+		return hash;
+	}
+}
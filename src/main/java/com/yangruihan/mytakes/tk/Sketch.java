@@ -0,0 +1,145 @@
+package com.yangruihan.mytakes.tk;
+
+/**
+ * Count-min sketch estimating how often keys were seen recently.
+ *
+ * 估计键最近出现频率的 Count-Min Sketch
+ *
+ * <p>Every key increments four 4-bit counters, one in each of four rows
+ * sharing a table of longs, and its frequency is the smallest of them,
+ * at most 15. Once the number of increments reaches ten times the
+ * width of the table, all counters are halved, so the frequencies
+ * follow what is popular now rather than what used to be.
+ *
+ * <p>每个键增加四个 4 位计数器，四行中每行一个，各行共享一个 long 表，键的频率是其中最小的一个，
+ * 最大为 15。当增加的次数达到表宽度的十倍时，所有计数器减半，所以频率反映的是当前流行的内容而不是过去流行的内容
+ *
+ * <p>This class is NOT thread-safe.
+ *
+ * <p>这个类不是线程安全的
+ *
+ * @author Yrh
+ *
+ */
+final class Sketch {
+
+	/**
+	 * Seeds of the rows.
+	 *
+	 * 各行的种子
+	 */
+	private static final long[] SEEDS = {
+		0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+		0x9ae16a3b2f90404fL, 0xcbf29ce484222325L,
+	};
+
+	/**
+	 * Every bit of a counter but the highest one.
+	 *
+	 * 每个计数器除最高位以外的各位
+	 */
+	private static final long HALF = 0x7777777777777777L;
+
+	/**
+	 * Counters, sixteen in a long.
+	 *
+	 * 计数器，每个 long 中十六个
+	 */
+	private final transient long[] table;
+
+	/**
+	 * Increments after which counters are halved.
+	 *
+	 * 计数器减半之前的增加次数
+	 */
+	private final transient int sample;
+
+	/**
+	 * Increments since counters were halved.
+	 *
+	 * 计数器上次减半以来的增加次数
+	 */
+	private transient int size;
+
+	/**
+	 * Ctor.
+	 * @param keys 预期的键的数量
+	 */
+	Sketch(final int keys) {
+		final int width = Integer.highestOneBit(Math.max(keys, 16) - 1) << 1;
+		this.table = new long[width];
+		this.sample = width * 10;
+	}
+
+	/**
+	 * Estimated frequency of the key.
+	 *
+	 * 键的估计频率
+	 *
+	 * @param key 键的哈希值
+	 * @return frequency 频率，从 0 到 15
+	 */
+	int frequency(final int key) {
+		int frequency = 15;
+		for (int row = 0; row < Sketch.SEEDS.length; ++row) {
+			frequency = Math.min(
+					frequency,
+					(int) (this.table[this.slot(key, row)] >>> Sketch.shift(key, row)) & 15
+				);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Count the key once more.
+	 *
+	 * 对键再计数一次
+	 *
+	 * @param key 键的哈希值
+	 */
+	void increment(final int key) {
+		boolean added = false;
+		for (int row = 0; row < Sketch.SEEDS.length; ++row) {
+			final int slot = this.slot(key, row);
+			final int shift = Sketch.shift(key, row);
+			if ((this.table[slot] >>> shift & 15L) != 15L) {
+				this.table[slot] += 1L << shift;
+				added = true;
+			}
+		}
+		if (added && ++this.size >= this.sample) {
+			for (int idx = 0; idx < this.table.length; ++idx) {
+				this.table[idx] = this.table[idx] >>> 1 & Sketch.HALF;
+			}
+			this.size /= 2;
+		}
+	}
+
+	/**
+	 * Slot of the key in the row.
+	 *
+	 * 键在这一行中的槽位
+	 *
+	 * @param key 键的哈希值
+	 * @param row 行
+	 * @return slot 槽位
+	 */
+	private int slot(final int key, final int row) {
+		long hash = (key + Sketch.SEEDS[row]) * Sketch.SEEDS[row];
+		hash += hash >>> 32;
+		return (int) hash & (this.table.length - 1);
+	}
+
+	/**
+	 * Position of the counter of the key in its slot in the row.
+	 *
+	 * 键的计数器在这一行的槽位中的位置
+	 *
+	 * @param key 键的哈希值
+	 * @param row 行
+	 * @return shift 位移
+	 */
+	private static int shift(final int key, final int row) {
+		return (key >>> (row << 3) & 15) << 2;
+	}
+}
@@ -0,0 +1,408 @@
+package com.yangruihan.mytakes.tk;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map of weighted values, bounded by their total weight, evicting with
+ * the W-TinyLFU policy.
+ *
+ * 按总权重限制大小的带权重值的映射，使用 W-TinyLFU 策略淘汰
+ *
+ * <p>New values enter a small LRU window, one percent of the budget.
+ * Values pushed out of the window are candidates for the main space,
+ * a segmented LRU of a probation and a protected segment, the latter
+ * up to eighty percent of it. When the main space is full, a candidate
+ * gets in only if a {@link Sketch} has seen its key more often recently
+ * than the key of the first value it would evict, and only then are
+ * values evicted to make room; values read again while on probation
+ * move to the protected segment. So a burst of one-off keys
+ * can't flush the values that are read all the time, while new popular
+ * keys still get in through the window.
+ *
+ * <p>新值进入一个很小的 LRU 窗口，占预算的百分之一。被挤出窗口的值是主空间的候选，
+ * 主空间是由试用段和保护段组成的分段 LRU，保护段最多占它的百分之八十。主空间满时，
+ * 只有当{@link Sketch}最近见到候选的键的次数比它将要淘汰的第一个值的键更多时，候选才能进入，
+ * 并且只有这时才淘汰值来腾出空间；
+ * 在试用段中被再次读取的值移到保护段。所以一阵只出现一次的键冲不掉一直被读取的值，
+ * 而新的热门键仍然可以通过窗口进入
+ *
+ * <p>This class is NOT thread-safe.
+ *
+ * <p>这个类不是线程安全的
+ *
+ * @author Yrh
+ *
+ * @param <V> 值的类型
+ */
+final class TinyLfu<V> {
+
+	/**
+	 * Window, in LRU order.
+	 *
+	 * 窗口，按 LRU 顺序
+	 */
+	private final transient TinyLfu.Segment<V> window;
+
+	/**
+	 * Probation segment of the main space, in LRU order.
+	 *
+	 * 主空间的试用段，按 LRU 顺序
+	 */
+	private final transient TinyLfu.Segment<V> probation;
+
+	/**
+	 * Protected segment of the main space, in LRU order.
+	 *
+	 * 主空间的保护段，按 LRU 顺序
+	 */
+	private final transient TinyLfu.Segment<V> protection;
+
+	/**
+	 * Largest weight of the main space.
+	 *
+	 * 主空间的最大权重
+	 */
+	private final transient long main;
+
+	/**
+	 * Frequencies of keys.
+	 *
+	 * 键的频率
+	 */
+	private final transient Sketch sketch;
+
+	/**
+	 * Number of values evicted so far.
+	 *
+	 * 目前为止淘汰的值的数量
+	 */
+	private transient long evicted;
+
+	/**
+	 * Ctor.
+	 * @param budget 最大总权重
+	 * @param keys 预期的键的数量
+	 */
+	TinyLfu(final long budget, final int keys) {
+		final long small = Math.max(budget / 100L, 1L);
+		this.main = budget - small;
+		this.window = new TinyLfu.Segment<>(small);
+		this.probation = new TinyLfu.Segment<>(this.main);
+		this.protection = new TinyLfu.Segment<>(this.main * 4L / 5L);
+		this.sketch = new Sketch(keys);
+	}
+
+	/**
+	 * Find the value and count the access to its key.
+	 *
+	 * 查找值，并对它的键的访问计数
+	 *
+	 * @param key 键
+	 * @return value 值，没有时为{@code null}
+	 */
+	V get(final String key) {
+		this.sketch.increment(TinyLfu.hash(key));
+		TinyLfu.Node<V> node = this.window.touch(key);
+		if (node == null) {
+			node = this.protection.touch(key);
+		}
+		if (node == null) {
+			node = this.probation.remove(key);
+			if (node != null) {
+				this.protection.add(node);
+				while (this.protection.over()) {
+					this.probation.add(this.protection.remove(this.protection.eldest().key));
+				}
+			}
+		}
+		V value = null;
+		if (node != null) {
+			value = node.value;
+		}
+		return value;
+	}
+
+	/**
+	 * Put the value, replacing the one with the same key, if any, and
+	 * evict values until the total weight is within the budget.
+	 *
+	 * 放入值，替换键相同的值（如果有的话），然后淘汰值直到总权重不超过预算
+	 *
+	 * @param key 键
+	 * @param value 值
+	 * @param weight 权重
+	 */
+	void put(final String key, final V value, final long weight) {
+		this.remove(key);
+		if (weight <= this.main) {
+			this.window.add(new TinyLfu.Node<>(key, value, weight));
+			while (this.window.over()) {
+				this.admit(this.window.remove(this.window.eldest().key));
+			}
+		}
+	}
+
+	/**
+	 * Remove the value.
+	 *
+	 * 移除值
+	 *
+	 * @param key 键
+	 */
+	void remove(final String key) {
+		if (this.window.remove(key) == null && this.probation.remove(key) == null) {
+			this.protection.remove(key);
+		}
+	}
+
+	/**
+	 * Total weight of the values.
+	 *
+	 * 值的总权重
+	 *
+	 * @return weight 权重
+	 */
+	long weight() {
+		return this.window.weight + this.probation.weight + this.protection.weight;
+	}
+
+	/**
+	 * Number of values evicted so far, including candidates that were
+	 * not let in.
+	 *
+	 * 目前为止淘汰的值的数量，包括没有被允许进入的候选
+	 *
+	 * @return count 数量
+	 */
+	long evictions() {
+		return this.evicted;
+	}
+
+	/**
+	 * Let the candidate into the main space, if there is room or it is
+	 * used more often than the first value it would evict; only then are
+	 * values evicted, as many as it needs room.
+	 *
+	 * 如果有空间，或者候选比它将要淘汰的第一个值使用得更频繁，允许它进入主空间；
+	 * 只有这时才淘汰值，淘汰到它有足够的空间为止
+	 *
+	 * @param candidate 候选
+	 */
+	private void admit(final TinyLfu.Node<V> candidate) {
+		boolean admitted = true;
+		if (this.probation.weight + this.protection.weight + candidate.weight > this.main) {
+			admitted = this.sketch.frequency(TinyLfu.hash(candidate.key))
+					> this.sketch.frequency(TinyLfu.hash(this.victims().eldest().key));
+		}
+		if (admitted) {
+			while (this.probation.weight + this.protection.weight + candidate.weight > this.main) {
+				final TinyLfu.Segment<V> segment = this.victims();
+				segment.remove(segment.eldest().key);
+				++this.evicted;
+			}
+			this.probation.add(candidate);
+		} else {
+			++this.evicted;
+		}
+	}
+
+	/**
+	 * Segment of the main space values are evicted from: probation, or
+	 * the protected one when probation is empty.
+	 *
+	 * 主空间中淘汰值的段：试用段，试用段为空时为保护段
+	 *
+	 * @return segment 段
+	 */
+	private TinyLfu.Segment<V> victims() {
+		TinyLfu.Segment<V> segment = this.probation;
+		if (segment.isEmpty()) {
+			segment = this.protection;
+		}
+		return segment;
+	}
+
+	/**
+	 * Hash of the key, spread over all bits.
+	 *
+	 * 键的哈希值，分散到所有位上
+	 *
+	 * @param key 键
+	 * @return hash 哈希值
+	 */
+	private static int hash(final String key) {
+		final int hash = key.hashCode() * 0x9e3779b9;
+		return hash ^ hash >>> 16;
+	}
+
+	/**
+	 * Value with its key and weight.
+	 *
+	 * 带有键和权重的值
+	 *
+	 * <p>The class is immutable and thread-safe.
+	 *
+	 * <p>这个类是不可变的且线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 * @param <V> 值的类型
+	 */
+	private static final class Node<V> {
+
+		/**
+		 * Key.
+		 *
+		 * 键
+		 */
+		private final transient String key;
+
+		/**
+		 * Value.
+		 *
+		 * 值
+		 */
+		private final transient V value;
+
+		/**
+		 * Weight.
+		 *
+		 * 权重
+		 */
+		private final transient long weight;
+
+		/**
+		 * Ctor.
+		 * @param name 键
+		 * @param val 值
+		 * @param wgt 权重
+		 */
+		Node(final String name, final V val, final long wgt) {
+			this.key = name;
+			this.value = val;
+			this.weight = wgt;
+		}
+	}
+
+	/**
+	 * Segment of nodes in LRU order, with their total weight.
+	 *
+	 * 按 LRU 顺序排列的节点段，以及它们的总权重
+	 *
+	 * <p>This class is NOT thread-safe.
+	 *
+	 * <p>这个类不是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 * @param <V> 值的类型
+	 */
+	private static final class Segment<V> {
+
+		/**
+		 * Nodes, least recently used first.
+		 *
+		 * 节点，最近最少使用的在前
+		 */
+		private final transient Map<String, TinyLfu.Node<V>> nodes;
+
+		/**
+		 * Largest total weight.
+		 *
+		 * 最大总权重
+		 */
+		private final transient long capacity;
+
+		/**
+		 * Total weight.
+		 *
+		 * 总权重
+		 */
+		private transient long weight;
+
+		/**
+		 * Ctor.
+		 * @param max 最大总权重
+		 */
+		Segment(final long max) {
+			this.nodes = new LinkedHashMap<>(16, 0.75f, true);
+			this.capacity = max;
+		}
+
+		/**
+		 * Find the node and make it the most recently used.
+		 *
+		 * 查找节点，并使它成为最近使用的
+		 *
+		 * @param key 键
+		 * @return node 节点，没有时为{@code null}
+		 */
+		TinyLfu.Node<V> touch(final String key) {
+			return this.nodes.get(key);
+		}
+
+		/**
+		 * Add the node as the most recently used.
+		 *
+		 * 把节点作为最近使用的加入
+		 *
+		 * @param node 节点
+		 */
+		void add(final TinyLfu.Node<V> node) {
+			this.nodes.put(node.key, node);
+			this.weight += node.weight;
+		}
+
+		/**
+		 * Remove the node.
+		 *
+		 * 移除节点
+		 *
+		 * @param key 键
+		 * @return node 节点，没有时为{@code null}
+		 */
+		TinyLfu.Node<V> remove(final String key) {
+			final TinyLfu.Node<V> node = this.nodes.remove(key);
+			if (node != null) {
+				this.weight -= node.weight;
+			}
+			return node;
+		}
+
+		/**
+		 * Least recently used node.
+		 *
+		 * 最近最少使用的节点
+		 *
+		 * @return node 节点
+		 */
+		TinyLfu.Node<V> eldest() {
+			final Iterator<TinyLfu.Node<V>> iter = this.nodes.values().iterator();
+			return iter.next();
+		}
+
+		/**
+		 * Is it empty?
+		 *
+		 * 是否为空
+		 *
+		 * @return TRUE if it is
+		 */
+		boolean isEmpty() {
+			return this.nodes.isEmpty();
+		}
+
+		/**
+		 * Is it heavier than its capacity?
+		 *
+		 * 它是否超过了容量
+		 *
+		 * @return TRUE if it is
+		 */
+		boolean over() {
+			return this.weight > this.capacity;
+		}
+	}
+}
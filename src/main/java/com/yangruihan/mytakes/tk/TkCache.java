@@ -0,0 +1,868 @@
+package com.yangruihan.mytakes.tk;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yangruihan.mytakes.HttpException;
+import com.yangruihan.mytakes.Request;
+import com.yangruihan.mytakes.Response;
+import com.yangruihan.mytakes.Take;
+import com.yangruihan.mytakes.misc.Daemons;
+import com.yangruihan.mytakes.rq.HeadView;
+import com.yangruihan.mytakes.rq.RqSocket;
+import com.yangruihan.mytakes.rs.Head;
+import com.yangruihan.mytakes.rs.RsFrozen;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Take decorator, caching rendered responses to {@code GET} requests.
+ *
+ * Take 装饰器，缓存{@code GET}请求的渲染后的响应
+ *
+ * <p>Responses are keyed by the request line, the {@code Host} header
+ * and the headers they vary on, kept as {@link RsFrozen} bytes, and
+ * evicted by the {@link TinyLfu W-TinyLFU} policy once their total size
+ * reaches the budget:
+ *
+ * <pre> new FtBasic(
+ * 	new BkBasic(new TkCache(take, 64L &lt;&lt; 20, "Accept-Encoding")), 8080
+ * ).start(Exit.NEVER);</pre>
+ *
+ * <p>响应以请求行、{@code Host}头和它们所依赖的头为键，以{@link RsFrozen}字节保存，
+ * 总大小达到预算后按{@link TinyLfu W-TinyLFU}策略淘汰
+ *
+ * <p>The cache follows {@code Cache-Control} of the response: it is fresh
+ * for {@code s-maxage} or {@code max-age} seconds, or for the default
+ * time if there is neither, less the {@code Age} it came with, and it is
+ * not stored with {@code no-store}, {@code no-cache} or {@code private}.
+ * Responses are not stored either if they set cookies, vary on headers
+ * not in the key, don't declare their {@code Content-Length}, have a body
+ * larger than a sixteenth of the budget, have a status that is not
+ * cacheable by default, or answer a request with {@code Authorization}
+ * and are not {@code public}. A response is rendered before the cache is
+ * locked to store it, so hits don't wait for it.
+ *
+ * <p>缓存遵循响应的{@code Cache-Control}：它在{@code s-maxage}或{@code max-age}秒内是新鲜的，
+ * 两者都没有时为默认时间，再减去它到来时的{@code Age}；带有{@code no-store}、{@code no-cache}或{@code private}时不保存。
+ * 设置 Cookie、依赖不在键中的头、没有声明{@code Content-Length}、身体超过预算的十六分之一、
+ * 状态默认不可缓存，或者回答带有{@code Authorization}的请求且不是{@code public}的响应也不保存。
+ * 响应在缓存为保存它而加锁之前被渲染，所以命中不必等待它
+ *
+ * <p>An expired response is kept for a while, as RFC 5861 suggests. For
+ * {@code stale-while-revalidate} seconds, or the default window, it is
+ * still served, while a small pool of background threads asks the
+ * original take for a new one. For {@code stale-if-error} seconds, or
+ * the default window, it is served instead of a server error of the
+ * original take, be it an {@link HttpException} or a {@code 5xx}
+ * response.
+ *
+ * <p>过期的响应按 RFC 5861 的建议再保留一段时间。在{@code stale-while-revalidate}秒或默认窗口内，
+ * 它仍然被使用，同时一个小的后台线程池向原始 Take 请求新的响应。在{@code stale-if-error}秒或默认窗口内，
+ * 它代替原始 Take 的服务器错误被使用，无论错误是{@link HttpException}还是{@code 5xx}响应
+ *
+ * <p>After {@link #close()} the background threads end once the
+ * refreshes queued are done; later stale hits are still served, but not
+ * refreshed.
+ *
+ * <p>在{@link #close()}之后，后台线程在已排队的刷新完成后结束；之后的过期命中仍然被使用，但不再刷新
+ *
+ * <p>A response served from the cache carries an {@code Age} header, the
+ * seconds it has been kept plus the age it came with, so clients and
+ * shared caches after this one don't keep it fresh longer than the
+ * original take said. The aged copy is made once per second, and shares
+ * the body bytes of the stored response, see {@link RsFrozen#with(Iterable)}.
+ *
+ * <p>从缓存中使用的响应带有{@code Age}头，即它被保存的秒数加上它到来时的年龄，
+ * 所以客户端和之后的共享缓存不会让它保持新鲜的时间超过原始 Take 所说的。带年龄的副本每秒只生成一次，
+ * 并共享保存的响应的身体字节，见{@link RsFrozen#with(Iterable)}
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(of = "origin")
+public final class TkCache implements Take, Closeable {
+
+	/**
+	 * Statuses cacheable by default, according to RFC 7231.
+	 *
+	 * 根据 RFC 7231 默认可缓存的状态
+	 */
+	private static final List<String> CACHEABLE = Arrays.asList(
+			"200", "203", "204", "300", "301", "404", "405", "410", "414", "501"
+		);
+
+	/**
+	 * Share of the budget the largest body stored may take, as a divisor.
+	 *
+	 * 保存的最大身体可以占用的预算份额，作为除数
+	 */
+	private static final long SHARE = 16L;
+
+	/**
+	 * Original take.
+	 *
+	 * 原始 Take
+	 */
+	private final transient Take origin;
+
+	/**
+	 * Most bytes the cache holds.
+	 *
+	 * 缓存保存的最大字节数
+	 */
+	private final transient long budget;
+
+	/**
+	 * How long responses without explicit freshness are fresh, in
+	 * milliseconds.
+	 *
+	 * 没有明确新鲜度的响应保持新鲜的时间，以毫秒计
+	 */
+	private final transient long ttl;
+
+	/**
+	 * How long expired responses are served while they are refreshed,
+	 * unless they say otherwise, in milliseconds.
+	 *
+	 * 过期的响应在刷新期间继续使用的时间，除非它们另有说明，以毫秒计
+	 */
+	private final transient long revalidate;
+
+	/**
+	 * How long expired responses are served instead of server errors,
+	 * unless they say otherwise, in milliseconds.
+	 *
+	 * 过期的响应代替服务器错误使用的时间，除非它们另有说明，以毫秒计
+	 */
+	private final transient long error;
+
+	/**
+	 * Names of request headers in the key, in lower case.
+	 *
+	 * 键中的请求头的名字，小写
+	 */
+	private final transient List<String> vary;
+
+	/**
+	 * Cached responses, guarded by themselves.
+	 *
+	 * 缓存的响应，由它们自己保护
+	 */
+	private final transient TinyLfu<TkCache.Entry> entries;
+
+	/**
+	 * Number of requests answered from the cache.
+	 *
+	 * 从缓存中应答的请求数量
+	 */
+	private final transient AtomicLong hit;
+
+	/**
+	 * Number of requests not found in the cache.
+	 *
+	 * 没有在缓存中找到的请求数量
+	 */
+	private final transient AtomicLong miss;
+
+	/**
+	 * Number of requests answered with expired responses.
+	 *
+	 * 以过期的响应应答的请求数量
+	 */
+	private final transient AtomicLong stale;
+
+	/**
+	 * Executor service refreshing expired responses.
+	 *
+	 * 刷新过期响应的执行服务
+	 */
+	private final transient ExecutorService service;
+
+	/**
+	 * Ctor.
+	 * @param take 原始 Take
+	 * @param bytes 缓存的最大字节数
+	 * @param headers 键中的请求头的名字
+	 */
+	public TkCache(final Take take, final long bytes, final String... headers) {
+		this(take, bytes, TimeUnit.MINUTES.toMillis(1L), Arrays.asList(headers));
+	}
+
+	/**
+	 * Ctor.
+	 * @param take 原始 Take
+	 * @param bytes 缓存的最大字节数
+	 * @param fresh 没有明确新鲜度的响应保持新鲜的时间，以毫秒计
+	 * @param headers 键中的请求头的名字
+	 */
+	public TkCache(final Take take, final long bytes, final long fresh,
+			final Iterable<String> headers) {
+		this(take, bytes, fresh, 0L, 0L, headers);
+	}
+
+	/**
+	 * Ctor.
+	 * @param take 原始 Take
+	 * @param bytes 缓存的最大字节数
+	 * @param fresh 没有明确新鲜度的响应保持新鲜的时间，以毫秒计
+	 * @param swr 过期的响应在刷新期间继续使用的默认时间，以毫秒计
+	 * @param sie 过期的响应代替服务器错误使用的默认时间，以毫秒计
+	 * @param headers 键中的请求头的名字
+	 */
+	public TkCache(final Take take, final long bytes, final long fresh,
+			final long swr, final long sie, final Iterable<String> headers) {
+		this.origin = take;
+		this.budget = bytes;
+		this.ttl = fresh;
+		this.revalidate = swr;
+		this.error = sie;
+		this.vary = new ArrayList<>(4);
+		for (final String header : headers) {
+			this.vary.add(header.toLowerCase(Locale.ENGLISH));
+		}
+		this.entries = new TinyLfu<>(bytes, (int) Math.min(bytes >> 10, 1 << 24));
+		this.hit = new AtomicLong();
+		this.miss = new AtomicLong();
+		this.stale = new AtomicLong();
+		this.service = new ThreadPoolExecutor(
+					2, 2, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(64),
+					new Daemons(TkCache.class)
+				);
+	}
+
+	@Override
+	public Response act(final Request req) throws IOException {
+		final Iterable<String> head = req.head();
+		final Response res;
+		if (head.iterator().next().startsWith("GET ")) {
+			final String key = TkCache.key(head, this.vary);
+			final long now = System.nanoTime();
+			TkCache.Entry entry;
+			synchronized (this.entries) {
+				entry = this.entries.get(key);
+				if (entry != null && now - entry.gone >= 0L) {
+					this.entries.remove(key);
+					entry = null;
+				}
+			}
+			if (entry == null) {
+				this.miss.incrementAndGet();
+				res = this.store(key, head, this.origin.act(req));
+			} else if (now - entry.expires < 0L) {
+				this.hit.incrementAndGet();
+				res = entry.response(now);
+			} else if (now - entry.revalidated < 0L) {
+				this.stale.incrementAndGet();
+				this.refresh(key, req, entry);
+				res = entry.response(now);
+			} else {
+				this.miss.incrementAndGet();
+				res = this.fallback(key, req, entry);
+			}
+		} else {
+			res = this.origin.act(req);
+		}
+		return res;
+	}
+
+	/**
+	 * Stop the background threads once the refreshes queued are done.
+	 *
+	 * 在已排队的刷新完成后停止后台线程
+	 */
+	@Override
+	public void close() {
+		this.service.shutdown();
+	}
+
+	/**
+	 * How many requests were answered from the cache.
+	 *
+	 * 有多少请求是从缓存中应答的
+	 *
+	 * @return count 数量
+	 */
+	public long hits() {
+		return this.hit.get();
+	}
+
+	/**
+	 * How many requests were not found in the cache.
+	 *
+	 * 有多少请求没有在缓存中找到
+	 *
+	 * @return count 数量
+	 */
+	public long misses() {
+		return this.miss.get();
+	}
+
+	/**
+	 * How many requests were answered with expired responses.
+	 *
+	 * 有多少请求以过期的响应应答
+	 *
+	 * @return count 数量
+	 */
+	public long stales() {
+		return this.stale.get();
+	}
+
+	/**
+	 * How many responses were evicted to stay within the budget.
+	 *
+	 * 有多少响应为了不超过预算而被淘汰
+	 *
+	 * @return count 数量
+	 */
+	public long evictions() {
+		synchronized (this.entries) {
+			return this.entries.evictions();
+		}
+	}
+
+	/**
+	 * Total size of cached responses, in bytes.
+	 *
+	 * 缓存的响应的总字节数
+	 *
+	 * @return size 字节数
+	 */
+	public long size() {
+		synchronized (this.entries) {
+			return this.entries.weight();
+		}
+	}
+
+	/**
+	 * Store the response, if it may be cached, or forget the key.
+	 *
+	 * 保存响应，如果它可以被缓存，否则忘记这个键
+	 *
+	 * @param key 键
+	 * @param head 请求头部
+	 * @param res 响应
+	 * @return response 响应，保存后为冻结的响应
+	 * @throws IOException
+	 */
+	private Response store(final String key, final Iterable<String> head,
+			final Response res) throws IOException {
+		final Iterable<String> lines = res.head();
+		final long fresh = TkCache.freshness(
+				head, lines, this.vary, this.budget / TkCache.SHARE, this.ttl
+			);
+		final List<String> directives = TkCache.directives(lines);
+		final long swr = TkCache.window(directives, "stale-while-revalidate=", this.revalidate);
+		final long sie = TkCache.window(directives, "stale-if-error=", this.error);
+		Response result = res;
+		if (fresh >= 0L && fresh + swr + sie > 0L) {
+			final RsFrozen frozen = new RsFrozen(res);
+			final int size = frozen.size();
+			final long now = System.nanoTime();
+			final TkCache.Entry entry = new TkCache.Entry(
+					frozen, now, now + fresh, now + fresh + swr, now + fresh + Math.max(swr, sie)
+				);
+			synchronized (this.entries) {
+				this.entries.put(key, entry, size);
+			}
+			result = frozen;
+		} else {
+			synchronized (this.entries) {
+				this.entries.remove(key);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Ask the original take for a new response in the background, unless
+	 * it is being asked already.
+	 *
+	 * 在后台向原始 Take 请求新的响应，除非已经在请求了
+	 *
+	 * <p>The request is copied, since the one being answered goes back to
+	 * the back once it is; a request from a socket stays one, with the
+	 * same connection, see {@link RqSocket#copy()}. Whatever the original
+	 * take throws, the refresh ends and the next stale hit tries again.
+	 *
+	 * <p>请求会被复制，因为正在应答的请求在应答之后会回到后端；来自 Socket 的请求仍然是这种请求，
+	 * 带有同一个连接，见{@link RqSocket#copy()}。无论原始 Take 抛出什么，刷新都会结束，
+	 * 下一次过期命中会再次尝试
+	 *
+	 * @param key 键
+	 * @param req 请求
+	 * @param entry 过期的缓存项
+	 * @throws IOException
+	 */
+	private void refresh(final String key, final Request req, final TkCache.Entry entry)
+			throws IOException {
+		if (entry.refreshing.compareAndSet(false, true)) {
+			boolean started = false;
+			try {
+				final Request copy = TkCache.copy(req);
+				this.service.execute(
+					new Runnable() {
+
+						@Override
+						public void run() {
+							try {
+								final Response res = TkCache.this.origin.act(copy);
+								if (TkCache.failed(res)) {
+									res.body().close();
+								} else {
+									TkCache.this.store(key, copy.head(), res);
+								}
+							} catch (final IOException | RuntimeException ex) {
+								assert ex != null;
+							} finally {
+								entry.refreshing.set(false);
+							}
+						}
+					}
+				);
+				started = true;
+			} catch (final RejectedExecutionException ex) {
+				assert ex != null;
+			} finally {
+				if (!started) {
+					entry.refreshing.set(false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copy of the request without its body, to be answered after it is;
+	 * a request from a socket stays one, with the same connection.
+	 *
+	 * 不带身体的请求的副本，在请求应答之后再应答；来自 Socket 的请求仍然是这种请求，带有同一个连接
+	 *
+	 * @param req 请求
+	 * @return request 请求
+	 * @throws IOException
+	 */
+	private static Request copy(final Request req) throws IOException {
+		final Request copy;
+		if (req instanceof RqSocket) {
+			copy = ((RqSocket) req).copy();
+		} else {
+			final List<String> lines = new ArrayList<>(16);
+			for (final String line : req.head()) {
+				lines.add(line);
+			}
+			copy = new Request() {
+
+				@Override
+				public Iterable<String> head() {
+					return lines;
+				}
+
+				@Override
+				public InputStream body() {
+					return new ByteArrayInputStream(new byte[0]);
+				}
+			};
+		}
+		return copy;
+	}
+
+	/**
+	 * Ask the original take for a new response, and answer with the
+	 * expired one if it fails with a server error; the body of the error
+	 * response is closed unread.
+	 *
+	 * 向原始 Take 请求新的响应，如果它以服务器错误失败则以过期的响应应答；错误响应的身体不经读取就被关闭
+	 *
+	 * @param key 键
+	 * @param req 请求
+	 * @param entry 过期的缓存项
+	 * @return response 响应
+	 * @throws IOException
+	 */
+	private Response fallback(final String key, final Request req,
+			final TkCache.Entry entry) throws IOException {
+		Response res;
+		try {
+			res = this.origin.act(req);
+		} catch (final HttpException ex) {
+			if (ex.code() < 500) {
+				throw ex;
+			}
+			res = null;
+		}
+		if (res == null || TkCache.failed(res)) {
+			if (res != null) {
+				res.body().close();
+			}
+			this.stale.incrementAndGet();
+			res = entry.response(System.nanoTime());
+		} else {
+			res = this.store(key, req.head(), res);
+		}
+		return res;
+	}
+
+	/**
+	 * Is it a server error?
+	 *
+	 * 它是否是服务器错误
+	 *
+	 * @param res 响应
+	 * @return TRUE if it is
+	 * @throws IOException
+	 */
+	private static boolean failed(final Response res) throws IOException {
+		final String status = res.head().iterator().next();
+		return status.length() >= 12 && status.charAt(9) == '5';
+	}
+
+	/**
+	 * How long the response stays fresh: its freshness lifetime less the
+	 * {@code Age} it came with, as RFC 7234 says.
+	 *
+	 * 响应保持新鲜的时间：按照 RFC 7234，它的新鲜期减去它到来时的{@code Age}
+	 *
+	 * @param req 请求头部
+	 * @param res 响应头部
+	 * @param vary 键中的请求头的名字，小写
+	 * @param limit 响应身体的最大字节数
+	 * @param ttl 没有明确新鲜度的响应保持新鲜的时间，以毫秒计
+	 * @return nanos 纳秒，不能保存时为 -1
+	 */
+	static long freshness(final Iterable<String> req, final Iterable<String> res,
+			final List<String> vary, final long limit, final long ttl) {
+		final String status = res.iterator().next();
+		final List<String> lengths = HeadView.lookup(res, "Content-Length");
+		boolean storable = status.length() >= 12
+				&& TkCache.CACHEABLE.contains(status.substring(9, 12))
+				&& lengths.size() == 1 && TkCache.fits(lengths.get(0), limit)
+				&& HeadView.lookup(res, "Set-Cookie").isEmpty();
+		for (final String value : HeadView.lookup(res, "Vary")) {
+			for (final String name : value.split(",")) {
+				storable &= vary.contains(name.trim().toLowerCase(Locale.ENGLISH));
+			}
+		}
+		final List<String> directives = TkCache.directives(res);
+		long fresh = TimeUnit.MILLISECONDS.toNanos(ttl);
+		long shared = -1L;
+		for (final String directive : directives) {
+			if ("no-store".equals(directive) || "no-cache".equals(directive)
+					|| "private".equals(directive)) {
+				storable = false;
+			} else if (directive.startsWith("max-age=")) {
+				fresh = TkCache.seconds(directive);
+			} else if (directive.startsWith("s-maxage=")) {
+				shared = TkCache.seconds(directive);
+			}
+		}
+		if (shared >= 0L) {
+			fresh = shared;
+		}
+		if (!HeadView.lookup(req, "Authorization").isEmpty()) {
+			storable &= directives.contains("public") || shared >= 0L;
+		}
+		if (storable) {
+			fresh = Math.max(fresh - TimeUnit.SECONDS.toNanos(TkCache.age(res)), 0L);
+		} else {
+			fresh = -1L;
+		}
+		return fresh;
+	}
+
+	/**
+	 * Does a body of this {@code Content-Length} fit in the limit?
+	 *
+	 * 这个{@code Content-Length}的身体是否不超过上限
+	 *
+	 * @param length {@code Content-Length}头的值
+	 * @param limit 上限
+	 * @return TRUE if it does
+	 */
+	private static boolean fits(final String length, final long limit) {
+		boolean fits;
+		try {
+			fits = Long.parseLong(length) <= limit;
+		} catch (final NumberFormatException ex) {
+			fits = false;
+		}
+		return fits;
+	}
+
+	/**
+	 * Head with an {@code Age} header: the age it came with, if any, plus
+	 * the seconds it has been stored.
+	 *
+	 * 带有{@code Age}头的头部：它到来时的年龄（如果有的话）加上它被保存的秒数
+	 *
+	 * @param head 响应头部
+	 * @param seconds 被保存的秒数
+	 * @return head 头部
+	 */
+	static Head aged(final Iterable<String> head, final long seconds) {
+		return Head.of(head).set("Age", Long.toString(TkCache.age(head) + seconds));
+	}
+
+	/**
+	 * Seconds of the {@code Age} header.
+	 *
+	 * {@code Age}头的秒数
+	 *
+	 * @param head 响应头部
+	 * @return seconds 秒数，没有或无法解析时为 0
+	 */
+	private static long age(final Iterable<String> head) {
+		long age = 0L;
+		for (final String value : HeadView.lookup(head, "Age")) {
+			try {
+				age = Math.max(Long.parseLong(value.trim()), 0L);
+			} catch (final NumberFormatException ex) {
+				assert ex != null;
+			}
+		}
+		return age;
+	}
+
+	/**
+	 * Key of the request.
+	 *
+	 * 请求的键
+	 *
+	 * @param head 请求头部
+	 * @param vary 键中的请求头的名字
+	 * @return key 键
+	 */
+	static String key(final Iterable<String> head, final List<String> vary) {
+		final StringBuilder key = new StringBuilder(head.iterator().next());
+		key.append('\n').append(HeadView.lookup(head, "Host"));
+		for (final String name : vary) {
+			key.append('\n').append(HeadView.lookup(head, name));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Directives of {@code Cache-Control} headers, in lower case.
+	 *
+	 * {@code Cache-Control}头的指令，小写
+	 *
+	 * @param head 头部
+	 * @return directives 指令
+	 */
+	static List<String> directives(final Iterable<String> head) {
+		final List<String> directives = new ArrayList<>(4);
+		for (final String value : HeadView.lookup(head, "Cache-Control")) {
+			for (final String directive : value.split(",")) {
+				directives.add(directive.trim().toLowerCase(Locale.ENGLISH));
+			}
+		}
+		return directives;
+	}
+
+	/**
+	 * How long an expired response is kept for a purpose, according to
+	 * its directive, or by default.
+	 *
+	 * 根据指令或默认值，过期的响应为某种用途保留的时间
+	 *
+	 * @param directives {@code Cache-Control}指令
+	 * @param prefix 指令的前缀，例如{@code stale-if-error=}
+	 * @param millis 默认时间，以毫秒计
+	 * @return nanos 纳秒
+	 */
+	private static long window(final List<String> directives, final String prefix,
+			final long millis) {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		for (final String directive : directives) {
+			if (directive.startsWith(prefix)) {
+				nanos = TkCache.seconds(directive);
+			}
+		}
+		return nanos;
+	}
+
+	/**
+	 * Seconds of a directive like {@code max-age=60}, in nanoseconds.
+	 *
+	 * 形如{@code max-age=60}的指令中的秒数，以纳秒计
+	 *
+	 * @param directive 指令
+	 * @return nanos 纳秒，无法解析时为 0
+	 */
+	static long seconds(final String directive) {
+		long nanos;
+		try {
+			nanos = TimeUnit.SECONDS.toNanos(
+					Long.parseLong(directive.substring(directive.indexOf('=') + 1).trim())
+				);
+		} catch (final NumberFormatException ex) {
+			nanos = 0L;
+		}
+		return Math.max(nanos, 0L);
+	}
+
+	/**
+	 * Cached response.
+	 *
+	 * 缓存的响应
+	 *
+	 * <p>The class is thread-safe.
+	 *
+	 * <p>这个类是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Entry {
+
+		/**
+		 * Response.
+		 *
+		 * 响应
+		 */
+		private final transient RsFrozen response;
+
+		/**
+		 * When it was stored, in {@link System#nanoTime()} terms.
+		 *
+		 * 它被保存的时间，以{@link System#nanoTime()}计
+		 */
+		private final transient long stored;
+
+		/**
+		 * When it stops being fresh, in {@link System#nanoTime()} terms.
+		 *
+		 * 它不再新鲜的时间，以{@link System#nanoTime()}计
+		 */
+		private final transient long expires;
+
+		/**
+		 * When it stops being served while it is refreshed.
+		 *
+		 * 它在刷新期间不再被使用的时间
+		 */
+		private final transient long revalidated;
+
+		/**
+		 * When it stops being served at all.
+		 *
+		 * 它完全不再被使用的时间
+		 */
+		private final transient long gone;
+
+		/**
+		 * Is a new response being asked for?
+		 *
+		 * 是否正在请求新的响应
+		 */
+		private final transient AtomicBoolean refreshing;
+
+		/**
+		 * Response with its {@code Age}, frozen for one second of age.
+		 *
+		 * 带有{@code Age}的响应，为一秒的年龄冻结
+		 */
+		private final transient AtomicReference<TkCache.Aged> aged;
+
+		/**
+		 * Ctor.
+		 * @param res 响应
+		 * @param time 它被保存的时间
+		 * @param expiry 它不再新鲜的时间
+		 * @param swr 它在刷新期间不再被使用的时间
+		 * @param end 它完全不再被使用的时间
+		 */
+		Entry(final RsFrozen res, final long time, final long expiry, final long swr,
+				final long end) {
+			this.response = res;
+			this.stored = time;
+			this.expires = expiry;
+			this.revalidated = swr;
+			this.gone = end;
+			this.refreshing = new AtomicBoolean();
+			this.aged = new AtomicReference<>();
+		}
+
+		/**
+		 * The response with its {@code Age} now, made again only when the
+		 * age changes; only its head is encoded again, in front of the
+		 * same body bytes.
+		 *
+		 * 现在带有{@code Age}的响应，只在年龄改变时重新生成；只有它的头部被重新编码，
+		 * 放在同样的身体字节之前
+		 *
+		 * @param now 当前时间，以{@link System#nanoTime()}计
+		 * @return response 响应
+		 * @throws IOException
+		 */
+		RsFrozen response(final long now) throws IOException {
+			final long seconds = TimeUnit.NANOSECONDS.toSeconds(now - this.stored);
+			TkCache.Aged current = this.aged.get();
+			if (current == null || current.seconds != seconds) {
+				current = new TkCache.Aged(
+					seconds, this.response.with(TkCache.aged(this.response.head(), seconds))
+				);
+				this.aged.set(current);
+			}
+			return current.response;
+		}
+	}
+
+	/**
+	 * Cached response with its {@code Age}.
+	 *
+	 * 带有{@code Age}的缓存的响应
+	 *
+	 * <p>The class is immutable and thread-safe.
+	 *
+	 * <p>这个类是不可变的且线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Aged {
+
+		/**
+		 * Seconds it has been stored.
+		 *
+		 * 它被保存的秒数
+		 */
+		private final transient long seconds;
+
+		/**
+		 * Response.
+		 *
+		 * 响应
+		 */
+		private final transient RsFrozen response;
+
+		/**
+		 * Ctor.
+		 * @param age 它被保存的秒数
+		 * @param res 响应
+		 */
+		Aged(final long age, final RsFrozen res) {
+			this.seconds = age;
+			this.response = res;
+		}
+	}
+}
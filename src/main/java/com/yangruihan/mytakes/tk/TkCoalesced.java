@@ -0,0 +1,295 @@
+package com.yangruihan.mytakes.tk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yangruihan.mytakes.Request;
+import com.yangruihan.mytakes.Response;
+import com.yangruihan.mytakes.Take;
+import com.yangruihan.mytakes.rq.HeadView;
+import com.yangruihan.mytakes.rs.RsFrozen;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Take decorator, running identical concurrent {@code GET} requests once.
+ *
+ * Take 装饰器，对相同的并发{@code GET}请求只运行一次
+ *
+ * <p>The first request with a key runs the original take; requests with
+ * the same key arriving while it runs wait for it and get the same
+ * {@link RsFrozen} response. Keys are made as by {@link TkCache}, from
+ * the request line, the {@code Host} header and the given headers. So a
+ * crowd of requests for an expired cache entry costs the origin one call:
+ *
+ * <pre> new TkCache(new TkCoalesced(take, 500L), 64L &lt;&lt; 20)</pre>
+ *
+ * <p>第一个具有某个键的请求运行原始 Take；在它运行期间到达的具有相同键的请求等待它，
+ * 并得到同一个{@link RsFrozen}响应。键的生成方式与{@link TkCache}相同，
+ * 来自请求行、{@code Host}头和给定的头。所以一大群请求同一个过期缓存项的请求只需调用原始 Take 一次
+ *
+ * <p>A waiter runs the original take itself if the first request takes
+ * longer than the timeout, fails, or has a response that may not be
+ * shared, under the rules {@link TkCache} follows: one that is too big to
+ * be kept in memory, that is with a {@code Content-Length} over the limit
+ * or none at all, is {@code private}, {@code no-store} or
+ * {@code no-cache}, sets cookies, or answers {@code Authorization}
+ * without being {@code public}. Requests with {@code Authorization} or
+ * {@code Cookie} are not coalesced at all, unless that header is in the
+ * key, so one user never gets the page of another.
+ *
+ * <p>如果第一个请求耗时超过超时时间、失败，或者它的响应按照{@link TkCache}遵循的规则不能共享，
+ * 等待者自己运行原始 Take：太大而不能保存在内存中，即{@code Content-Length}超过上限或者没有，
+ * 是{@code private}、{@code no-store}或{@code no-cache}的，设置 Cookie，
+ * 或者回答{@code Authorization}且不是{@code public}的响应。带有{@code Authorization}或{@code Cookie}
+ * 的请求完全不合并，除非这个头在键中，所以一个用户永远不会得到另一个用户的页面
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(of = "origin")
+public final class TkCoalesced implements Take {
+
+	/**
+	 * Request headers of one user, in lower case.
+	 *
+	 * 属于一个用户的请求头，小写
+	 */
+	private static final List<String> PERSONAL = Arrays.asList("authorization", "cookie");
+
+	/**
+	 * Original take.
+	 *
+	 * 原始 Take
+	 */
+	private final transient Take origin;
+
+	/**
+	 * How long waiters wait, in milliseconds.
+	 *
+	 * 等待者等待的时间，以毫秒计
+	 */
+	private final transient long timeout;
+
+	/**
+	 * Largest body shared with waiters, in bytes.
+	 *
+	 * 与等待者共享的最大身体字节数
+	 */
+	private final transient long limit;
+
+	/**
+	 * Names of request headers in the key, in lower case.
+	 *
+	 * 键中的请求头的名字，小写
+	 */
+	private final transient List<String> vary;
+
+	/**
+	 * Requests running now, by key.
+	 *
+	 * 正在运行的请求，按键索引
+	 */
+	private final transient ConcurrentMap<String, TkCoalesced.Flight> flights;
+
+	/**
+	 * Number of requests answered with the response of another.
+	 *
+	 * 以另一个请求的响应应答的请求数量
+	 */
+	private final transient AtomicLong shared;
+
+	/**
+	 * Ctor.
+	 * @param take 原始 Take
+	 * @param wait 等待者等待的时间，以毫秒计
+	 * @param headers 键中的请求头的名字
+	 */
+	public TkCoalesced(final Take take, final long wait, final String... headers) {
+		this(take, wait, 1L << 20, Arrays.asList(headers));
+	}
+
+	/**
+	 * Ctor.
+	 * @param take 原始 Take
+	 * @param wait 等待者等待的时间，以毫秒计
+	 * @param bytes 与等待者共享的最大身体字节数
+	 * @param headers 键中的请求头的名字
+	 */
+	public TkCoalesced(final Take take, final long wait, final long bytes,
+			final Iterable<String> headers) {
+		this.origin = take;
+		this.timeout = wait;
+		this.limit = bytes;
+		this.vary = new ArrayList<>(4);
+		for (final String header : headers) {
+			this.vary.add(header.toLowerCase(Locale.ENGLISH));
+		}
+		this.flights = new ConcurrentHashMap<>(0);
+		this.shared = new AtomicLong();
+	}
+
+	@Override
+	public Response act(final Request req) throws IOException {
+		final Iterable<String> head = req.head();
+		Response res = null;
+		if (head.iterator().next().startsWith("GET ") && this.anonymous(head)) {
+			final String key = TkCache.key(head, this.vary);
+			final TkCoalesced.Flight mine = new TkCoalesced.Flight();
+			final TkCoalesced.Flight running = this.flights.putIfAbsent(key, mine);
+			if (running == null) {
+				RsFrozen frozen = null;
+				try {
+					res = this.origin.act(req);
+					frozen = this.share(head, res);
+					if (frozen != null) {
+						res = frozen;
+					}
+				} finally {
+					this.flights.remove(key, mine);
+					mine.finish(frozen);
+				}
+			} else {
+				res = running.await(this.timeout);
+				if (res != null) {
+					this.shared.incrementAndGet();
+				}
+			}
+		}
+		if (res == null) {
+			res = this.origin.act(req);
+		}
+		return res;
+	}
+
+	/**
+	 * How many requests were answered with the response of another.
+	 *
+	 * 有多少请求以另一个请求的响应应答
+	 *
+	 * @return count 数量
+	 */
+	public long coalesced() {
+		return this.shared.get();
+	}
+
+	/**
+	 * Is the request the same for every user, that is without
+	 * {@code Authorization} or {@code Cookie} not in the key?
+	 *
+	 * 请求是否对每个用户都相同，即没有不在键中的{@code Authorization}或{@code Cookie}
+	 *
+	 * @param head 请求头部
+	 * @return TRUE if it is
+	 */
+	private boolean anonymous(final Iterable<String> head) {
+		boolean anonymous = true;
+		for (final String name : TkCoalesced.PERSONAL) {
+			anonymous &= this.vary.contains(name) || HeadView.lookup(head, name).isEmpty();
+		}
+		return anonymous;
+	}
+
+	/**
+	 * Freeze the response of the first request for everyone waiting, if
+	 * it may be shared.
+	 *
+	 * 如果第一个请求的响应可以共享，为所有等待者冻结它
+	 *
+	 * @param head 请求头部
+	 * @param res 响应
+	 * @return response 冻结的响应，不能共享时为{@code null}
+	 * @throws IOException
+	 */
+	private RsFrozen share(final Iterable<String> head, final Response res)
+			throws IOException {
+		RsFrozen frozen = null;
+		if (TkCache.freshness(head, res.head(), this.vary, this.limit, 0L) >= 0L) {
+			frozen = new RsFrozen(res);
+			frozen.size();
+		}
+		return frozen;
+	}
+
+	/**
+	 * Request running now, with its waiters.
+	 *
+	 * 正在运行的请求，以及它的等待者
+	 *
+	 * <p>The class is thread-safe.
+	 *
+	 * <p>这个类是线程安全的
+	 *
+	 * @author Yrh
+	 *
+	 */
+	private static final class Flight {
+
+		/**
+		 * Is it done?
+		 *
+		 * 是否已经完成
+		 */
+		private final transient CountDownLatch done;
+
+		/**
+		 * Response to share, if any.
+		 *
+		 * 要共享的响应，如果有的话
+		 */
+		private final transient AtomicReference<RsFrozen> result;
+
+		/**
+		 * Ctor.
+		 */
+		Flight() {
+			this.done = new CountDownLatch(1);
+			this.result = new AtomicReference<>();
+		}
+
+		/**
+		 * Finish it and wake up the waiters.
+		 *
+		 * 完成它并唤醒等待者
+		 *
+		 * @param res 要共享的响应，失败或者响应不能共享时为{@code null}
+		 */
+		void finish(final RsFrozen res) {
+			this.result.set(res);
+			this.done.countDown();
+		}
+
+		/**
+		 * Wait for the response to share.
+		 *
+		 * 等待要共享的响应
+		 *
+		 * @param millis 最长等待时间，以毫秒计
+		 * @return response 响应，超时、失败或者响应不能共享时为{@code null}
+		 * @throws InterruptedIOException
+		 */
+		RsFrozen await(final long millis) throws InterruptedIOException {
+			try {
+				this.done.await(millis, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(ex.getMessage());
+			}
+			return this.result.get();
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package com.yangruihan.mytakes.tk;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import com.yangruihan.mytakes.Request;
+import com.yangruihan.mytakes.Response;
+import com.yangruihan.mytakes.Take;
+import com.yangruihan.mytakes.rq.HeadView;
+import com.yangruihan.mytakes.rs.Body;
+import com.yangruihan.mytakes.rs.Head;
+import com.yangruihan.mytakes.rs.RsFrozen;
+import com.yangruihan.mytakes.rs.RsWithStatus;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Take decorator, answering conditional {@code GET} requests for
+ * unchanged responses with {@code 304 Not Modified}.
+ *
+ * Take 装饰器，对请求未改变的响应的条件{@code GET}请求以{@code 304 Not Modified}应答
+ *
+ * <p>A {@code 200} response without an {@code ETag} gets one: the
+ * {@link RsFrozen#etag() hash of its body}, computed once per body. The
+ * {@link RsFrozen#tagged() tagged copy} only encodes a new head in front
+ * of the same body bytes, so the copies {@link TkCache} makes every second
+ * to update {@code Age} are not hashed again, and are still sent with a
+ * single write. Other responses are frozen for it if their
+ * {@code Content-Length} is within the limit. If the tag matches
+ * {@code If-None-Match}, or, without that header, if
+ * {@code Last-Modified}, which file bodies have, is not after
+ * {@code If-Modified-Since}, the client gets a {@code 304} with no body
+ * instead, and the body is not printed at all:
+ *
+ * <pre> new TkConditional(new TkCache(take, 64L &lt;&lt; 20))</pre>
+ *
+ * <p>没有{@code ETag}的{@code 200}响应会得到一个：{@link RsFrozen#etag() 它的身体的哈希值}。
+ * 它对每个身体只计算一次。{@link RsFrozen#tagged() 带标签的副本}只在同样的身体字节之前编码一个新的头部，
+ * 所以{@link TkCache}每秒为更新{@code Age}生成的副本不会被再次计算哈希，并且仍然用一次写入发送。
+ * 其他响应如果{@code Content-Length}不超过上限，就为此被冻结。如果标签与{@code If-None-Match}匹配，
+ * 或者没有这个头时，文件身体带有的{@code Last-Modified}不晚于{@code If-Modified-Since}，
+ * 客户端得到的是一个没有身体的{@code 304}，身体根本不会被打印
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(of = "origin")
+public final class TkConditional implements Take {
+
+	/**
+	 * Headers a {@code 304} response keeps, in lower case, according to
+	 * RFC 7232.
+	 *
+	 * 根据 RFC 7232，{@code 304}响应保留的头，小写
+	 */
+	private static final List<String> KEPT = Arrays.asList(
+			"cache-control", "content-location", "date", "etag", "expires",
+			"last-modified", "vary"
+		);
+
+	/**
+	 * Original take.
+	 *
+	 * 原始 Take
+	 */
+	private final transient Take origin;
+
+	/**
+	 * Largest body frozen to compute its tag, in bytes.
+	 *
+	 * 为计算标签而冻结的最大身体字节数
+	 */
+	private final transient long limit;
+
+	/**
+	 * Ctor.
+	 * @param take 原始 Take
+	 */
+	public TkConditional(final Take take) {
+		this(take, 1L << 20);
+	}
+
+	/**
+	 * Ctor.
+	 * @param take 原始 Take
+	 * @param bytes 为计算标签而冻结的最大身体字节数
+	 */
+	public TkConditional(final Take take, final long bytes) {
+		this.origin = take;
+		this.limit = bytes;
+	}
+
+	@Override
+	public Response act(final Request req) throws IOException {
+		final Iterable<String> head = req.head();
+		final String line = head.iterator().next();
+		Response res = this.origin.act(req);
+		final String status = res.head().iterator().next();
+		if ((line.startsWith("GET ") || line.startsWith("HEAD "))
+				&& status.length() >= 12 && status.startsWith("200", 9)) {
+			res = this.tagged(res);
+			if (TkConditional.unmodified(head, res.head())) {
+				res = TkConditional.unchanged(res);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * The response with an {@code ETag}, if it has none and it is frozen
+	 * or small enough to be.
+	 *
+	 * 带有{@code ETag}的响应，如果它没有并且它是冻结的或者小到可以被冻结
+	 *
+	 * @param res 响应
+	 * @return response 响应
+	 * @throws IOException
+	 */
+	private Response tagged(final Response res) throws IOException {
+		final Iterable<String> head = res.head();
+		Response result = res;
+		if (HeadView.lookup(head, "ETag").isEmpty()) {
+			RsFrozen frozen = null;
+			if (res instanceof RsFrozen) {
+				frozen = (RsFrozen) res;
+			} else {
+				final List<String> lengths = HeadView.lookup(head, "Content-Length");
+				boolean small;
+				try {
+					small = lengths.size() == 1 && Long.parseLong(lengths.get(0)) <= this.limit;
+				} catch (final NumberFormatException ex) {
+					small = false;
+				}
+				if (small) {
+					frozen = new RsFrozen(res);
+				}
+			}
+			if (frozen != null) {
+				result = frozen.tagged();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Does the client have this response already, according to its
+	 * conditional headers?
+	 *
+	 * 根据客户端的条件头，它是否已经有这个响应
+	 *
+	 * <p>{@code If-None-Match} compares tags weakly, as RFC 7232 says, and
+	 * {@code If-Modified-Since} is only looked at without it.
+	 *
+	 * <p>按照 RFC 7232 的规定，{@code If-None-Match}以弱比较方式比较标签，
+	 * 只有在没有它时才查看{@code If-Modified-Since}
+	 *
+	 * @param req 请求头部
+	 * @param res 响应头部
+	 * @return TRUE if it does
+	 */
+	private static boolean unmodified(final Iterable<String> req,
+			final Iterable<String> res) {
+		final List<String> conditions = HeadView.lookup(req, "If-None-Match");
+		boolean unmodified = false;
+		if (conditions.isEmpty()) {
+			final List<String> modified = HeadView.lookup(res, "Last-Modified");
+			final List<String> since = HeadView.lookup(req, "If-Modified-Since");
+			if (modified.size() == 1 && since.size() == 1) {
+				try {
+					unmodified = TkConditional.seconds(modified.get(0))
+							<= TkConditional.seconds(since.get(0));
+				} catch (final DateTimeParseException ex) {
+					unmodified = false;
+				}
+			}
+		} else {
+			final List<String> tags = HeadView.lookup(res, "ETag");
+			String tag = "";
+			if (tags.size() == 1) {
+				tag = TkConditional.opaque(tags.get(0));
+			}
+			for (final String condition : conditions) {
+				for (final String candidate : condition.split(",")) {
+					final String trimmed = candidate.trim();
+					unmodified |= "*".equals(trimmed)
+							|| !tag.isEmpty() && tag.equals(TkConditional.opaque(trimmed));
+				}
+			}
+		}
+		return unmodified;
+	}
+
+	/**
+	 * Bodiless {@code 304} response with the headers of the response that
+	 * RFC 7232 asks for. The body of the response is closed unread, so a
+	 * connection or buffer it holds, see {@link Body.URL}, is let go.
+	 *
+	 * 没有身体的{@code 304}响应，带有 RFC 7232 要求的原响应的头。原响应的身体不经读取就被关闭，
+	 * 所以它持有的连接或缓冲，见{@link Body.URL}，会被释放
+	 *
+	 * @param res 响应
+	 * @return response 响应
+	 * @throws IOException
+	 */
+	private static Response unchanged(final Response res) throws IOException {
+		final Head head = Head.of(res.head());
+		Head kept = new Head("");
+		for (int idx = 0; idx < head.size(); ++idx) {
+			if (head.value(idx) != null
+					&& TkConditional.KEPT.contains(head.name(idx).toLowerCase(Locale.ENGLISH))) {
+				kept = kept.with(head.name(idx), head.value(idx));
+			}
+		}
+		final Head lines = kept;
+		if (!(res instanceof RsFrozen)) {
+			res.body().close();
+		}
+		return new RsWithStatus(
+			new Response() {
+
+				@Override
+				public Iterable<String> head() {
+					return lines;
+				}
+
+				@Override
+				public InputStream body() {
+					return new ByteArrayInputStream(new byte[0]);
+				}
+			},
+			HttpURLConnection.HTTP_NOT_MODIFIED
+		);
+	}
+
+	/**
+	 * Tag without its weakness indicator.
+	 *
+	 * 去掉弱标记的标签
+	 *
+	 * @param tag 标签
+	 * @return tag 标签
+	 */
+	private static String opaque(final String tag) {
+		String opaque = tag.trim();
+		if (opaque.startsWith("W/")) {
+			opaque = opaque.substring(2);
+		}
+		return opaque;
+	}
+
+	/**
+	 * Seconds since the epoch of an HTTP date.
+	 *
+	 * HTTP 日期距纪元的秒数
+	 *
+	 * @param date 日期
+	 * @return seconds 秒数
+	 */
+	private static long seconds(final String date) {
+		return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+				.toEpochSecond();
+	}
+}
@@ -0,0 +1,272 @@
+package com.yangruihan.mytakes.tk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.yangruihan.mytakes.Request;
+import com.yangruihan.mytakes.Response;
+import com.yangruihan.mytakes.Take;
+import com.yangruihan.mytakes.rs.RsFrozen;
+import com.yangruihan.mytakes.rs.RsPrint;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Take decorator, caching rendered responses to {@code GET} requests in
+ * memory-mapped files, so that they outlive the process.
+ *
+ * Take 装饰器，把{@code GET}请求的渲染后的响应缓存在内存映射文件中，所以它们比进程活得更久
+ *
+ * <p>Responses are keyed as by {@link TkCache} and stored, in HTTP
+ * format, in an {@link Archive} in the directory: append-only segment
+ * files and an open-addressing hash index, both memory-mapped. A new
+ * process opening the same directory maps the index as it was left and
+ * answers from it at once, so a restart doesn't send every request to the
+ * original take again. It sits behind an in-memory cache:
+ *
+ * <pre> new TkCache(new TkPersistent(take, Paths.get("/var/cache/app")), 64L &lt;&lt; 20)</pre>
+ *
+ * <p>响应的键与{@link TkCache}相同，以 HTTP 格式保存在目录中的{@link Archive}里：
+ * 只追加的段文件和开放寻址的哈希索引，两者都是内存映射的。打开同一个目录的新进程按原样映射索引，
+ * 并立即从中应答，所以重启不会把每个请求再次发给原始 Take。它放在内存缓存的后面
+ *
+ * <p>Only responses with an explicit {@code s-maxage} or {@code max-age}
+ * are stored, for that long less the {@code Age} they came with, and only
+ * under the rules {@link TkCache} follows; they are served with an
+ * {@code Age} header counting on from when they were stored. The files take at most the budget, 1 GB by default;
+ * the oldest responses go first. Opened read-only, it answers from a
+ * directory another process writes, without storing anything itself.
+ *
+ * <p>只保存明确带有{@code s-maxage}或{@code max-age}的响应，保存这么长的时间减去它们到来时的{@code Age}，
+ * 并且只在{@link TkCache}遵循的规则下保存；使用时它们带有从保存时算起的{@code Age}头。
+ * 文件最多占用预算的字节数，默认为 1 GB；最旧的响应最先被删除。
+ * 以只读方式打开时，它从另一个进程写入的目录中应答，自己不保存任何东西
+ *
+ * <p>The class is immutable and thread-safe.
+ *
+ * <p>这个类是不可变的且线程安全的
+ *
+ * @author Yrh
+ *
+ */
+@EqualsAndHashCode(of = "origin")
+public final class TkPersistent implements Take, Closeable {
+
+	/**
+	 * Original take.
+	 *
+	 * 原始 Take
+	 */
+	private final transient Take origin;
+
+	/**
+	 * Largest body stored, in bytes.
+	 *
+	 * 保存的最大身体字节数
+	 */
+	private final transient long limit;
+
+	/**
+	 * Names of request headers in the key, in lower case.
+	 *
+	 * 键中的请求头的名字，小写
+	 */
+	private final transient List<String> vary;
+
+	/**
+	 * Stored responses.
+	 *
+	 * 保存的响应
+	 */
+	private final transient Archive archive;
+
+	/**
+	 * Number of requests answered from the files.
+	 *
+	 * 从文件中应答的请求数量
+	 */
+	private final transient AtomicLong hit;
+
+	/**
+	 * Number of requests not found in the files.
+	 *
+	 * 没有在文件中找到的请求数量
+	 */
+	private final transient AtomicLong miss;
+
+	/**
+	 * Ctor.
+	 * @param take 原始 Take
+	 * @param dir 目录
+	 * @param headers 键中的请求头的名字
+	 * @throws IOException
+	 */
+	public TkPersistent(final Take take, final Path dir, final String... headers)
+			throws IOException {
+		this(take, dir, 64 << 20, 1L << 30, false, Arrays.asList(headers));
+	}
+
+	/**
+	 * Ctor.
+	 * @param take 原始 Take
+	 * @param dir 目录
+	 * @param segment 段文件的字节数
+	 * @param budget 所有段文件最多可以占用的字节数
+	 * @param readonly 是否只读
+	 * @param headers 键中的请求头的名字
+	 * @throws IOException
+	 */
+	public TkPersistent(final Take take, final Path dir, final int segment,
+			final long budget, final boolean readonly, final Iterable<String> headers)
+			throws IOException {
+		this.origin = take;
+		this.limit = segment / 2;
+		this.vary = new ArrayList<>(4);
+		for (final String header : headers) {
+			this.vary.add(header.toLowerCase(Locale.ENGLISH));
+		}
+		this.archive = new Archive(dir, segment, budget, readonly);
+		this.hit = new AtomicLong();
+		this.miss = new AtomicLong();
+	}
+
+	@Override
+	public Response act(final Request req) throws IOException {
+		final Iterable<String> head = req.head();
+		Response res = null;
+		if (head.iterator().next().startsWith("GET ")) {
+			final String key = TkCache.key(head, this.vary);
+			final byte[] bytes = this.archive.get(key, System.currentTimeMillis());
+			if (bytes == null) {
+				this.miss.incrementAndGet();
+				res = this.store(key, head, this.origin.act(req));
+			} else {
+				this.hit.incrementAndGet();
+				res = TkPersistent.parse(bytes, System.currentTimeMillis());
+			}
+		} else {
+			res = this.origin.act(req);
+		}
+		return res;
+	}
+
+	/**
+	 * Let the archive finish tidying up, and force stored responses to
+	 * disk.
+	 *
+	 * 让存档完成整理，并把保存的响应强制写到磁盘
+	 */
+	@Override
+	public void close() {
+		this.archive.close();
+	}
+
+	/**
+	 * How many requests were answered from the files.
+	 *
+	 * 有多少请求是从文件中应答的
+	 *
+	 * @return count 数量
+	 */
+	public long hits() {
+		return this.hit.get();
+	}
+
+	/**
+	 * How many requests were not found in the files.
+	 *
+	 * 有多少请求没有在文件中找到
+	 *
+	 * @return count 数量
+	 */
+	public long misses() {
+		return this.miss.get();
+	}
+
+	/**
+	 * Store the response, if it says for how long it is fresh.
+	 *
+	 * 保存响应，如果它说明了自己新鲜的时间
+	 *
+	 * @param key 键
+	 * @param head 请求头部
+	 * @param res 响应
+	 * @return response 响应，保存后为冻结的响应
+	 * @throws IOException
+	 */
+	private Response store(final String key, final Iterable<String> head,
+			final Response res) throws IOException {
+		final long fresh = TkCache.freshness(head, res.head(), this.vary, this.limit, 0L);
+		Response result = res;
+		if (fresh > 0L) {
+			final RsFrozen frozen = new RsFrozen(res);
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream(frozen.size() + 8);
+			final long now = System.currentTimeMillis();
+			baos.write(ByteBuffer.allocate(8).putLong(now).array());
+			new RsPrint(frozen).print(baos);
+			this.archive.put(
+					key, baos.toByteArray(), now + TimeUnit.NANOSECONDS.toMillis(fresh)
+				);
+			result = frozen;
+		}
+		return result;
+	}
+
+	/**
+	 * Response stored in HTTP format after the time it was stored, with
+	 * an {@code Age} header.
+	 *
+	 * 在保存时间之后以 HTTP 格式保存的响应，带有{@code Age}头
+	 *
+	 * @param bytes 字节
+	 * @param now 当前时间，以纪元毫秒计
+	 * @return response 响应
+	 */
+	private static Response parse(final byte[] bytes, final long now) {
+		final List<String> lines = new ArrayList<>(16);
+		int start = 8;
+		boolean more = true;
+		while (more) {
+			int end = start;
+			while (end + 1 < bytes.length && (bytes[end] != '\r' || bytes[end + 1] != '\n')) {
+				++end;
+			}
+			more = end > start && end + 1 < bytes.length;
+			if (more) {
+				lines.add(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+			}
+			start = Math.min(end + 2, bytes.length);
+		}
+		final int body = start;
+		final long stored = ByteBuffer.wrap(bytes).getLong(0);
+		final Iterable<String> head = TkCache.aged(
+				lines, TimeUnit.MILLISECONDS.toSeconds(Math.max(now - stored, 0L))
+			);
+		return new RsFrozen(
+			new Response() {
+
+				@Override
+				public Iterable<String> head() {
+					return head;
+				}
+
+				@Override
+				public InputStream body() {
+					return new ByteArrayInputStream(bytes, body, bytes.length - body);
+				}
+			}
+		);
+	}
+}